@@ -1,6 +1,5 @@
 package com.purini.fw;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.purini.fw.domain.Word;
 import com.purini.fw.domain.WordPair;
 import com.purini.fw.process.*;
@@ -10,8 +9,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 /**
  * Primary class for running the application
@@ -40,7 +48,7 @@ public class Application {
      * Run the app
      * @param topNCount - count of top words and top word pairs to be printed
      * @return Pair of List of word count pairs and List of wordPair count pairs
-     * or null in case of validation failures
+     * or null in case of validation failures or of a failed distributed crawl
      */
     @Nullable
     public Pair<List<Pair<Word, Integer>>, List<Pair<WordPair, Integer>>> getTopNWordsAndWordPairs(int topNCount) {
@@ -50,20 +58,34 @@ public class Application {
             return null;
         }
 
+        int workerCount = propertyStore.getIntProperty(PropertyStore.DISTRIBUTED_WORKERS);
+        if (workerCount > 0) {
+            return getTopNWordsAndWordPairsDistributed(workerCount, topNCount);
+        }
+
         //The stores (one for words, and one for word pairs) will contain the final results
         final WordCountStoreService wordCountStores = new WordCountStoreService();
 
         //Executor services to process dom documents in parallel
-        final ExecutorService documentProcessorExecutor = newExecutorService();
+        final ExecutorService documentProcessorExecutor = DocumentProcessor.newExecutorService();
         final ExecutorCompletionService<Void> documentProcessorCompletionService = new ExecutorCompletionService<>(documentProcessorExecutor);
+        //Fetching is blocking I/O, so it has its own executor sized for the network
+        final ExecutorService fetchExecutor = FetchExecutors.newFetchExecutor();
+        //Checkpoint of the crawl, if enabled, and the crawl resumed from it, if any
+        final CrawlCheckpoint checkpoint = newCheckpoint();
+        final CrawlCheckpoint.ResumedCrawl resumedCrawl = checkpoint != null ? resumeOrStart(checkpoint, wordCountStores) : null;
+
+        TopNSubscription liveTopN = null;
 
         try {
             //This will do the actual processing using the executor service passed and produce output in the word count stores
-            DocumentProcessor documentProcessor = new DocumentProcessor(documentProcessorCompletionService, wordCountStores);
+            DocumentProcessor documentProcessor = new DocumentProcessor(documentProcessorCompletionService, wordCountStores, checkpoint);
 
             //This traverses, parses the dom and asynchronously submits the dom documents to document processor
-            UrlTraverser urlTraverser = new UrlTraverser(documentProcessor, internalLinksOnly, new DocumentProvider());
-            int taskCount = urlTraverser.traverse(url, levels);
+            UrlTraverser urlTraverser = new UrlTraverser(documentProcessor, internalLinksOnly, DocumentProviders.newDocumentProvider(), fetchExecutor, checkpoint);
+            //Top N while the crawl is in progress, if enabled, which may stop the traversal once it stops changing
+            liveTopN = subscribeLiveTopN(wordCountStores, urlTraverser, topNCount);
+            int taskCount = resumedCrawl != null ? urlTraverser.resume(resumedCrawl, levels) : urlTraverser.traverse(url, levels);
 
             //This is to track the completion. CompletionService helps in tracking the completion regardless of the order.
             for (int i = 0; i < taskCount; i++) {
@@ -74,23 +96,186 @@ public class Application {
                     logger.debug("while fetching results from documentProcessorExecutor", e);
                 }
             }
+            writeSnapshots(wordCountStores);
             return Pair.of(wordCountStores.getTopNWords(topNCount), wordCountStores.getTopNWordPairs(topNCount));
         } finally {
+            if (liveTopN != null) {
+                liveTopN.close();
+            }
+            fetchExecutor.shutdown();
             documentProcessorExecutor.shutdown();
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+            wordCountStores.close();
+        }
+    }
+
+    /**
+     * Same as getTopNWordsAndWordPairs, crawling on worker JVMs coordinated from this one, see CrawlCoordinator
+     * @param workerCount - number of workers
+     * @param topNCount - count of top words and top word pairs to be printed
+     * @return Pair of List of word count pairs and List of wordPair count pairs, or null if the crawl failed
+     */
+    @Nullable
+    private Pair<List<Pair<Word, Integer>>, List<Pair<WordPair, Integer>>> getTopNWordsAndWordPairsDistributed(
+            int workerCount, int topNCount) {
+        List<Process> localWorkers = new ArrayList<>();
+        int readTimeoutMillis = (int) Math.min(Integer.MAX_VALUE,
+                TimeUnit.SECONDS.toMillis(propertyStore.getLongProperty(PropertyStore.DISTRIBUTED_READ_TIMEOUT_SECONDS)));
+        try (CrawlCoordinator coordinator = new CrawlCoordinator(propertyStore.getIntProperty(PropertyStore.DISTRIBUTED_PORT),
+                readTimeoutMillis)) {
+            if (propertyStore.getBooleanProperty(PropertyStore.DISTRIBUTED_START_LOCAL_WORKERS)) {
+                for (int i = 0; i < workerCount; i++) {
+                    localWorkers.add(CrawlCoordinator.startLocalWorker(coordinator.getPort()));
+                }
+            } else {
+                logger.info("Waiting for {} crawl workers, start each with: java -cp <class path> {} {} {}", workerCount,
+                        CrawlWorker.class.getName(), InetAddress.getLoopbackAddress().getHostAddress(), coordinator.getPort());
+            }
+            coordinator.awaitWorkers(workerCount,
+                    TimeUnit.SECONDS.toMillis(propertyStore.getLongProperty(PropertyStore.DISTRIBUTED_WORKER_TIMEOUT_SECONDS)));
+            //the merged counts are kept as the snapshots of the crawl, if enabled, else only long enough to be ranked
+            Path snapshotDirectory = snapshotDirectory();
+            Path resultsDirectory = snapshotDirectory != null ? snapshotDirectory : Files.createTempDirectory("crawl-results-");
+            String time = snapshotTime();
+            Path wordsFile = resultsDirectory.resolve("words-" + time + ".fwc");
+            Path wordPairsFile = resultsDirectory.resolve("wordPairs-" + time + ".fwc");
+            try {
+                coordinator.crawl(url, levels, internalLinksOnly, wordsFile, wordPairsFile);
+                return Pair.of(WordCountSnapshot.open(wordsFile).getTopN(topNCount, Word::fromWords),
+                        WordCountSnapshot.open(wordPairsFile).getTopN(topNCount, WordPair::fromWords));
+            } finally {
+                if (snapshotDirectory == null) {
+                    Files.deleteIfExists(wordsFile);
+                    Files.deleteIfExists(wordPairsFile);
+                    Files.delete(resultsDirectory);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Distributed crawl of {} failed", url, e);
+            return null;
+        } finally {
+            localWorkers.forEach(Process::destroy);
+        }
+    }
+
+    @Nullable
+    private CrawlCheckpoint newCheckpoint() {
+        String directory = propertyStore.getProperty(PropertyStore.CHECKPOINT_DIRECTORY);
+        if (directory == null || directory.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return new CrawlCheckpoint(Paths.get(directory.trim()),
+                    propertyStore.getLongProperty(PropertyStore.CHECKPOINT_SNAPSHOT_INTERVAL_SECONDS),
+                    propertyStore.getIntProperty(PropertyStore.CHECKPOINT_QUEUE_CAPACITY));
+        } catch (IOException e) {
+            logger.warn("Cannot checkpoint the crawl in {}, crawling without checkpoints", directory, e);
+            return null;
         }
     }
 
-    private ExecutorService newExecutorService() {
-        return new ThreadPoolExecutor(
-                propertyStore.getIntProperty(PropertyStore.DOCUMENT_PROCESSOR_CORE_POOL_SIZE),
-                propertyStore.getIntProperty(PropertyStore.DOCUMENT_PROCESSOR_MAX_POOL_SIZE),
-                0L,
-                TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<>(),
-                new ThreadFactoryBuilder().setNameFormat("doc-processor-%d").build()); //this names the threads, useful for debugging
+    /**
+     * Resumes the crawl from the checkpoint if asked to and it is of the same crawl, else starts the checkpoint over
+     * @return the crawl resumed, or null if starting over
+     */
+    @Nullable
+    private CrawlCheckpoint.ResumedCrawl resumeOrStart(CrawlCheckpoint checkpoint, WordCountStoreService wordCountStores) {
+        try {
+            if (propertyStore.getBooleanProperty(PropertyStore.CHECKPOINT_RESUME)) {
+                CrawlCheckpoint.ResumedCrawl resumedCrawl = checkpoint.resume(url, levels, internalLinksOnly, wordCountStores);
+                if (resumedCrawl != null) {
+                    return resumedCrawl;
+                }
+            }
+            checkpoint.start(url, levels, internalLinksOnly);
+        } catch (IOException e) {
+            logger.warn("Cannot read or start the crawl checkpoint, crawling without it", e);
+        }
+        return null;
+    }
+
+    /**
+     * Subscribes to the top N while the crawl is in progress, every liveTopNEveryDocuments documents and/or
+     * every liveTopNIntervalSeconds, logging each snapshot. Once liveTopNStopAfterUnchangedSnapshots snapshots
+     * in a row, each with more documents than the one before, rank the same as the one before, the traversal is stopped.
+     * @return the subscription, or null if not enabled
+     */
+    @Nullable
+    private TopNSubscription subscribeLiveTopN(WordCountStoreService wordCountStores, UrlTraverser urlTraverser, int topNCount) {
+        final long everyDocuments = Math.max(0, propertyStore.getLongProperty(PropertyStore.LIVE_TOP_N_EVERY_DOCUMENTS));
+        final long everySeconds = Math.max(0, propertyStore.getLongProperty(PropertyStore.LIVE_TOP_N_INTERVAL_SECONDS));
+        if (everyDocuments == 0 && everySeconds == 0) {
+            return null;
+        }
+        final int stopAfter = propertyStore.getIntProperty(PropertyStore.LIVE_TOP_N_STOP_AFTER_UNCHANGED_SNAPSHOTS);
+        return wordCountStores.subscribe(topNCount, everyDocuments, TimeUnit.SECONDS.toMillis(everySeconds), new Consumer<TopNSnapshot>() {
+            private TopNSnapshot previous;
+            private int unchanged;
+
+            @Override
+            public void accept(TopNSnapshot snapshot) {
+                logger.info("live top {} {}", topNCount, snapshot);
+                if (previous != null && snapshot.getDocuments() == previous.getDocuments()) {
+                    return; //nothing new to tell, e.g. a snapshot by time while waiting on slow fetches
+                }
+                unchanged = snapshot.hasSameRanking(previous) ? unchanged + 1 : 0;
+                previous = snapshot;
+                if (stopAfter > 0 && unchanged >= stopAfter && !urlTraverser.isStopped()) {
+                    logger.info("top {} unchanged over {} snapshots, stopping the crawl after {} documents",
+                            topNCount, unchanged, snapshot.getDocuments());
+                    urlTraverser.stop();
+                }
+            }
+        });
+    }
+
+    private void writeSnapshots(WordCountStoreService wordCountStores) {
+        try {
+            Path snapshotDirectory = snapshotDirectory();
+            if (snapshotDirectory != null) {
+                String time = snapshotTime();
+                wordCountStores.writeSnapshots(snapshotDirectory.resolve("words-" + time + ".fwc"),
+                        snapshotDirectory.resolve("wordPairs-" + time + ".fwc"));
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot write the word count snapshots to {}",
+                    propertyStore.getProperty(PropertyStore.WORD_COUNT_SNAPSHOT_DIRECTORY), e);
+        }
+    }
+
+    /**
+     * @return directory of the word count snapshots, created if missing, or null if they are not kept
+     */
+    @Nullable
+    private Path snapshotDirectory() throws IOException {
+        String directory = propertyStore.getProperty(PropertyStore.WORD_COUNT_SNAPSHOT_DIRECTORY);
+        if (directory == null || directory.trim().isEmpty()) {
+            return null;
+        }
+        return Files.createDirectories(Paths.get(directory.trim()));
+    }
+
+    private static String snapshotTime() {
+        return LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss"));
+    }
+
+    /**
+     * Sets the JVM wide options of the crawl, to be called once at startup, before any connection is opened,
+     * as the JDK reads them only once:
+     * - http.maxConnections, the idle keep-alive connections the HTTP client of the JDK keeps per host,
+     *   from httpMaxConnectionsPerHost unless given on the command line with -Dhttp.maxConnections
+     */
+    public static void configureJvm() {
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections",
+                    String.valueOf(PropertyStore.getInstance().getIntProperty(PropertyStore.HTTP_MAX_CONNECTIONS_PER_HOST)));
+        }
     }
 
     public static void main(String[] args) {
+        configureJvm();
         long start = System.currentTimeMillis();
         final int topNCount = 10;
         Pair<List<Pair<Word, Integer>>, List<Pair<WordPair, Integer>>> result =
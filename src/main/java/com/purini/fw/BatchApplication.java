@@ -0,0 +1,304 @@
+package com.purini.fw;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordPair;
+import com.purini.fw.process.*;
+import com.purini.fw.utils.UrlUtil;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs a batch of crawls, e.g. of hundreds of small websites, for the total throughput across them
+ * rather than for the latency of each.
+ *
+ * The seeds are crawled batchConcurrentSeeds at a time, all on one fetch executor, one document processor executor,
+ * one processing backlog and one document provider, so the pools are started once for the batch, the keep-alive
+ * connections and the per host limits are shared, and a small site doesn't leave threads idle while it waits
+ * on its few pages. Each seed counts into its own stores, for its own top N, which are then added to the stores
+ * of the batch, for the global top N, and let go of.
+ */
+public class BatchApplication {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchApplication.class);
+    private final List<Seed> seeds;
+    private final PropertyStore propertyStore;
+
+    /**
+     * A url to crawl, with the levels to crawl it to and whether to traverse links to same website only
+     */
+    public static class Seed {
+        private final String url;
+        private final int levels;
+        private final boolean internalLinksOnly;
+
+        public Seed(String url, int levels, boolean internalLinksOnly) {
+            this.url = url;
+            this.levels = levels;
+            this.internalLinksOnly = internalLinksOnly;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getLevels() {
+            return levels;
+        }
+
+        public boolean isInternalLinksOnly() {
+            return internalLinksOnly;
+        }
+
+        @Override
+        public String toString() {
+            return url + " " + levels + " " + internalLinksOnly;
+        }
+    }
+
+    /**
+     * Top N of a seed
+     */
+    public static class SeedResult {
+        private final Seed seed;
+        private final boolean crawled;
+        private final int documents;
+        private final List<Pair<Word, Integer>> topWords;
+        private final List<Pair<WordPair, Integer>> topWordPairs;
+
+        SeedResult(Seed seed, boolean crawled, int documents, List<Pair<Word, Integer>> topWords,
+                   List<Pair<WordPair, Integer>> topWordPairs) {
+            this.seed = seed;
+            this.crawled = crawled;
+            this.documents = documents;
+            this.topWords = topWords;
+            this.topWordPairs = topWordPairs;
+        }
+
+        static SeedResult failed(Seed seed) {
+            return new SeedResult(seed, false, 0, Collections.emptyList(), Collections.emptyList());
+        }
+
+        public Seed getSeed() {
+            return seed;
+        }
+
+        /**
+         * @return false if the url was invalid or the crawl failed, the top N being empty
+         */
+        public boolean isCrawled() {
+            return crawled;
+        }
+
+        /**
+         * @return number of documents processed
+         */
+        public int getDocuments() {
+            return documents;
+        }
+
+        public List<Pair<Word, Integer>> getTopWords() {
+            return topWords;
+        }
+
+        public List<Pair<WordPair, Integer>> getTopWordPairs() {
+            return topWordPairs;
+        }
+    }
+
+    /**
+     * Top N of each seed, in the order of the seeds, and of all of them together
+     */
+    public static class BatchResult {
+        private final List<SeedResult> seedResults;
+        private final List<Pair<Word, Integer>> topWords;
+        private final List<Pair<WordPair, Integer>> topWordPairs;
+
+        BatchResult(List<SeedResult> seedResults, List<Pair<Word, Integer>> topWords,
+                    List<Pair<WordPair, Integer>> topWordPairs) {
+            this.seedResults = seedResults;
+            this.topWords = topWords;
+            this.topWordPairs = topWordPairs;
+        }
+
+        public List<SeedResult> getSeedResults() {
+            return seedResults;
+        }
+
+        public List<Pair<Word, Integer>> getTopWords() {
+            return topWords;
+        }
+
+        public List<Pair<WordPair, Integer>> getTopWordPairs() {
+            return topWordPairs;
+        }
+    }
+
+    /**
+     * @param seeds - urls to crawl
+     */
+    public BatchApplication(List<Seed> seeds) {
+        this.seeds = seeds;
+        this.propertyStore = PropertyStore.getInstance();
+    }
+
+    /**
+     * Reads the seeds from a file, one per line: url, then optionally the levels and whether internal links only
+     * (true or false), separated by spaces or commas. Blank lines and lines starting with # are skipped.
+     * Missing values are taken from batchDefaultLevels and batchDefaultInternalLinksOnly.
+     * @param file - file of seeds, in UTF-8
+     * @return seeds in the order of the file
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line is not a seed
+     */
+    public static List<Seed> readSeeds(Path file) throws IOException {
+        PropertyStore propertyStore = PropertyStore.getInstance();
+        int defaultLevels = propertyStore.getIntProperty(PropertyStore.BATCH_DEFAULT_LEVELS);
+        boolean defaultInternalLinksOnly = propertyStore.getBooleanProperty(PropertyStore.BATCH_DEFAULT_INTERNAL_LINKS_ONLY);
+        List<Seed> seeds = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("[\\s,]+");
+            if (fields.length > 3) {
+                throw new IllegalArgumentException("Line " + (i + 1) + " of " + file + " is not a seed: " + line);
+            }
+            try {
+                int levels = fields.length > 1 ? Integer.parseInt(fields[1]) : defaultLevels;
+                boolean internalLinksOnly = fields.length > 2 ? parseBoolean(fields[2]) : defaultInternalLinksOnly;
+                seeds.add(new Seed(fields[0], levels, internalLinksOnly));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + " of " + file + " is not a seed: " + line, e);
+            }
+        }
+        return seeds;
+    }
+
+    private static boolean parseBoolean(String value) {
+        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException("Not true or false: " + value);
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Crawls all the seeds
+     * @param topNCount - count of top words and top word pairs, of each seed and of the batch
+     * @return top N of each seed and of the batch
+     */
+    public BatchResult run(int topNCount) {
+
+        //The stores of the batch, to which the counts of each seed are added once it is crawled
+        final WordCountStoreService batchStores = new WordCountStoreService();
+
+        //Pools, backlog and document provider shared by all the seeds
+        final ExecutorService documentProcessorExecutor = DocumentProcessor.newExecutorService();
+        final ExecutorService fetchExecutor = FetchExecutors.newFetchExecutor();
+        final int concurrentSeeds = Math.max(1, Math.min(seeds.size(), propertyStore.getIntProperty(PropertyStore.BATCH_CONCURRENT_SEEDS)));
+        final ExecutorService seedExecutor = new ThreadPoolExecutor(concurrentSeeds, concurrentSeeds, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setNameFormat("seed-%d").build());
+        final ProcessingBacklog backlog = new ProcessingBacklog(
+                propertyStore.getIntProperty(PropertyStore.DOCUMENT_PROCESSOR_MAX_QUEUED_DOCUMENTS),
+                propertyStore.getLongProperty(PropertyStore.DOCUMENT_PROCESSOR_MAX_QUEUED_BYTES));
+        final BackPressurePolicy backPressurePolicy =
+                BackPressurePolicy.fromName(propertyStore.getProperty(PropertyStore.DOCUMENT_PROCESSOR_BACK_PRESSURE_POLICY));
+        final DocumentProvider documentProvider = DocumentProviders.newDocumentProvider();
+
+        try {
+            List<Future<SeedResult>> crawls = new ArrayList<>(seeds.size());
+            for (Seed seed : seeds) {
+                crawls.add(seedExecutor.submit(() -> {
+                    WordCountStoreService seedStores = new WordCountStoreService();
+                    try {
+                        ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(documentProcessorExecutor);
+                        DocumentProcessor documentProcessor = new DocumentProcessor(completionService, seedStores, backlog, backPressurePolicy);
+                        UrlTraverser urlTraverser = new UrlTraverser(documentProcessor, seed.internalLinksOnly, documentProvider, fetchExecutor);
+                        SeedResult result = crawl(seed, urlTraverser, completionService, seedStores, topNCount);
+                        batchStores.addAll(seedStores);
+                        return result;
+                    } finally {
+                        //released as soon as the seed is added to the batch rather than left to the garbage collector
+                        seedStores.close();
+                    }
+                }));
+            }
+            List<SeedResult> seedResults = new ArrayList<>(seeds.size());
+            for (int i = 0; i < crawls.size(); i++) {
+                try {
+                    seedResults.add(crawls.get(i).get());
+                } catch (ExecutionException e) {
+                    logger.error("Crawl of {} failed", seeds.get(i).url, e.getCause());
+                    seedResults.add(SeedResult.failed(seeds.get(i)));
+                } catch (InterruptedException e) {
+                    logger.warn("Interrupted while waiting for the crawls, stopping the batch");
+                    crawls.forEach(crawl -> crawl.cancel(true));
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return new BatchResult(seedResults, batchStores.getTopNWords(topNCount), batchStores.getTopNWordPairs(topNCount));
+        } finally {
+            seedExecutor.shutdown();
+            fetchExecutor.shutdown();
+            documentProcessorExecutor.shutdown();
+            batchStores.close();
+        }
+    }
+
+    private SeedResult crawl(Seed seed, UrlTraverser urlTraverser, CompletionService<Void> completionService,
+                             WordCountStoreService seedStores, int topNCount) {
+        if (!UrlUtil.isValid(seed.url)) {
+            logger.error("Invalid Url - {}, should be in http://... or https://... format.", seed.url);
+            return SeedResult.failed(seed);
+        }
+        int taskCount = urlTraverser.traverse(seed.url, seed.levels);
+
+        //Only the documents of this seed are tracked by its completion service, though processed on the shared executor
+        for (int i = 0; i < taskCount; i++) {
+            try {
+                completionService.take().get();
+            } catch (ExecutionException | InterruptedException e) {
+                logger.debug("while fetching results from documentProcessorExecutor", e);
+            }
+        }
+        logger.debug("crawled {}, {} documents", seed.url, taskCount);
+        return new SeedResult(seed, taskCount > 0, taskCount,
+                seedStores.getTopNWords(topNCount), seedStores.getTopNWordPairs(topNCount));
+    }
+
+    /**
+     * Crawls the seeds of a file, see readSeeds
+     * @param args - file of seeds, and optionally the count of top words and word pairs (10 by default)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: BatchApplication <seeds file> [top N]");
+            System.exit(2);
+        }
+        Application.configureJvm();
+        long start = System.currentTimeMillis();
+        final int topNCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        BatchResult result = new BatchApplication(readSeeds(Paths.get(args[0]))).run(topNCount);
+        for (SeedResult seedResult : result.getSeedResults()) {
+            logger.info("{} - {} documents, top {} words - {}, word pairs - {}", seedResult.getSeed().getUrl(),
+                    seedResult.getDocuments(), topNCount, seedResult.getTopWords(), seedResult.getTopWordPairs());
+        }
+        logger.info("all seeds - top {} words - {}", topNCount, result.getTopWords());
+        logger.info("all seeds - top {} word pairs - {}", topNCount, result.getTopWordPairs());
+        logger.debug("seconds elapsed - {}", (System.currentTimeMillis() - start) / 1000);
+    }
+}
@@ -14,7 +14,7 @@ import java.util.Properties;
 /**
  * Loads and stores application properties.
  * Singleton object, so that it can be accessed from anywhere.
- * Has util methods to give out int, string or string list properties.
+ * Has util methods to give out int, long, double, boolean, string or string list properties.
  * Also provides constants for property keys for easy reference.
  */
 public class PropertyStore {
@@ -26,7 +26,57 @@ public class PropertyStore {
 
     public static final String DOCUMENT_PROCESSOR_CORE_POOL_SIZE = "documentProcessorCorePoolSize";
     public static final String DOCUMENT_PROCESSOR_MAX_POOL_SIZE = "documentProcessorMaxPoolSize";
+    public static final String DOCUMENT_PROCESSOR_MAX_QUEUED_DOCUMENTS = "documentProcessorMaxQueuedDocuments";
+    public static final String DOCUMENT_PROCESSOR_MAX_QUEUED_BYTES = "documentProcessorMaxQueuedBytes";
+    public static final String DOCUMENT_PROCESSOR_BACK_PRESSURE_POLICY = "documentProcessorBackPressurePolicy";
+    public static final String FETCH_POOL_SIZE = "fetchPoolSize";
+    public static final String FETCH_QUEUE_CAPACITY = "fetchQueueCapacity";
+    public static final String FETCH_VIRTUAL_THREADS = "fetchVirtualThreads";
+    public static final String STREAMING_FETCH = "streamingFetch";
+    public static final String HTTP_CLIENT_FETCH = "httpClientFetch";
+    public static final String HTTP_CONNECT_TIMEOUT_MILLIS = "httpConnectTimeoutMillis";
+    public static final String HTTP_READ_TIMEOUT_MILLIS = "httpReadTimeoutMillis";
+    public static final String HTTP_MAX_BODY_BYTES = "httpMaxBodyBytes";
+    public static final String HTTP_ACCEPT_ENCODING = "httpAcceptEncoding";
+    public static final String HTTP_USER_AGENT = "httpUserAgent";
+    public static final String HTTP_MAX_CONNECTIONS_PER_HOST = "httpMaxConnectionsPerHost";
+    public static final String HTTP_CACHE_DIRECTORY = "httpCacheDirectory";
+    public static final String HTTP_CACHE_MAX_BYTES = "httpCacheMaxBytes";
+    public static final String POLITE_FETCH = "politeFetch";
+    public static final String HOST_MAX_CONCURRENT_REQUESTS = "hostMaxConcurrentRequests";
+    public static final String HOST_REQUESTS_PER_SECOND = "hostRequestsPerSecond";
+    public static final String HOST_MAX_RETRIES = "hostMaxRetries";
+    public static final String HOST_RETRY_BACKOFF_MILLIS = "hostRetryBackoffMillis";
+    public static final String HOST_MAX_RETRY_AFTER_MILLIS = "hostMaxRetryAfterMillis";
+    public static final String HOST_IDLE_EVICTION_MILLIS = "hostIdleEvictionMillis";
+    public static final String URL_STRIPPED_QUERY_PARAMETERS = "urlStrippedQueryParameters";
+    public static final String URL_SORT_QUERY_PARAMETERS = "urlSortQueryParameters";
+    public static final String VISITED_URL_BLOOM_FILTER_EXPECTED_URLS = "visitedUrlBloomFilterExpectedUrls";
+    public static final String VISITED_URL_BLOOM_FILTER_FPP = "visitedUrlBloomFilterFpp";
+    public static final String BATCH_CONCURRENT_SEEDS = "batchConcurrentSeeds";
+    public static final String BATCH_DEFAULT_LEVELS = "batchDefaultLevels";
+    public static final String BATCH_DEFAULT_INTERNAL_LINKS_ONLY = "batchDefaultInternalLinksOnly";
+    public static final String DISTRIBUTED_WORKERS = "distributedWorkers";
+    public static final String DISTRIBUTED_PORT = "distributedPort";
+    public static final String DISTRIBUTED_START_LOCAL_WORKERS = "distributedStartLocalWorkers";
+    public static final String DISTRIBUTED_WORKER_TIMEOUT_SECONDS = "distributedWorkerTimeoutSeconds";
+    public static final String DISTRIBUTED_READ_TIMEOUT_SECONDS = "distributedReadTimeoutSeconds";
+    public static final String CHECKPOINT_DIRECTORY = "checkpointDirectory";
+    public static final String CHECKPOINT_RESUME = "checkpointResume";
+    public static final String CHECKPOINT_SNAPSHOT_INTERVAL_SECONDS = "checkpointSnapshotIntervalSeconds";
+    public static final String CHECKPOINT_QUEUE_CAPACITY = "checkpointQueueCapacity";
     public static final String STOP_WORDS = "stopWords";
+    public static final String STOP_WORDS_FILES = "stopWordsFiles";
+    public static final String WORD_COUNT_STORE_TYPE = "wordCountStoreType";
+    public static final String WORD_COUNT_STORE_SHARDS = "wordCountStoreShards";
+    public static final String OFF_HEAP_STORE_DIRECTORY = "offHeapStoreDirectory";
+    public static final String APPROXIMATE_STORE_CAPACITY = "approximateStoreCapacity";
+    public static final String APPROXIMATE_STORE_SKETCH_EPSILON = "approximateStoreSketchEpsilon";
+    public static final String APPROXIMATE_STORE_SKETCH_DELTA = "approximateStoreSketchDelta";
+    public static final String WORD_COUNT_SNAPSHOT_DIRECTORY = "wordCountSnapshotDirectory";
+    public static final String LIVE_TOP_N_EVERY_DOCUMENTS = "liveTopNEveryDocuments";
+    public static final String LIVE_TOP_N_INTERVAL_SECONDS = "liveTopNIntervalSeconds";
+    public static final String LIVE_TOP_N_STOP_AFTER_UNCHANGED_SNAPSHOTS = "liveTopNStopAfterUnchangedSnapshots";
 
     public PropertyStore() {
         try (InputStream inputStream = getClass().getResourceAsStream(propsFile)){
@@ -50,6 +100,18 @@ public class PropertyStore {
         return Integer.parseInt(properties.getProperty(key));
     }
 
+    public long getLongProperty(String key){
+        return Long.parseLong(properties.getProperty(key));
+    }
+
+    public double getDoubleProperty(String key){
+        return Double.parseDouble(properties.getProperty(key));
+    }
+
+    public boolean getBooleanProperty(String key){
+        return Boolean.parseBoolean(properties.getProperty(key));
+    }
+
     public List<String> getPropertyList(String key) {
         String value = properties.getProperty(key);
         if (StringUtils.isNotEmpty(value)) {
@@ -2,7 +2,6 @@ package com.purini.fw.domain;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 
 /**
  * represent a single word
@@ -15,6 +14,15 @@ public class Word implements WordConstruct<Word> {
         this.word = word;
     }
 
+    /**
+     * Inverse of getWords
+     * @param words - list with a single word
+     * @return word
+     */
+    public static Word fromWords(List<String> words) {
+        return new Word(words.get(0));
+    }
+
     @Override
     public List<String> getWords() {
         return Collections.singletonList(word);
@@ -40,7 +48,7 @@ public class Word implements WordConstruct<Word> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(word);
+        return 31 + word.hashCode(); //same as Objects.hash(word), without allocating the varargs array
     }
 
     @Override
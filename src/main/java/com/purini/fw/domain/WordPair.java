@@ -2,7 +2,6 @@ package com.purini.fw.domain;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 
 /**
  * Represents a word pair, separator is by default a space
@@ -23,6 +22,15 @@ public class WordPair implements WordConstruct<WordPair> {
         this.separator = separator;
     }
 
+    /**
+     * Inverse of getWords
+     * @param words - list of two words
+     * @return word pair with the default separator
+     */
+    public static WordPair fromWords(List<String> words) {
+        return new WordPair(words.get(0), words.get(1));
+    }
+
     @Override
     public List<String> getWords() {
         return Arrays.asList(word1, word2);
@@ -49,7 +57,7 @@ public class WordPair implements WordConstruct<WordPair> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(word1, word2);
+        return 31 * (31 + word1.hashCode()) + word2.hashCode(); //same as Objects.hash(word1, word2), without allocating
     }
 
     @Override
@@ -0,0 +1,167 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.WordConstruct;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Store that only tracks the heavy hitters, in fixed memory regardless of how many distinct words are added.
+ *
+ * It implements Space-Saving: at most capacity words are monitored, each with a counter.
+ * A word that is not monitored replaces the monitored word with the least count, and inherits that
+ * count plus its own. Thus, for a total of N words added:
+ * - every word occurring more than N / capacity times is monitored
+ * - the count of a monitored word is over estimated by at most N / capacity
+ * So capacity = 1 / (error bound relative to N).
+ *
+ * Optionally a Count-Min Sketch filters the replacements: a new word replaces the least counted one
+ * only when its estimated count from the sketch exceeds that count, and it then starts from the estimate.
+ * This keeps the rare words from churning the monitored words, at the cost of the sketch's fixed memory.
+ *
+ * The monitored words are indexed by a HashMap and ordered by a min heap on the count,
+ * so adding a word is O(log capacity). As with WordCountStore, the add and get methods are synchronized.
+ *
+ * @param <T> generic parameter to denote either a WordConstruct i.e. Word or WordPair
+ */
+public class ApproximateWordCountStore<T extends WordConstruct<T>> implements WordStore<T> {
+
+    private final int capacity;
+    @Nullable
+    private final CountMinSketch sketch;
+    private final Map<T, Counter<T>> monitored;
+    private final List<Counter<T>> heap;
+
+    /**
+     * @param capacity - maximum number of words monitored
+     * @param sketch - sketch to filter the replacements or null for plain Space-Saving
+     */
+    public ApproximateWordCountStore(int capacity, @Nullable CountMinSketch sketch) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity should be at least 1, found " + capacity);
+        }
+        this.capacity = capacity;
+        this.sketch = sketch;
+        this.monitored = new HashMap<>(capacity * 2);
+        this.heap = new ArrayList<>(capacity);
+    }
+
+    @Override
+    synchronized public void addWord(T lowerCaseWord, T word, int count) {
+        final int estimate = sketch != null ? sketch.add(lowerCaseWord.hashCode(), count) : 0;
+        Counter<T> counter = monitored.get(lowerCaseWord);
+        if (counter != null) {
+            counter.count += count;
+            counter.originalWord = word;
+            siftDown(counter.heapIndex);
+        } else if (heap.size() < capacity) {
+            counter = new Counter<>(lowerCaseWord, word, Math.max(count, estimate));
+            monitored.put(lowerCaseWord, counter);
+            counter.heapIndex = heap.size();
+            heap.add(counter);
+            siftUp(counter.heapIndex);
+        } else {
+            Counter<T> leastCounted = heap.get(0);
+            if (sketch != null && estimate <= leastCounted.count) {
+                return;
+            }
+            monitored.remove(leastCounted.word);
+            leastCounted.word = lowerCaseWord;
+            leastCounted.originalWord = word;
+            leastCounted.count = sketch != null ? estimate : leastCounted.count + count;
+            monitored.put(lowerCaseWord, leastCounted);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Adds all the counts under a single acquisition of the lock
+     * @param counts - word (original form) to number of occurrences, in the order of last occurrence
+     */
+    @Override
+    synchronized public void addCounts(Map<T, Integer> counts) {
+        counts.forEach((word, count) -> addWord(word.toLowerCase(), word, count));
+    }
+
+    /**
+     * Gives out top n of the monitored words, sorted by their estimated frequency in descending order.
+     * @param n - number of top words to return
+     * @return a list of pair of word and estimated count
+     */
+    @Override
+    synchronized public List<Pair<T, Integer>> getTopNWords(int n) {
+        List<Pair<T, Integer>> topWords = new ArrayList<>(heap.size());
+        for (Counter<T> counter : heap) {
+            topWords.add(Pair.of(counter.originalWord, counter.count));
+        }
+        topWords.sort(WordStore.rankingOrder());
+        return new ArrayList<>(topWords.subList(0, Math.min(n, topWords.size())));
+    }
+
+    /**
+     * Passes over the monitored words only, with their estimated counts
+     * @param action - takes each word (original form) and its estimated count
+     */
+    @Override
+    synchronized public void forEachCount(ObjIntConsumer<T> action) {
+        heap.forEach(counter -> action.accept(counter.originalWord, counter.count));
+    }
+
+    private void siftUp(int index) {
+        Counter<T> counter = heap.get(index);
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap.get(parent).count <= counter.count) {
+                break;
+            }
+            place(heap.get(parent), index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter<T> counter = heap.get(index);
+        while (true) {
+            int child = (index << 1) + 1;
+            if (child >= heap.size()) {
+                break;
+            }
+            if (child + 1 < heap.size() && heap.get(child + 1).count < heap.get(child).count) {
+                child++;
+            }
+            if (heap.get(child).count >= counter.count) {
+                break;
+            }
+            place(heap.get(child), index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter<T> counter, int index) {
+        heap.set(index, counter);
+        counter.heapIndex = index;
+    }
+
+    /**
+     * Monitored word along with its count and position in the heap
+     */
+    private static class Counter<T> {
+        private T word;
+        private T originalWord;
+        private int count;
+        private int heapIndex;
+
+        private Counter(T word, T originalWord, int count) {
+            this.word = word;
+            this.originalWord = originalWord;
+            this.count = count;
+        }
+    }
+}
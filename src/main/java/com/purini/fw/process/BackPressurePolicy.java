@@ -0,0 +1,30 @@
+package com.purini.fw.process;
+
+/**
+ * What a fetcher does when the document processing backlog is full, set by documentProcessorBackPressurePolicy
+ */
+public enum BackPressurePolicy {
+    /**
+     * Waits till there is room in the backlog, so fetching stops till processing catches up
+     */
+    BLOCK,
+    /**
+     * Processes the document on the fetcher's own thread, so fetching slows down to the processing speed
+     * while the fetcher is kept busy
+     */
+    CALLER_RUNS;
+
+    /**
+     * @param name - name of the policy, case insensitive and ignoring _ and -, e.g. block, callerRuns
+     * @return policy of the name
+     */
+    public static BackPressurePolicy fromName(String name) {
+        String normalizedName = name.trim().replace("_", "").replace("-", "");
+        for (BackPressurePolicy policy : values()) {
+            if (policy.name().replace("_", "").equalsIgnoreCase(normalizedName)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown back pressure policy " + name);
+    }
+}
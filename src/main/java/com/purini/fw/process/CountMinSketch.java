@@ -0,0 +1,48 @@
+package com.purini.fw.process;
+
+/**
+ * Count-Min Sketch: fixed size table of depth x width counters that estimates the frequency of any item,
+ * never under estimating and over estimating by at most epsilon * (total count) with the probability of 1 - delta.
+ *
+ * width = ceil(e / epsilon) and depth = ceil(ln(1 / delta)), the rows being indexed by
+ * independent-enough hashes derived from the hash code of the item (h1 + i * h2).
+ *
+ * Not thread safe, the owner is expected to guard it.
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final int[] counters;
+
+    /**
+     * @param epsilon - error bound relative to the total count, e.g. 0.0001
+     * @param delta - probability of exceeding the error bound, e.g. 0.01
+     */
+    public CountMinSketch(double epsilon, double delta) {
+        if (epsilon <= 0 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("epsilon should be > 0 and delta in (0, 1), found " + epsilon + ", " + delta);
+        }
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = (int) Math.ceil(Math.log(1 / delta));
+        this.counters = new int[width * depth];
+    }
+
+    /**
+     * Adds occurrences of the item
+     * @param hashCode - hash code of the item
+     * @param count - number of occurrences
+     * @return estimated count of the item after adding it
+     */
+    public int add(int hashCode, int count) {
+        final int h1 = TermDictionary.mix(hashCode);
+        final int h2 = TermDictionary.mix(h1 ^ 0x9e3779b9) | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            final int index = i * width + Math.floorMod(h1 + i * h2, width);
+            counters[index] = (int) Math.min(Integer.MAX_VALUE, (long) counters[index] + count);
+            estimate = Math.min(estimate, counters[index]);
+        }
+        return estimate;
+    }
+}
@@ -0,0 +1,30 @@
+package com.purini.fw.process;
+
+/**
+ * Fixed capacity table of slots, each holding a packed key, its count and the packed original form.
+ * Backs the open addressing hash table of InternedWordCountStore, a count of 0 being an empty slot.
+ */
+public interface CountTable {
+
+    /**
+     * Bytes of a slot: key (long), count (int) and original form (long)
+     */
+    int SLOT_BYTES = 2 * Long.BYTES + Integer.BYTES;
+
+    int capacity();
+
+    long key(int slot);
+
+    int count(int slot);
+
+    long original(int slot);
+
+    void set(int slot, long key, int count, long original);
+
+    /**
+     * Releases the memory of the table once it is replaced, e.g. by a bigger one on growth.
+     * The table must not be used afterwards. Nothing to do for a table on the heap.
+     */
+    default void release() {
+    }
+}
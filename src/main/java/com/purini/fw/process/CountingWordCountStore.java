@@ -0,0 +1,193 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.WordConstruct;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Store for word constructs that only keeps the counts while the words are being added
+ * and ranks them on demand.
+ *
+ * As opposed to WordCountStore, which keeps the results sorted at all times at the cost of
+ * a remove and a put on a sorted multimap (and two allocations) for every word, here adding
+ * a word is a single hash lookup and an increment. Only a new word allocates its counter.
+ *
+ * Top N is computed when asked for, by passing once over all the counts while keeping
+ * a min heap bounded to n entries, i.e. O(m log n) for m distinct words.
+ * The result is cached until the next word is added, so repeated calls are cheap.
+ *
+ * As with WordCountStore, the add and get methods are synchronized and getTopNWords ranks the counts in place,
+ * except for snapshotTopNWords, which copies the counts under the lock and ranks the copy outside of it.
+ *
+ * @param <T> generic parameter to denote either a WordConstruct i.e. Word or WordPair
+ */
+public class CountingWordCountStore<T extends WordConstruct<T>> implements WordStore<T> {
+
+    private final Map<T, Counter<T>> wordToCount = new HashMap<>();
+    private List<Pair<T, Integer>> cachedTopWords = null;
+
+    @Override
+    synchronized public void addWord(T lowerCaseWord, T word, int count) {
+        Counter<T> counter = wordToCount.get(lowerCaseWord);
+        if (counter == null) {
+            wordToCount.put(lowerCaseWord, new Counter<>(word, count));
+        } else {
+            counter.count += count;
+            counter.originalWord = word;
+        }
+        cachedTopWords = null;
+    }
+
+    /**
+     * Adds all the counts under a single acquisition of the lock
+     * @param counts - word (original form) to number of occurrences, in the order of last occurrence
+     */
+    @Override
+    synchronized public void addCounts(Map<T, Integer> counts) {
+        counts.forEach((word, count) -> addWord(word.toLowerCase(), word, count));
+    }
+
+    /**
+     * Gives out top n words, sorted by their frequency in descending order.
+     * Uses the cached result if nothing has been added since it was computed for at least n words.
+     * @param n - number of top words to return
+     * @return a list of pair of word and count
+     */
+    @Override
+    synchronized public List<Pair<T, Integer>> getTopNWords(int n) {
+        int maxTopWords = Math.min(n, wordToCount.size());
+        if (cachedTopWords == null || cachedTopWords.size() < maxTopWords) {
+            cachedTopWords = Collections.unmodifiableList(rank(maxTopWords));
+        }
+        return new ArrayList<>(cachedTopWords.subList(0, maxTopWords));
+    }
+
+    /**
+     * Same as getTopNWords, the store being locked only to copy the counts and not while they are ranked,
+     * so adding words is held up for a pass over the counts rather than for the ranking
+     * @param n - number of top words to return
+     * @return a list of pair of word and count
+     */
+    @Override
+    public List<Pair<T, Integer>> snapshotTopNWords(int n) {
+        final Counts<T> counts;
+        synchronized (this) {
+            int maxTopWords = Math.min(n, wordToCount.size());
+            if (cachedTopWords != null && cachedTopWords.size() >= maxTopWords) {
+                return new ArrayList<>(cachedTopWords.subList(0, maxTopWords));
+            }
+            counts = copyCounts();
+        }
+        return counts.rank(Math.min(n, counts.size()));
+    }
+
+    @Override
+    synchronized public void forEachCount(ObjIntConsumer<T> action) {
+        wordToCount.values().forEach(counter -> action.accept(counter.originalWord, counter.count));
+    }
+
+    private List<Pair<T, Integer>> rank(int n) {
+        if (n <= 0) {
+            return Collections.emptyList();
+        }
+        //Head of the heap is the weakest of the current top n, i.e. least count and then greatest word
+        Comparator<Map.Entry<T, Counter<T>>> weakestFirst = Comparator
+                .<Map.Entry<T, Counter<T>>>comparingInt(e -> e.getValue().count)
+                .thenComparing((e1, e2) -> e2.getKey().getValue().compareTo(e1.getKey().getValue()));
+        PriorityQueue<Map.Entry<T, Counter<T>>> topN = new PriorityQueue<>(n, weakestFirst);
+        for (Map.Entry<T, Counter<T>> entry : wordToCount.entrySet()) {
+            if (topN.size() < n) {
+                topN.add(entry);
+            } else if (weakestFirst.compare(entry, topN.peek()) > 0) {
+                topN.poll();
+                topN.add(entry);
+            }
+        }
+        List<Pair<T, Integer>> topWords = new ArrayList<>(topN.size());
+        while (!topN.isEmpty()) {
+            Counter<T> counter = topN.poll().getValue();
+            topWords.add(Pair.of(counter.originalWord, counter.count));
+        }
+        Collections.reverse(topWords);
+        return topWords;
+    }
+
+    private Counts<T> copyCounts() {
+        Counts<T> counts = new Counts<>(wordToCount.size());
+        wordToCount.forEach((lowerCaseWord, counter) -> counts.add(lowerCaseWord, counter.originalWord, counter.count));
+        return counts;
+    }
+
+    /**
+     * Mutable count along with the last seen original form of the word
+     */
+    private static class Counter<T> {
+        private T originalWord;
+        private int count;
+
+        private Counter(T originalWord, int count) {
+            this.originalWord = originalWord;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Copy of the counts in parallel arrays, which can be ranked without the lock of the store
+     */
+    private static class Counts<T extends WordConstruct<T>> {
+        private final List<T> lowerCaseWords;
+        private final List<T> originalWords;
+        private final int[] counts;
+
+        private Counts(int size) {
+            this.lowerCaseWords = new ArrayList<>(size);
+            this.originalWords = new ArrayList<>(size);
+            this.counts = new int[size];
+        }
+
+        private void add(T lowerCaseWord, T originalWord, int count) {
+            counts[lowerCaseWords.size()] = count;
+            lowerCaseWords.add(lowerCaseWord);
+            originalWords.add(originalWord);
+        }
+
+        private int size() {
+            return lowerCaseWords.size();
+        }
+
+        private List<Pair<T, Integer>> rank(int n) {
+            if (n <= 0) {
+                return Collections.emptyList();
+            }
+            //Head of the heap is the weakest of the current top n, i.e. least count and then greatest word
+            Comparator<Integer> weakestFirst = Comparator
+                    .<Integer>comparingInt(i -> counts[i])
+                    .thenComparing((i1, i2) -> lowerCaseWords.get(i2).getValue().compareTo(lowerCaseWords.get(i1).getValue()));
+            PriorityQueue<Integer> topN = new PriorityQueue<>(n, weakestFirst);
+            for (int i = 0; i < size(); i++) {
+                if (topN.size() < n) {
+                    topN.add(i);
+                } else if (weakestFirst.compare(i, topN.peek()) > 0) {
+                    topN.poll();
+                    topN.add(i);
+                }
+            }
+            List<Pair<T, Integer>> topWords = new ArrayList<>(topN.size());
+            while (!topN.isEmpty()) {
+                int i = topN.poll();
+                topWords.add(Pair.of(originalWords.get(i), counts[i]));
+            }
+            Collections.reverse(topWords);
+            return topWords;
+        }
+    }
+
+}
@@ -0,0 +1,378 @@
+package com.purini.fw.process;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkpoint of a crawl on disk, so that a crawl cut short, e.g. by the JVM dying, can be resumed
+ * without fetching again the pages it had completed.
+ *
+ * The traversal records the urls of each level and the new links of each page fetched, and the document processor
+ * the word and word pair counts of each page (see CrawlState for the records). The records are appended to a log
+ * by a single writer thread, the recording threads only encoding them and handing them over, so that fetching and
+ * processing are not held up by the disk. The records waiting for the writer are bounded by checkpointQueueCapacity,
+ * beyond which a recording thread waits for room, so that a writer falling behind slows the crawl down
+ * rather than filling the heap. The log is flushed whenever the writer has nothing more to write.
+ *
+ * Every checkpointSnapshotIntervalSeconds, whether or not records are waiting, the writer starts a new log and folds
+ * the snapshot and the earlier logs into a new snapshot, holding the counts merged across all the complete pages,
+ * so that resuming doesn't replay the whole crawl page by page. Folding reads the whole state into the heap,
+ * i.e. the counts of every distinct word and word pair and every url seen, as resuming does, and takes the writer
+ * the time to read and write it all, the recording threads waiting once the queue is full. Hence the interval is
+ * to be kept well above that time on large crawls. Files in the directory:
+ * - log-N: records of generation N, appended to
+ * - snapshot: state as of all the logs before the generation it names, replaced atomically
+ */
+public class CrawlCheckpoint implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlCheckpoint.class);
+    private static final String SNAPSHOT = "snapshot";
+    private static final String LOG_PREFIX = "log-";
+
+    private final Path directory;
+    private final long snapshotIntervalMillis;
+    private final ThreadPoolExecutor writer;
+
+    //used by the writer thread only
+    private DataOutputStream log;
+    private long generation;
+    private long lastSnapshotMillis;
+    private boolean failed;
+
+    /**
+     * Urls and links of the level to carry on from, and the pages to fetch again, from the checkpoint of a crawl
+     */
+    public static class ResumedCrawl {
+        private final int depth;
+        private final List<String> pendingUrls;
+        private final Map<String, Integer> pagesToRecount;
+        private final List<String> nextLevelUrls;
+        private final Collection<String> visitedUrls;
+        private final int completePages;
+
+        ResumedCrawl(int depth, List<String> pendingUrls, Map<String, Integer> pagesToRecount, List<String> nextLevelUrls,
+                     Collection<String> visitedUrls, int completePages) {
+            this.depth = depth;
+            this.pendingUrls = pendingUrls;
+            this.pagesToRecount = pagesToRecount;
+            this.nextLevelUrls = nextLevelUrls;
+            this.visitedUrls = visitedUrls;
+            this.completePages = completePages;
+        }
+
+        /**
+         * @return depth of the level the crawl was at
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * @return urls of the level not fetched yet
+         */
+        public List<String> getPendingUrls() {
+            return pendingUrls;
+        }
+
+        /**
+         * @return pages fetched, with their links recorded, but whose counts weren't recorded, to their depth
+         */
+        public Map<String, Integer> getPagesToRecount() {
+            return pagesToRecount;
+        }
+
+        /**
+         * @return new links of the pages of the level fetched, i.e. the urls of the next level so far
+         */
+        public List<String> getNextLevelUrls() {
+            return nextLevelUrls;
+        }
+
+        /**
+         * @return all the urls visited, i.e. not to be taken as new links
+         */
+        public Collection<String> getVisitedUrls() {
+            return visitedUrls;
+        }
+
+        /**
+         * @return number of pages complete, whose counts are in the stores already
+         */
+        public int getCompletePages() {
+            return completePages;
+        }
+    }
+
+    /**
+     * @param directory - directory of the checkpoint, created if missing
+     * @param snapshotIntervalSeconds - interval between snapshots
+     * @param queueCapacity - records that can wait for the writer, beyond which recording waits
+     * @throws IOException if the directory cannot be created
+     */
+    public CrawlCheckpoint(Path directory, long snapshotIntervalSeconds, int queueCapacity) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.snapshotIntervalMillis = TimeUnit.SECONDS.toMillis(snapshotIntervalSeconds);
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("checkpoint-writer-%d").setDaemon(true).build(),
+                CrawlCheckpoint::awaitRoom);
+    }
+
+    /**
+     * Waits for room in the queue of the writer, rather than rejecting the record
+     */
+    private static void awaitRoom(Runnable task, ThreadPoolExecutor writer) {
+        if (writer.isShutdown()) {
+            throw new RejectedExecutionException("Crawl checkpoint closed");
+        }
+        try {
+            writer.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the crawl checkpoint writer", e);
+        }
+    }
+
+    /**
+     * Starts the checkpoint of a new crawl, discarding any earlier one.
+     * Either this or resume is to be called before recording.
+     * @param url - url crawled
+     * @param levels - levels crawled
+     * @param internalLinksOnly - whether only internal links are crawled
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void start(String url, int levels, boolean internalLinksOnly) throws IOException {
+        for (Path file : files()) {
+            Files.delete(file);
+        }
+        openLog(1);
+        append(CrawlState.encodeStart(url, levels, internalLinksOnly));
+    }
+
+    /**
+     * Rebuilds the crawl from its checkpoint, merging the counts of its complete pages into the stores,
+     * and carries on recording the crawl after it
+     * @param url - url crawled
+     * @param levels - levels crawled
+     * @param internalLinksOnly - whether only internal links are crawled
+     * @param stores - stores to merge the counts into
+     * @return the crawl to resume, or null if there is no checkpoint of the same crawl
+     * @throws IOException if the checkpoint cannot be read
+     */
+    @Nullable
+    public ResumedCrawl resume(String url, int levels, boolean internalLinksOnly, WordCountStoreService stores) throws IOException {
+        final CrawlState state = new CrawlState();
+        final long lastGeneration = load(state);
+        if (!state.isStarted() || !state.url.equals(url) || state.levels != levels || state.internalLinksOnly != internalLinksOnly) {
+            logger.info("No checkpoint of the crawl of {} to resume in {}", url, directory);
+            return null;
+        }
+        openLog(lastGeneration + 1);
+        stores.addCounts(state.wordCounts, state.wordPairCounts);
+
+        final List<String> pendingUrls = new ArrayList<>();
+        for (String levelUrl : state.levelUrls) {
+            if (!state.levelPages.containsKey(levelUrl)) {
+                pendingUrls.add(levelUrl);
+            }
+        }
+        final Set<String> nextLevelUrls = new LinkedHashSet<>();
+        state.levelPages.values().forEach(nextLevelUrls::addAll);
+        logger.info("Resuming the crawl of {} at depth {}, {} pages complete, {} pending, {} to fetch again for their counts",
+                url, state.depth, state.completePages, pendingUrls.size(), state.pagesWithoutCounts.size());
+        return new ResumedCrawl(state.depth, pendingUrls, new LinkedHashMap<>(state.pagesWithoutCounts),
+                new ArrayList<>(nextLevelUrls), state.knownUrls, state.completePages);
+    }
+
+    /**
+     * @param depth - depth of the level
+     * @param urls - urls of the level, about to be fetched
+     */
+    public void recordLevel(int depth, Collection<String> urls) {
+        CrawlState.encodeLevel(depth, urls).forEach(this::submit);
+    }
+
+    /**
+     * @param url - url of the page fetched
+     * @param depth - depth of the page
+     * @param links - new links of the page
+     */
+    public void recordPage(String url, int depth, Collection<String> links) {
+        submit(CrawlState.encodePage(url, depth, links));
+    }
+
+    /**
+     * @param url - url of the page
+     * @param wordCounts - word counts of the page
+     * @param wordPairCounts - word pair counts of the page
+     */
+    public void recordCounts(String url, Map<Word, Integer> wordCounts, Map<WordPair, Integer> wordPairCounts) {
+        submit(CrawlState.encodeCounts(url, wordCounts, wordPairCounts));
+    }
+
+    /**
+     * Writes what is recorded so far and a last snapshot
+     */
+    @Override
+    public void close() {
+        writer.execute(() -> {
+            try {
+                if (!failed && log != null) {
+                    snapshot();
+                    log.close();
+                }
+            } catch (IOException e) {
+                logger.error("Error while closing the crawl checkpoint", e);
+            }
+        });
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("Crawl checkpoint not closed in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(byte[] record) {
+        writer.execute(() -> {
+            if (failed || log == null) {
+                return; //failed, or neither started nor resumed
+            }
+            try {
+                append(record);
+                if (System.currentTimeMillis() - lastSnapshotMillis >= snapshotIntervalMillis) {
+                    snapshot();
+                } else if (writer.getQueue().isEmpty()) {
+                    log.flush();
+                }
+            } catch (IOException e) {
+                failed = true;
+                logger.error("Error while writing the crawl checkpoint, no more checkpoints are written", e);
+            }
+        });
+    }
+
+    private void append(byte[] record) throws IOException {
+        CrawlState.writeRecord(log, record);
+    }
+
+    private void openLog(long generation) throws IOException {
+        this.generation = generation;
+        this.log = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(logPath(generation))));
+        this.lastSnapshotMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Starts a new log and folds the snapshot and the earlier logs into a new snapshot.
+     * Loads the whole state into the heap to do so, see the class comment for the cost.
+     */
+    private void snapshot() throws IOException {
+        log.close();
+        final long snapshotGeneration = generation;
+        openLog(generation + 1);
+
+        final CrawlState state = new CrawlState();
+        load(state);
+        final Path temp = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             BufferedOutputStream out = new BufferedOutputStream(file)) {
+            state.writeSnapshot(out, snapshotGeneration + 1);
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Path file : files()) {
+            final long fileGeneration = generationOf(file);
+            if (fileGeneration > 0 && fileGeneration <= snapshotGeneration) {
+                Files.delete(file);
+            }
+        }
+        logger.debug("crawl checkpoint snapshot as of log {}", snapshotGeneration);
+    }
+
+    /**
+     * Applies the snapshot and then the logs after it, excluding the log being written if any
+     * @return generation of the last log applied, or the one before the first log after the snapshot
+     */
+    private long load(CrawlState state) throws IOException {
+        long nextGeneration = 1;
+        final Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshot))) {
+                nextGeneration = state.readSnapshot(in);
+            }
+        }
+        final List<Long> generations = new ArrayList<>();
+        for (Path file : files()) {
+            final long fileGeneration = generationOf(file);
+            if (fileGeneration >= nextGeneration && !(log != null && fileGeneration == generation)) {
+                generations.add(fileGeneration);
+            }
+        }
+        Collections.sort(generations);
+        long lastGeneration = nextGeneration - 1;
+        for (long logGeneration : generations) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(logPath(logGeneration)))) {
+                state.applyLog(in);
+            }
+            lastGeneration = logGeneration;
+        }
+        return lastGeneration;
+    }
+
+    private List<Path> files() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            paths.forEach(files::add);
+        }
+        return files;
+    }
+
+    private Path logPath(long generation) {
+        return directory.resolve(LOG_PREFIX + generation);
+    }
+
+    /**
+     * @return generation of a log file, or -1 if not a log file
+     */
+    private static long generationOf(Path file) {
+        final String name = file.getFileName().toString();
+        if (!name.startsWith(LOG_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(LOG_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.purini.fw.process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Coordinator of a distributed crawl, for when a single JVM cannot keep up with the pages to fetch.
+ *
+ * Workers (CrawlWorker), e.g. one JVM each, connect to the coordinator over a loopback socket. The url space is
+ * partitioned by a consistent hash of the host (HostPartitioner), each worker owning the urls of its hosts,
+ * so that it alone checks them for being visited and fetches them politely with its own pipeline.
+ *
+ * The crawl stays level synchronous, as with UrlTraverser: the coordinator hands each worker the urls of a level
+ * that it owns, and once all the workers have sent back the links found, routes the links to their owners as the
+ * next level. At the end, each worker sends its full counts as word count snapshots, which are merged into one
+ * snapshot of the words and one of the word pairs (WordCountSnapshot.merge), streaming through the files rather
+ * than loading them into the heap, a word being counted by as many workers as crawled it. The global top N is
+ * then ranked from the merged snapshots (WordCountSnapshot.getTopN).
+ *
+ * A worker failing, or not answering within the read timeout, fails the crawl.
+ */
+public class CrawlCoordinator implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlCoordinator.class);
+
+    private final ServerSocket serverSocket;
+    private final int readTimeoutMillis;
+    private final List<Worker> workers = new ArrayList<>();
+
+    /**
+     * Listens for workers on the loopback address
+     * @param port - port to listen on, 0 for any free port
+     * @param readTimeoutMillis - max time to wait for a worker to answer, e.g. with the links of a level
+     *                          or its results, 0 for no limit
+     * @throws IOException if the port cannot be bound
+     */
+    public CrawlCoordinator(int port, int readTimeoutMillis) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * @return port the coordinator listens on, for the workers to connect to
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Waits for the workers to connect
+     * @param count - number of workers to wait for
+     * @param timeoutMillis - max time to wait for all of them
+     * @throws IOException if not all the workers have connected in time
+     */
+    public void awaitWorkers(int count, long timeoutMillis) throws IOException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (workers.size() < count) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("Only " + workers.size() + " of " + count + " crawl workers connected");
+            }
+            serverSocket.setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setSoTimeout(readTimeoutMillis);
+                workers.add(new Worker(socket));
+            } catch (SocketTimeoutException e) {
+                throw new SocketTimeoutException("Only " + workers.size() + " of " + count + " crawl workers connected");
+            }
+            logger.info("crawl worker {} of {} connected", workers.size(), count);
+        }
+    }
+
+    /**
+     * Crawls on the connected workers, as UrlTraverser.traverse does
+     * @param url - starting url
+     * @param levels - number of levels to traverse
+     * @param internalLinksOnly - whether to traverse links to same website only
+     * @param wordsFile - snapshot to write the word counts of all the workers to
+     * @param wordPairsFile - snapshot to write the word pair counts of all the workers to
+     * @return number of documents processed by the workers
+     * @throws IOException if talking to a worker fails, or a snapshot cannot be written
+     */
+    public int crawl(String url, int levels, boolean internalLinksOnly, Path wordsFile, Path wordPairsFile) throws IOException {
+        if (workers.isEmpty()) {
+            throw new IllegalStateException("No crawl workers connected");
+        }
+        final HostPartitioner partitioner = new HostPartitioner(workers.size());
+        for (Worker worker : workers) {
+            worker.out.writeByte(CrawlProtocol.START);
+            worker.out.writeBoolean(internalLinksOnly);
+        }
+
+        List<Set<String>> frontier = partition(Collections.singletonList(url), partitioner);
+        for (int depth = 0; depth <= levels && frontier.stream().anyMatch(urls -> !urls.isEmpty()); depth++) {
+            for (int i = 0; i < workers.size(); i++) {
+                final DataOutputStream out = workers.get(i).out;
+                out.writeByte(CrawlProtocol.LEVEL);
+                out.writeInt(depth);
+                out.writeBoolean(depth < levels);
+                CrawlProtocol.writeStrings(out, frontier.get(i));
+                out.flush();
+            }
+            final List<String> links = new ArrayList<>();
+            for (Worker worker : workers) {
+                CrawlProtocol.expect(CrawlProtocol.LINKS, worker.in.readByte());
+                links.addAll(CrawlProtocol.readStrings(worker.in));
+            }
+            frontier = partition(links, partitioner);
+            logger.debug("crawled depth {}, {} links for the next depth", depth, links.size());
+        }
+
+        for (Worker worker : workers) {
+            worker.out.writeByte(CrawlProtocol.FINISH);
+            worker.out.flush();
+        }
+        return collectResults(wordsFile, wordPairsFile);
+    }
+
+    /**
+     * Merges the snapshots sent by the workers
+     * @return number of documents processed by the workers
+     */
+    private int collectResults(Path wordsFile, Path wordPairsFile) throws IOException {
+        final Path directory = Files.createTempDirectory("crawl-results-");
+        try {
+            int documentCount = 0;
+            final List<Path> workerWordsFiles = new ArrayList<>(workers.size());
+            final List<Path> workerWordPairsFiles = new ArrayList<>(workers.size());
+            for (int i = 0; i < workers.size(); i++) {
+                final DataInputStream in = workers.get(i).in;
+                CrawlProtocol.expect(CrawlProtocol.RESULTS, in.readByte());
+                documentCount += in.readInt();
+                final Path workerWordsFile = directory.resolve("words-" + i + ".fwc");
+                final Path workerWordPairsFile = directory.resolve("wordPairs-" + i + ".fwc");
+                CrawlProtocol.readFile(in, workerWordsFile);
+                CrawlProtocol.readFile(in, workerWordPairsFile);
+                workerWordsFiles.add(workerWordsFile);
+                workerWordPairsFiles.add(workerWordPairsFile);
+            }
+            WordCountSnapshot.merge(workerWordsFiles, wordsFile);
+            WordCountSnapshot.merge(workerWordPairsFiles, wordPairsFile);
+            logger.info("{} documents processed by {} crawl workers", documentCount, workers.size());
+            return documentCount;
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * @return urls of each worker, each url once
+     */
+    private List<Set<String>> partition(Collection<String> urls, HostPartitioner partitioner) {
+        final List<Set<String>> partitions = new ArrayList<>(workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            partitions.add(new LinkedHashSet<>());
+        }
+        urls.forEach(url -> partitions.get(partitioner.partitionOf(url)).add(url));
+        return partitions;
+    }
+
+    /**
+     * Starts a worker in a new JVM on this machine, with the class path of this one
+     * @param port - port of the coordinator
+     * @return the worker process, to be destroyed by the caller if the crawl fails
+     * @throws IOException if the JVM cannot be started
+     */
+    public static Process startLocalWorker(int port) throws IOException {
+        final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), CrawlWorker.class.getName(),
+                InetAddress.getLoopbackAddress().getHostAddress(), String.valueOf(port))
+                .inheritIO()
+                .start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Worker worker : workers) {
+            worker.socket.close();
+        }
+        serverSocket.close();
+    }
+
+    /**
+     * Connection to a worker
+     */
+    private static class Worker {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private Worker(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != CrawlProtocol.MAGIC || in.readInt() != CrawlProtocol.VERSION) {
+                socket.close();
+                throw new IOException("Not a crawl worker of this version: " + socket.getRemoteSocketAddress());
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.purini.fw.process;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Messages between the coordinator and the workers of a distributed crawl, see CrawlCoordinator.
+ *
+ * - HELLO, worker to coordinator on connecting: magic, version
+ * - START, coordinator to worker: whether internal links only
+ * - LEVEL, coordinator to worker: depth, whether to expand, urls of the worker at that depth
+ * - LINKS, worker to coordinator: links of the documents of the level
+ * - FINISH, coordinator to worker: no more levels
+ * - RESULTS, worker to coordinator: documents processed, word and word pair snapshots (WordCountSnapshot)
+ */
+class CrawlProtocol {
+
+    static final int MAGIC = 0x46574443; //FWDC
+    static final int VERSION = 1;
+
+    static final byte START = 1;
+    static final byte LEVEL = 2;
+    static final byte LINKS = 3;
+    static final byte FINISH = 4;
+    static final byte RESULTS = 5;
+
+    private CrawlProtocol() {
+    }
+
+    static void expect(byte expected, byte actual) throws IOException {
+        if (expected != actual) {
+            throw new IOException("Expected crawl message " + expected + ", found " + actual);
+        }
+    }
+
+    static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static List<String> readStrings(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final List<String> strings = new ArrayList<>(Math.min(size, 1 << 16));
+        for (int i = 0; i < size; i++) {
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            strings.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+
+    static void writeFile(DataOutputStream out, Path file) throws IOException {
+        out.writeLong(Files.size(file));
+        Files.copy(file, out);
+    }
+
+    static void readFile(DataInputStream in, Path file) throws IOException {
+        final long length = in.readLong();
+        final InputStream content = ByteStreams.limit(in, length);
+        if (Files.copy(content, file, StandardCopyOption.REPLACE_EXISTING) != length) {
+            throw new EOFException("Crawl results cut short");
+        }
+    }
+}
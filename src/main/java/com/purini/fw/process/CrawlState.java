@@ -0,0 +1,484 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordPair;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * State of a crawl as rebuilt from the records of its checkpoint, see CrawlCheckpoint.
+ *
+ * Records are:
+ * - START: the crawl, i.e. its url, levels and whether internal links only, starting from scratch
+ * - LEVEL: the urls of a depth, recorded when the traversal starts fetching them, the urls of a big level
+ *   being split into LEVEL_URLS records, which only take effect with the LEVEL record that ends them
+ * - PAGE: a page fetched, with its new links, recorded before its counts are submitted
+ * - COUNTS: the word and word pair counts of a page, recorded as they are merged into the stores
+ * A page is complete once both its PAGE and COUNTS records are in. The counts of complete pages are merged,
+ * and a page fetched but without its counts is to be fetched again for its counts only.
+ *
+ * A snapshot holds the state as START, KNOWN_URLS, MERGED_COUNTS, LEVEL and PAGE records, followed by
+ * an END record with the number of records before it. The known urls and the merged counts are split into
+ * records of about MAX_CHUNK_BYTES, since a large crawl would otherwise outgrow the bounds of a single record.
+ *
+ * Records are framed by their length and CRC32, so that a record torn by the JVM dying while it was written
+ * ends the log rather than being misread. A snapshot, being replaced atomically, is only read whole.
+ */
+class CrawlState {
+
+    static final byte START = 1;
+    static final byte LEVEL = 2;
+    static final byte PAGE = 3;
+    static final byte COUNTS = 4;
+    static final byte LEVEL_URLS = 5;
+    static final byte KNOWN_URLS = 6;
+    static final byte MERGED_COUNTS = 7;
+    static final byte END = 8;
+
+    private static final int SNAPSHOT_MAGIC = 0x46574350; //FWCP
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int MAX_RECORD_BYTES = 1 << 30;
+    /**
+     * Bytes at which the urls or the counts of a record are split into another record, as of at most 3 bytes a char
+     */
+    static final int MAX_CHUNK_BYTES = 1 << 20;
+
+    String url;
+    int levels;
+    boolean internalLinksOnly;
+    /**
+     * Depth of the latest level and its urls
+     */
+    int depth = -1;
+    List<String> levelUrls = new ArrayList<>();
+    /**
+     * Urls of the LEVEL_URLS records of a level not ended by its LEVEL record yet
+     */
+    private List<String> pendingLevelUrls = new ArrayList<>();
+    /**
+     * Urls of the levels and links of the pages, all of which are visited
+     */
+    final Set<String> knownUrls = new LinkedHashSet<>();
+    /**
+     * Pages of the latest level fetched, to their links
+     */
+    final Map<String, List<String>> levelPages = new LinkedHashMap<>();
+    /**
+     * Pages fetched but whose counts aren't in yet, to their depth
+     */
+    final Map<String, Integer> pagesWithoutCounts = new LinkedHashMap<>();
+    /**
+     * Counts of the complete pages
+     */
+    final Map<Word, Integer> wordCounts = new LinkedHashMap<>();
+    final Map<WordPair, Integer> wordPairCounts = new LinkedHashMap<>();
+    int completePages;
+
+    /**
+     * @return true if a START record was applied
+     */
+    boolean isStarted() {
+        return url != null;
+    }
+
+    /**
+     * Applies a record to the state
+     * @param payload - record, as encoded by the encode methods
+     * @throws IOException if the record cannot be decoded
+     */
+    void apply(byte[] payload) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final byte type = in.readByte();
+        switch (type) {
+            case START:
+                clear();
+                url = readString(in);
+                levels = in.readInt();
+                internalLinksOnly = in.readBoolean();
+                break;
+            case LEVEL:
+                depth = in.readInt();
+                levelUrls = pendingLevelUrls;
+                levelUrls.addAll(readStrings(in));
+                pendingLevelUrls = new ArrayList<>();
+                knownUrls.addAll(levelUrls);
+                levelPages.clear();
+                break;
+            case LEVEL_URLS:
+                pendingLevelUrls.addAll(readStrings(in));
+                break;
+            case KNOWN_URLS:
+                knownUrls.addAll(readStrings(in));
+                break;
+            case PAGE:
+                final String pageUrl = readString(in);
+                final int pageDepth = in.readInt();
+                final List<String> links = readStrings(in);
+                knownUrls.addAll(links);
+                if (pageDepth == depth) {
+                    levelPages.merge(pageUrl, links, CrawlState::union);
+                }
+                pagesWithoutCounts.put(pageUrl, pageDepth);
+                break;
+            case COUNTS:
+                final String countsUrl = readString(in);
+                final boolean pageFetched = pagesWithoutCounts.remove(countsUrl) != null;
+                final int words = in.readInt();
+                for (int i = 0; i < words; i++) {
+                    final Word word = new Word(readString(in));
+                    final int count = in.readInt();
+                    if (pageFetched) {
+                        wordCounts.merge(word, count, Integer::sum);
+                    }
+                }
+                final int wordPairs = in.readInt();
+                for (int i = 0; i < wordPairs; i++) {
+                    final WordPair wordPair = new WordPair(readString(in), readString(in));
+                    final int count = in.readInt();
+                    if (pageFetched) {
+                        wordPairCounts.merge(wordPair, count, Integer::sum);
+                    }
+                }
+                if (pageFetched) {
+                    completePages++;
+                }
+                break;
+            case MERGED_COUNTS:
+                final int mergedWords = in.readInt();
+                for (int i = 0; i < mergedWords; i++) {
+                    wordCounts.merge(new Word(readString(in)), in.readInt(), Integer::sum);
+                }
+                final int mergedWordPairs = in.readInt();
+                for (int i = 0; i < mergedWordPairs; i++) {
+                    wordPairCounts.merge(new WordPair(readString(in), readString(in)), in.readInt(), Integer::sum);
+                }
+                break;
+            default:
+                throw new IOException("Unknown checkpoint record type " + type);
+        }
+    }
+
+    private void clear() {
+        depth = -1;
+        levelUrls = new ArrayList<>();
+        pendingLevelUrls = new ArrayList<>();
+        knownUrls.clear();
+        levelPages.clear();
+        pagesWithoutCounts.clear();
+        wordCounts.clear();
+        wordPairCounts.clear();
+        completePages = 0;
+    }
+
+    static byte[] encodeStart(String url, int levels, boolean internalLinksOnly) {
+        return encode(out -> {
+            out.writeByte(START);
+            writeString(out, url);
+            out.writeInt(levels);
+            out.writeBoolean(internalLinksOnly);
+        });
+    }
+
+    /**
+     * @return LEVEL_URLS records for all but the last chunk of the urls, and the LEVEL record with the last chunk
+     */
+    static List<byte[]> encodeLevel(int depth, Collection<String> urls) {
+        final List<List<String>> chunks = chunks(urls, CrawlState::maxBytes);
+        final List<byte[]> records = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            records.add(encodeUrls(LEVEL_URLS, chunks.get(i)));
+        }
+        records.add(encode(out -> {
+            out.writeByte(LEVEL);
+            out.writeInt(depth);
+            writeStrings(out, chunks.get(chunks.size() - 1));
+        }));
+        return records;
+    }
+
+    private static byte[] encodeUrls(byte type, Collection<String> urls) {
+        return encode(out -> {
+            out.writeByte(type);
+            writeStrings(out, urls);
+        });
+    }
+
+    static byte[] encodePage(String url, int depth, Collection<String> links) {
+        return encode(out -> {
+            out.writeByte(PAGE);
+            writeString(out, url);
+            out.writeInt(depth);
+            writeStrings(out, links);
+        });
+    }
+
+    static byte[] encodeCounts(String url, Map<Word, Integer> wordCounts, Map<WordPair, Integer> wordPairCounts) {
+        return encode(out -> {
+            out.writeByte(COUNTS);
+            writeString(out, url);
+            out.writeInt(wordCounts.size());
+            for (Map.Entry<Word, Integer> entry : wordCounts.entrySet()) {
+                writeString(out, entry.getKey().getValue());
+                out.writeInt(entry.getValue());
+            }
+            out.writeInt(wordPairCounts.size());
+            for (Map.Entry<WordPair, Integer> entry : wordPairCounts.entrySet()) {
+                final List<String> words = entry.getKey().getWords();
+                writeString(out, words.get(0));
+                writeString(out, words.get(1));
+                out.writeInt(entry.getValue());
+            }
+        });
+    }
+
+    private static byte[] encodeMergedCounts(Collection<Map.Entry<Word, Integer>> wordCounts,
+                                             Collection<Map.Entry<WordPair, Integer>> wordPairCounts) {
+        return encode(out -> {
+            out.writeByte(MERGED_COUNTS);
+            out.writeInt(wordCounts.size());
+            for (Map.Entry<Word, Integer> entry : wordCounts) {
+                writeString(out, entry.getKey().getValue());
+                out.writeInt(entry.getValue());
+            }
+            out.writeInt(wordPairCounts.size());
+            for (Map.Entry<WordPair, Integer> entry : wordPairCounts) {
+                final List<String> words = entry.getKey().getWords();
+                writeString(out, words.get(0));
+                writeString(out, words.get(1));
+                out.writeInt(entry.getValue());
+            }
+        });
+    }
+
+    /**
+     * Splits the elements into chunks of at most MAX_CHUNK_BYTES, or of a single element bigger than that
+     * @param maxBytes - bytes an element takes at most once encoded
+     * @return the chunks, at least one even if empty
+     */
+    private static <E> List<List<E>> chunks(Collection<E> elements, ToIntFunction<E> maxBytes) {
+        final List<List<E>> chunks = new ArrayList<>();
+        List<E> chunk = new ArrayList<>();
+        long chunkBytes = 0;
+        for (E element : elements) {
+            final int bytes = maxBytes.applyAsInt(element);
+            if (!chunk.isEmpty() && chunkBytes + bytes > MAX_CHUNK_BYTES) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                chunkBytes = 0;
+            }
+            chunk.add(element);
+            chunkBytes += bytes;
+        }
+        chunks.add(chunk);
+        return chunks;
+    }
+
+    private static int maxBytes(String s) {
+        return Integer.BYTES + 3 * s.length();
+    }
+
+    /**
+     * Writes a record framed by its length and CRC32
+     */
+    static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    /**
+     * Applies the records of a log, up to its end or to a torn record
+     * @param in - log
+     * @return number of records applied
+     * @throws IOException if the log cannot be read
+     */
+    int applyLog(InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        int records = 0;
+        byte[] payload;
+        while ((payload = readRecord(data)) != null) {
+            apply(payload);
+            records++;
+        }
+        return records;
+    }
+
+    /**
+     * @return the payload of the next record, or null at the end or at a torn record
+     */
+    private static byte[] readRecord(DataInputStream data) throws IOException {
+        try {
+            final int length = data.readInt();
+            final int crc = data.readInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES) {
+                return null; //torn, the length being garbage
+            }
+            final byte[] payload = new byte[length];
+            data.readFully(payload);
+            final CRC32 actual = new CRC32();
+            actual.update(payload, 0, length);
+            return (int) actual.getValue() == crc ? payload : null;
+        } catch (EOFException e) {
+            return null; //torn at the end
+        }
+    }
+
+    /**
+     * Writes the state as a snapshot, i.e. as the records that rebuild it
+     * @param out - snapshot file
+     * @param nextGeneration - first log generation not in the snapshot
+     */
+    void writeSnapshot(OutputStream out, long nextGeneration) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(SNAPSHOT_MAGIC);
+        data.writeInt(SNAPSHOT_VERSION);
+        data.writeLong(nextGeneration);
+        data.writeInt(completePages);
+        int records = 0;
+        writeRecord(data, encodeStart(url, levels, internalLinksOnly));
+        records++;
+        //the known urls and the counts of all the complete pages, in chunks
+        for (List<String> urls : chunks(knownUrls, CrawlState::maxBytes)) {
+            writeRecord(data, encodeUrls(KNOWN_URLS, urls));
+            records++;
+        }
+        for (List<Map.Entry<Word, Integer>> counts : chunks(wordCounts.entrySet(),
+                entry -> maxBytes(entry.getKey().getValue()) + Integer.BYTES)) {
+            writeRecord(data, encodeMergedCounts(counts, new ArrayList<>()));
+            records++;
+        }
+        for (List<Map.Entry<WordPair, Integer>> counts : chunks(wordPairCounts.entrySet(),
+                entry -> maxBytes(entry.getKey().getValue()) + 2 * Integer.BYTES)) {
+            writeRecord(data, encodeMergedCounts(new ArrayList<>(), counts));
+            records++;
+        }
+        for (byte[] record : encodeLevel(depth, levelUrls)) {
+            writeRecord(data, record);
+            records++;
+        }
+        for (Map.Entry<String, List<String>> page : levelPages.entrySet()) {
+            writeRecord(data, encodePage(page.getKey(), depth, page.getValue()));
+            records++;
+            if (!pagesWithoutCounts.containsKey(page.getKey())) {
+                writeRecord(data, encodeCounts(page.getKey(), new LinkedHashMap<>(), new LinkedHashMap<>()));
+                records++;
+            }
+        }
+        for (Map.Entry<String, Integer> page : pagesWithoutCounts.entrySet()) {
+            if (page.getValue() != depth) {
+                writeRecord(data, encodePage(page.getKey(), page.getValue(), new ArrayList<>()));
+                records++;
+            }
+        }
+        //urls of a level whose LEVEL record is in the log after the snapshot
+        if (!pendingLevelUrls.isEmpty()) {
+            for (List<String> urls : chunks(pendingLevelUrls, CrawlState::maxBytes)) {
+                writeRecord(data, encodeUrls(LEVEL_URLS, urls));
+                records++;
+            }
+        }
+        writeRecord(data, encodeEnd(records));
+        data.flush();
+    }
+
+    private static byte[] encodeEnd(int records) {
+        return encode(out -> {
+            out.writeByte(END);
+            out.writeInt(records);
+        });
+    }
+
+    /**
+     * @param in - snapshot file
+     * @return first log generation not in the snapshot
+     */
+    long readSnapshot(InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != SNAPSHOT_MAGIC || data.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Not a crawl checkpoint snapshot");
+        }
+        final long nextGeneration = data.readLong();
+        final int snapshotCompletePages = data.readInt();
+        int records = 0;
+        byte[] payload;
+        while ((payload = readRecord(data)) != null && payload[0] != END) {
+            apply(payload);
+            records++;
+        }
+        //a torn record is only to be expected at the end of a log, a snapshot being written whole before it is used
+        if (payload == null || new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1)).readInt() != records) {
+            throw new IOException("Crawl checkpoint snapshot cut short after " + records + " records");
+        }
+        completePages = snapshotCompletePages;
+        return nextGeneration;
+    }
+
+    private static List<String> union(List<String> a, List<String> b) {
+        final Set<String> union = new LinkedHashSet<>(a);
+        union.addAll(b);
+        return new ArrayList<>(union);
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutput out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            writeString(out, s);
+        }
+    }
+
+    private static List<String> readStrings(DataInput in) throws IOException {
+        final int size = in.readInt();
+        final List<String> strings = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private interface Encoder {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(Encoder encoder) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            encoder.write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); //not thrown in memory
+        }
+        return bytes.toByteArray();
+    }
+}
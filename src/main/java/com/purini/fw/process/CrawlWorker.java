@@ -0,0 +1,137 @@
+package com.purini.fw.process;
+
+import com.purini.fw.Application;
+import com.purini.fw.utils.ParsedUrl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+
+import static com.purini.fw.utils.UrlUtil.normalize;
+import static com.purini.fw.utils.UrlUtil.visitedKey;
+
+/**
+ * Worker of a distributed crawl, see CrawlCoordinator. Runs its own fetch and document processing pipeline
+ * over the urls of the hosts it owns, level by level as the coordinator hands them out, and sends back
+ * the links found and, at the end, its counts.
+ *
+ * The urls of a host only ever come to the worker owning it, so the worker alone checks them for being visited.
+ */
+public class CrawlWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlWorker.class);
+
+    private final String host;
+    private final int port;
+
+    /**
+     * @param host - host of the coordinator
+     * @param port - port of the coordinator
+     */
+    public CrawlWorker(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Connects to the coordinator and crawls what it hands out, until it finishes the crawl
+     * @throws IOException if the connection to the coordinator fails
+     */
+    public void run() throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(CrawlProtocol.MAGIC);
+            out.writeInt(CrawlProtocol.VERSION);
+            out.flush();
+            CrawlProtocol.expect(CrawlProtocol.START, in.readByte());
+            crawl(in, out, in.readBoolean());
+        }
+    }
+
+    private void crawl(DataInputStream in, DataOutputStream out, boolean internalLinksOnly) throws IOException {
+        final WordCountStoreService wordCountStores = new WordCountStoreService();
+        final ExecutorService documentProcessorExecutor = DocumentProcessor.newExecutorService();
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(documentProcessorExecutor);
+        final ExecutorService fetchExecutor = FetchExecutors.newFetchExecutor();
+        try {
+            final UrlTraverser urlTraverser = new UrlTraverser(new DocumentProcessor(completionService, wordCountStores),
+                    internalLinksOnly, DocumentProviders.newDocumentProvider(), fetchExecutor);
+            final VisitedUrlSet visited = new VisitedUrlSet();
+            byte message;
+            while ((message = in.readByte()) == CrawlProtocol.LEVEL) {
+                final int depth = in.readInt();
+                final boolean expand = in.readBoolean();
+                final List<String> urls = new ArrayList<>();
+                for (String url : CrawlProtocol.readStrings(in)) {
+                    //normalized by the worker that found the link, parsed once here for its visited key
+                    final ParsedUrl parsed = normalize(null, url);
+                    if (parsed != null && visited.markVisited(visitedKey(parsed))) {
+                        urls.add(url);
+                    }
+                }
+                final List<String> links = urlTraverser.fetchLevel(urls, depth, expand);
+                logger.debug("fetched {} urls of depth {}, {} links", urls.size(), depth, links.size());
+                out.writeByte(CrawlProtocol.LINKS);
+                CrawlProtocol.writeStrings(out, links);
+                out.flush();
+            }
+            CrawlProtocol.expect(CrawlProtocol.FINISH, message);
+
+            final int documentCount = urlTraverser.getDocumentCount();
+            for (int i = 0; i < documentCount; i++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException | InterruptedException e) {
+                    logger.debug("while fetching results from documentProcessorExecutor", e);
+                }
+            }
+            sendResults(out, wordCountStores, documentCount);
+        } finally {
+            fetchExecutor.shutdown();
+            documentProcessorExecutor.shutdown();
+            wordCountStores.close();
+        }
+    }
+
+    private void sendResults(DataOutputStream out, WordCountStoreService wordCountStores, int documentCount) throws IOException {
+        final Path wordsFile = Files.createTempFile("words-", ".fwc");
+        final Path wordPairsFile = Files.createTempFile("wordPairs-", ".fwc");
+        try {
+            wordCountStores.writeSnapshots(wordsFile, wordPairsFile);
+            out.writeByte(CrawlProtocol.RESULTS);
+            out.writeInt(documentCount);
+            CrawlProtocol.writeFile(out, wordsFile);
+            CrawlProtocol.writeFile(out, wordPairsFile);
+            out.flush();
+        } finally {
+            Files.deleteIfExists(wordsFile);
+            Files.deleteIfExists(wordPairsFile);
+        }
+    }
+
+    /**
+     * Runs a worker in its own JVM
+     * @param args - host and port of the coordinator
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CrawlWorker <coordinator host> <coordinator port>");
+            System.exit(2);
+        }
+        Application.configureJvm();
+        new CrawlWorker(args[0], Integer.parseInt(args[1])).run();
+    }
+}
@@ -0,0 +1,408 @@
+package com.purini.fw.process;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Cache of fetched pages on disk, kept across runs, so that a page fetched again is revalidated by a conditional
+ * request (If-None-Match, If-Modified-Since) and served from the disk when the server answers 304 Not Modified.
+ *
+ * Bodies are content addressed, stored under the SHA-256 of their (decoded) bytes in bodies/, so that pages with the
+ * same content, e.g. the same page under different urls, are stored once. Each url has a small entry in entries/
+ * with its ETag, Last-Modified, Content-Type and body.
+ * The cache is bound by the bytes of its bodies, the least recently used entries being evicted beyond them,
+ * recency being kept across runs as the modification time of the entry files.
+ */
+public class DiskResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskResponseCache.class);
+
+    private final Path entriesDirectory;
+    private final Path bodiesDirectory;
+    private final Path tempDirectory;
+    private final long maxBytes;
+
+    /**
+     * Entries by url, least recently used first
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Number of entries referring to each body
+     */
+    private final Map<String, Integer> bodyReferences = new HashMap<>();
+    private long bytes;
+
+    /**
+     * @param directory - directory of the cache, created if missing, with the entries and bodies of earlier runs
+     * @param maxBytes - max bytes of the bodies, beyond which the least recently used entries are evicted
+     * @throws IOException if the directory cannot be created or read
+     */
+    public DiskResponseCache(Path directory, long maxBytes) throws IOException {
+        this.entriesDirectory = Files.createDirectories(directory.resolve("entries"));
+        this.bodiesDirectory = Files.createDirectories(directory.resolve("bodies"));
+        this.tempDirectory = Files.createDirectories(directory.resolve("tmp"));
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    /**
+     * @param url - url fetched
+     * @return cached entry of the url, marked as used, or null if none
+     */
+    @Nullable
+    public synchronized Entry get(String url) {
+        final Entry entry = entries.get(url);
+        if (entry != null) {
+            try {
+                Files.setLastModifiedTime(entryPath(url), FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+                logger.debug("could not mark cache entry of {} as used", url, e);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * @param entry - cached entry
+     * @return stream of the body of the entry
+     * @throws IOException if the body was evicted meanwhile or cannot be read
+     */
+    public InputStream openBody(Entry entry) throws IOException {
+        return Files.newInputStream(bodyPath(entry.bodyHash));
+    }
+
+    /**
+     * @param url - url to forget
+     */
+    public synchronized void remove(String url) {
+        final Entry entry = entries.remove(url);
+        if (entry != null) {
+            deleteEntry(entry);
+        }
+    }
+
+    /**
+     * Copies the body into the cache as it is read, caching it for the url once read to the end.
+     * A body closed before its end isn't cached.
+     * @param url - url fetched
+     * @param etag - ETag header, null if none
+     * @param lastModified - Last-Modified header, null if none
+     * @param contentType - Content-Type header, null if none
+     * @param body - body to read
+     * @return the body, being copied into the cache
+     */
+    public InputStream cacheAsRead(String url, @Nullable String etag, @Nullable String lastModified,
+                                   @Nullable String contentType, InputStream body) {
+        try {
+            final Path temp = Files.createTempFile(tempDirectory, "body", ".tmp");
+            return new CachingInputStream(body, temp, new Entry(url, etag, lastModified, contentType, null, 0));
+        } catch (IOException e) {
+            logger.debug("could not cache the body of {}", url, e);
+            return body;
+        }
+    }
+
+    /**
+     * @return number of urls cached
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return bytes of the bodies cached
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    private synchronized void put(Entry entry, Path temp) throws IOException {
+        final Path body = bodyPath(entry.bodyHash);
+        if (bodyReferences.containsKey(entry.bodyHash)) {
+            Files.deleteIfExists(temp); //same content cached already
+        } else {
+            Files.createDirectories(body.getParent());
+            Files.move(temp, body, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        writeEntry(entry);
+        final Entry previous = entries.put(entry.url, entry);
+        reference(entry); //before releasing the previous body, which may be the same
+        if (previous != null) {
+            release(previous);
+        }
+        evict();
+    }
+
+    private void evict() {
+        final Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+        while (bytes > maxBytes && entries.size() > 1 && leastRecentlyUsed.hasNext()) {
+            final Entry entry = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            deleteEntry(entry);
+            logger.debug("evicted {} from the response cache", entry.url);
+        }
+    }
+
+    private void reference(Entry entry) {
+        if (bodyReferences.merge(entry.bodyHash, 1, Integer::sum) == 1) {
+            bytes += entry.size;
+        }
+    }
+
+    private void release(Entry entry) {
+        if (bodyReferences.merge(entry.bodyHash, -1, Integer::sum) == 0) {
+            bodyReferences.remove(entry.bodyHash);
+            bytes -= entry.size;
+            try {
+                Files.deleteIfExists(bodyPath(entry.bodyHash));
+            } catch (IOException e) {
+                logger.debug("could not delete cached body {}", entry.bodyHash, e);
+            }
+        }
+    }
+
+    private void deleteEntry(Entry entry) {
+        try {
+            Files.deleteIfExists(entryPath(entry.url));
+        } catch (IOException e) {
+            logger.debug("could not delete cache entry of {}", entry.url, e);
+        }
+        release(entry);
+    }
+
+    private void writeEntry(Entry entry) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("url", entry.url);
+        properties.setProperty("body", entry.bodyHash);
+        properties.setProperty("size", String.valueOf(entry.size));
+        if (entry.etag != null) {
+            properties.setProperty("etag", entry.etag);
+        }
+        if (entry.lastModified != null) {
+            properties.setProperty("lastModified", entry.lastModified);
+        }
+        if (entry.contentType != null) {
+            properties.setProperty("contentType", entry.contentType);
+        }
+        final Path temp = Files.createTempFile(tempDirectory, "entry", ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(temp, entryPath(entry.url), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the entries of earlier runs in their order of use, dropping the ones without a body, the bodies
+     * without an entry and the leftovers of bodies being written
+     */
+    private void load() throws IOException {
+        final List<Path> entryPaths = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(entriesDirectory)) {
+            paths.forEach(entryPaths::add);
+        }
+        final Map<Path, Long> usedAt = new HashMap<>();
+        for (Path path : entryPaths) {
+            usedAt.put(path, Files.getLastModifiedTime(path).toMillis());
+        }
+        entryPaths.sort((a, b) -> Long.compare(usedAt.get(a), usedAt.get(b)));
+        for (Path path : entryPaths) {
+            final Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+                final Entry entry = new Entry(properties.getProperty("url"), properties.getProperty("etag"),
+                        properties.getProperty("lastModified"), properties.getProperty("contentType"),
+                        properties.getProperty("body"), Long.parseLong(properties.getProperty("size")));
+                if (entry.url != null && entry.bodyHash != null && Files.exists(bodyPath(entry.bodyHash))) {
+                    entries.put(entry.url, entry);
+                    reference(entry);
+                    continue;
+                }
+            } catch (IOException | IllegalArgumentException | NullPointerException e) {
+                logger.debug("dropping unreadable cache entry {}", path, e);
+            }
+            Files.deleteIfExists(path);
+        }
+        try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(bodiesDirectory)) {
+            for (Path prefix : prefixes) {
+                try (DirectoryStream<Path> bodies = Files.newDirectoryStream(prefix)) {
+                    for (Path body : bodies) {
+                        if (!bodyReferences.containsKey(body.getFileName().toString())) {
+                            Files.deleteIfExists(body);
+                        }
+                    }
+                }
+            }
+        }
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(tempDirectory)) {
+            for (Path temp : temps) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        evict();
+    }
+
+    private Path entryPath(String url) {
+        return entriesDirectory.resolve(Hashing.sha256().hashString(url, StandardCharsets.UTF_8).toString());
+    }
+
+    private Path bodyPath(String bodyHash) {
+        return bodiesDirectory.resolve(bodyHash.substring(0, 2)).resolve(bodyHash);
+    }
+
+    /**
+     * Cached response of a url
+     */
+    public static class Entry {
+        private final String url;
+        @Nullable
+        private final String etag;
+        @Nullable
+        private final String lastModified;
+        @Nullable
+        private final String contentType;
+        private final String bodyHash;
+        private final long size;
+
+        Entry(String url, @Nullable String etag, @Nullable String lastModified, @Nullable String contentType,
+              String bodyHash, long size) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.bodyHash = bodyHash;
+            this.size = size;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        @Nullable
+        public String getEtag() {
+            return etag;
+        }
+
+        @Nullable
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        @Nullable
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * Copies what is read into a temp file, hashing it, and caches it once the end is read
+     */
+    private class CachingInputStream extends FilterInputStream {
+        private final Path temp;
+        private final Entry entry;
+        private final Hasher hasher = Hashing.sha256().newHasher();
+        @Nullable
+        private OutputStream copy;
+        private long size;
+
+        CachingInputStream(InputStream in, Path temp, Entry entry) throws IOException {
+            super(in);
+            this.temp = temp;
+            this.entry = entry;
+            this.copy = Files.newOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b == -1) {
+                commit();
+            } else {
+                copy(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            final int n = super.read(buffer, offset, length);
+            if (n == -1) {
+                commit();
+            } else {
+                copy(buffer, offset, n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                abandon();
+            }
+        }
+
+        private void copy(byte[] buffer, int offset, int length) {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.write(buffer, offset, length);
+                hasher.putBytes(buffer, offset, length);
+                size += length;
+            } catch (IOException e) {
+                logger.debug("could not cache the body of {}", entry.url, e);
+                abandon();
+            }
+        }
+
+        private void commit() {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+                copy = null;
+                put(new Entry(entry.url, entry.etag, entry.lastModified, entry.contentType, hasher.hash().toString(), size), temp);
+            } catch (IOException e) {
+                logger.debug("could not cache the body of {}", entry.url, e);
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            try {
+                if (copy != null) {
+                    copy.close();
+                    copy = null;
+                }
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                logger.debug("could not delete {}", temp, e);
+            }
+        }
+    }
+}
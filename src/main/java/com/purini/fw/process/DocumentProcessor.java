@@ -1,53 +1,247 @@
 package com.purini.fw.process;
 
-import com.purini.fw.domain.Word;
-import com.purini.fw.domain.WordPair;
-import com.purini.fw.utils.TextToWordUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.purini.fw.PropertyStore;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
+import javax.annotation.Nullable;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Processes the document through completion service.
- * Iterated over all the elements, extracts the text and passes them
- * to Word count store service.
+ * Iterated over all the elements, extracts the text and counts them
+ * in a batch per document, which is then merged into Word count store service in one go.
+ * The batch can also be counted outside, e.g. while a document is streamed, and only merged here.
+ *
+ * Documents waiting to be processed are bounded by a backlog, in number and in estimated bytes,
+ * beyond which the submitting fetcher is held back as per the back pressure policy, so that
+ * fetching faster than processing doesn't pile up documents in memory.
+ *
+ * With a crawl checkpoint, the counts of each document submitted with its url are recorded as they are merged.
  */
 public class DocumentProcessor {
 
     private static final Logger logger = LoggerFactory.getLogger(DocumentProcessor.class);
+    /**
+     * Rough heap taken by a DOM node and by a distinct word or word pair counted in a batch
+     */
+    private static final int NODE_BYTES = 200;
+    private static final int BATCH_ENTRY_BYTES = 120;
+
     private final WordCountStoreService wordCountStoreManager;
     private final AtomicInteger docCount = new AtomicInteger();
     private final CompletionService<Void> completionService;
+    private final ProcessingBacklog backlog;
+    private final BackPressurePolicy backPressurePolicy;
+    @Nullable
+    private final CrawlCheckpoint checkpoint;
+
+    /**
+     * @return executor to process the documents on, configured by documentProcessorCorePoolSize
+     * and documentProcessorMaxPoolSize
+     */
+    public static ExecutorService newExecutorService() {
+        PropertyStore propertyStore = PropertyStore.getInstance();
+        return new ThreadPoolExecutor(
+                propertyStore.getIntProperty(PropertyStore.DOCUMENT_PROCESSOR_CORE_POOL_SIZE),
+                propertyStore.getIntProperty(PropertyStore.DOCUMENT_PROCESSOR_MAX_POOL_SIZE),
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("doc-processor-%d").build()); //this names the threads, useful for debugging
+    }
 
+    /**
+     * Bounds the backlog by documentProcessorMaxQueuedDocuments and documentProcessorMaxQueuedBytes,
+     * applying documentProcessorBackPressurePolicy
+     */
     public DocumentProcessor(CompletionService<Void> completionService, WordCountStoreService wordCountStoreManager) {
+        this(completionService, wordCountStoreManager, null);
+    }
+
+    /**
+     * Same as without the checkpoint
+     * @param checkpoint - checkpoint to record the counts of the documents in, null for none
+     */
+    public DocumentProcessor(CompletionService<Void> completionService, WordCountStoreService wordCountStoreManager,
+                             @Nullable CrawlCheckpoint checkpoint) {
+        this(completionService, wordCountStoreManager,
+                new ProcessingBacklog(
+                        PropertyStore.getInstance().getIntProperty(PropertyStore.DOCUMENT_PROCESSOR_MAX_QUEUED_DOCUMENTS),
+                        PropertyStore.getInstance().getLongProperty(PropertyStore.DOCUMENT_PROCESSOR_MAX_QUEUED_BYTES)),
+                BackPressurePolicy.fromName(
+                        PropertyStore.getInstance().getProperty(PropertyStore.DOCUMENT_PROCESSOR_BACK_PRESSURE_POLICY)),
+                checkpoint);
+    }
+
+    /**
+     * @param completionService - completion service to process the documents on
+     * @param wordCountStoreManager - stores to count the words into
+     * @param backlog - bounds the documents waiting to be processed
+     * @param backPressurePolicy - what to do when the backlog is full
+     */
+    public DocumentProcessor(CompletionService<Void> completionService, WordCountStoreService wordCountStoreManager,
+                             ProcessingBacklog backlog, BackPressurePolicy backPressurePolicy) {
+        this(completionService, wordCountStoreManager, backlog, backPressurePolicy, null);
+    }
+
+    /**
+     * @param completionService - completion service to process the documents on
+     * @param wordCountStoreManager - stores to count the words into
+     * @param backlog - bounds the documents waiting to be processed
+     * @param backPressurePolicy - what to do when the backlog is full
+     * @param checkpoint - checkpoint to record the counts of the documents in, null for none
+     */
+    public DocumentProcessor(CompletionService<Void> completionService, WordCountStoreService wordCountStoreManager,
+                             ProcessingBacklog backlog, BackPressurePolicy backPressurePolicy,
+                             @Nullable CrawlCheckpoint checkpoint) {
         this.wordCountStoreManager = wordCountStoreManager;
         this.completionService = completionService;
+        this.backlog = backlog;
+        this.backPressurePolicy = backPressurePolicy;
+        this.checkpoint = checkpoint;
     }
 
     public void submitAsync(final Document document) {
-        completionService.submit(() -> process(document));
+        submitAsync(null, document);
+    }
+
+    /**
+     * @param url - url of the document, under which its counts are checkpointed, null for none
+     * @param document - document to process
+     */
+    public void submitAsync(@Nullable String url, final Document document) {
+        submit(estimateSize(document), () -> process(url, document));
+    }
+
+    /**
+     * @return batch to count the text of a document in, e.g. while it is streamed, to be submitted after
+     */
+    public WordCountBatch newBatch() {
+        return wordCountStoreManager.newBatch();
+    }
+
+    /**
+     * Merges a batch counted outside, e.g. by the streaming scanner, into the stores asynchronously.
+     * It still goes through the completion service, so that it is tracked like a document.
+     * @param batch - counts of a document
+     */
+    public void submitAsync(final WordCountBatch batch) {
+        submitAsync(null, batch);
+    }
+
+    /**
+     * @param url - url of the document, under which its counts are checkpointed, null for none
+     * @param batch - counts of a document
+     */
+    public void submitAsync(@Nullable String url, final WordCountBatch batch) {
+        submit((long) batch.size() * BATCH_ENTRY_BYTES, () -> commit(url, batch));
+    }
+
+    /**
+     * Submits the task if there is room in the backlog, or else applies the back pressure policy
+     * @param size - estimated bytes held by the task till it is done
+     * @param task - processing of a document
+     */
+    private void submit(long size, Callable<Void> task) {
+        if (!backlog.tryAdd(size)) {
+            if (backPressurePolicy == BackPressurePolicy.CALLER_RUNS) {
+                callerRuns(task);
+                return;
+            }
+            try {
+                backlog.add(size);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while waiting for room in the processing backlog, processing on the caller");
+                callerRuns(task);
+                return;
+            }
+        }
+        try {
+            completionService.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    backlog.remove(size);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //the task will never run to give its room back, e.g. the executor being shut down
+            backlog.remove(size);
+            throw e;
+        }
+    }
+
+    /**
+     * Processes on the calling thread. An empty task still goes through the completion service,
+     * so that there is one completion per document as for the others.
+     */
+    private void callerRuns(Callable<Void> task) {
+        try {
+            task.call();
+        } catch (Exception e) {
+            logger.warn("Error while processing on the caller", e);
+        }
+        completionService.submit(() -> null);
     }
 
-    private Void process(Document document) {
-        extract(document);
+    /**
+     * Rough estimate of the heap taken by the DOM, from its number of nodes and length of its text
+     * @param document - document to estimate
+     * @return estimated bytes
+     */
+    static long estimateSize(Document document) {
+        final long[] size = {0};
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+                size[0] += NODE_BYTES;
+                if (node instanceof TextNode) {
+                    size[0] += 2L * ((TextNode) node).getWholeText().length();
+                }
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+            }
+        }, document);
+        return size[0];
+    }
+
+    private Void process(@Nullable String url, Document document) {
+        return commit(url, extract(document));
+    }
+
+    private Void commit(@Nullable String url, WordCountBatch batch) {
+        if (checkpoint != null && url != null) {
+            checkpoint.recordCounts(url, batch.getWordCounts(), batch.getWordPairCounts());
+        }
+        batch.commit();
         logger.debug("docs processed - {}", docCount.incrementAndGet());
         return null;
     }
 
-    private void extract(Document doc) {
+    private WordCountBatch extract(Document doc) {
+        WordCountBatch batch = wordCountStoreManager.newBatch();
         for (Element element : doc.getAllElements()) {
-
-            List<Word> words = TextToWordUtil.toWords(element.ownText());
-            wordCountStoreManager.addWords(words);
-
-            List<WordPair> wordPairs = TextToWordUtil.toWordPairs(words);
-            wordCountStoreManager.addWordPairs(wordPairs);
+            batch.addText(element.ownText());
         }
+        return batch;
     }
 
 }
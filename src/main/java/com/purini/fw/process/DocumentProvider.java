@@ -1,5 +1,6 @@
 package com.purini.fw.process;
 
+import com.purini.fw.utils.HtmlScanner;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
@@ -19,4 +20,39 @@ public class DocumentProvider {
     public Document getDocument(String url) throws IOException {
         return Jsoup.connect(url).get();
     }
+
+    /**
+     * Fetches the page for a traversal, handing it over as a whole DOM built by getDocument.
+     * Providers that read pages otherwise, e.g. StreamingDocumentProvider without a DOM, override it.
+     *
+     * @param url - url to fetch
+     * @param handler - receives the page
+     * @return false if there is no document for the url
+     * @throws IOException if there is problem fetching the page. e.g. 404, 500 etc.
+     */
+    public boolean fetchPage(String url, PageHandler handler) throws IOException {
+        Document document = getDocument(url);
+        if (document == null) {
+            return false;
+        }
+        handler.document(document);
+        return true;
+    }
+
+    /**
+     * Receives a page fetched by fetchPage: either its DOM, or its text and links as it is read and then its base uri
+     */
+    public interface PageHandler extends HtmlScanner.Handler {
+
+        /**
+         * @param document - DOM of the whole page
+         */
+        void document(Document document);
+
+        /**
+         * Called once the text and the links of the page have been given out
+         * @param baseUri - base uri of the page, against which its links are to be resolved
+         */
+        void scanned(String baseUri);
+    }
 }
@@ -0,0 +1,33 @@
+package com.purini.fw.process;
+
+import com.purini.fw.PropertyStore;
+
+/**
+ * Creates the document provider that fetches the pages, as configured by the properties.
+ *
+ * One provider is meant to be shared by all the fetch threads of a crawl, so that they share the keep-alive
+ * connections of its http client and the per host limits of its scheduler.
+ */
+public class DocumentProviders {
+
+    private DocumentProviders() {
+    }
+
+    /**
+     * @return document provider configured by httpClientFetch, politeFetch and streamingFetch
+     */
+    public static DocumentProvider newDocumentProvider() {
+        PropertyStore propertyStore = PropertyStore.getInstance();
+        HttpClientDocumentProvider httpClient = propertyStore.getBooleanProperty(PropertyStore.HTTP_CLIENT_FETCH)
+                ? new HttpClientDocumentProvider()
+                : null;
+        HostScheduler hostScheduler = propertyStore.getBooleanProperty(PropertyStore.POLITE_FETCH)
+                ? new HostScheduler()
+                : null;
+        if (propertyStore.getBooleanProperty(PropertyStore.STREAMING_FETCH)) {
+            return new StreamingDocumentProvider(httpClient, hostScheduler);
+        }
+        DocumentProvider documentProvider = httpClient != null ? httpClient : new DocumentProvider();
+        return hostScheduler != null ? new PoliteDocumentProvider(documentProvider, hostScheduler) : documentProvider;
+    }
+}
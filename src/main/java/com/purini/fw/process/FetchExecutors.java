@@ -0,0 +1,79 @@
+package com.purini.fw.process;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.purini.fw.PropertyStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the executor on which documents are fetched.
+ *
+ * Fetching is blocking I/O, so its concurrency is sized by what the network can take rather than by the
+ * number of cores, and it is kept off the common ForkJoinPool which is shared by every parallel stream.
+ * The queue is bounded, and when it is full the submitting thread fetches the document itself,
+ * which slows down the producer instead of dropping the fetch.
+ */
+public class FetchExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(FetchExecutors.class);
+
+    private FetchExecutors() {
+    }
+
+    /**
+     * @return fetch executor configured by fetchPoolSize, fetchQueueCapacity and fetchVirtualThreads
+     */
+    public static ExecutorService newFetchExecutor() {
+        PropertyStore propertyStore = PropertyStore.getInstance();
+        return newFetchExecutor(
+                propertyStore.getIntProperty(PropertyStore.FETCH_POOL_SIZE),
+                propertyStore.getIntProperty(PropertyStore.FETCH_QUEUE_CAPACITY),
+                propertyStore.getBooleanProperty(PropertyStore.FETCH_VIRTUAL_THREADS));
+    }
+
+    /**
+     * @param poolSize - number of concurrent fetches
+     * @param queueCapacity - number of fetches that can wait for a thread
+     * @param virtualThreads - whether to fetch on virtual threads, if the JDK has them
+     * @return fetch executor
+     */
+    public static ExecutorService newFetchExecutor(int poolSize, int queueCapacity, boolean virtualThreads) {
+        ThreadFactory threadFactory = virtualThreads ? virtualThreadFactory() : null;
+        if (threadFactory == null) {
+            threadFactory = new ThreadFactoryBuilder().setNameFormat("fetcher-%d").setDaemon(true).build();
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                30L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true); //idle fetchers are released between crawls
+        return executor;
+    }
+
+    /**
+     * Virtual threads are only there from JDK 21, while this is built for 8, hence looked up reflectively
+     * @return factory of virtual threads or null if not supported
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "fetcher-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not supported by this JDK {}, using platform threads",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.purini.fw.process;
+
+/**
+ * Count table made of primitive arrays on the Java heap, i.e. 20 bytes per slot
+ */
+public class HeapCountTable implements CountTable {
+
+    private final long[] keys;
+    private final int[] counts;
+    private final long[] originals;
+
+    public HeapCountTable(int capacity) {
+        this.keys = new long[capacity];
+        this.counts = new int[capacity];
+        this.originals = new long[capacity];
+    }
+
+    @Override
+    public int capacity() {
+        return keys.length;
+    }
+
+    @Override
+    public long key(int slot) {
+        return keys[slot];
+    }
+
+    @Override
+    public int count(int slot) {
+        return counts[slot];
+    }
+
+    @Override
+    public long original(int slot) {
+        return originals[slot];
+    }
+
+    @Override
+    public void set(int slot, long key, int count, long original) {
+        keys[slot] = key;
+        counts[slot] = count;
+        originals[slot] = original;
+    }
+}
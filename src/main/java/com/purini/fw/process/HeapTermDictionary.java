@@ -0,0 +1,86 @@
+package com.purini.fw.process;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Term dictionary on the Java heap.
+ *
+ * The index from term to id is an open addressing hash table of ids,
+ * thus a term costs an array slot in each of the two arrays apart from the String itself.
+ *
+ * Not thread safe, the owner is expected to guard it.
+ */
+public class HeapTermDictionary implements TermDictionary {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private String[] terms = new String[16];
+    private int[] idTable = new int[32]; //id + 1, 0 being an empty slot
+    private int size;
+
+    @Override
+    public int intern(String term) {
+        int slot = slotOf(term);
+        if (idTable[slot] != 0) {
+            return idTable[slot] - 1;
+        }
+        if (size == terms.length) {
+            terms = Arrays.copyOf(terms, size + (size >> 1));
+        }
+        final int id = size++;
+        terms[id] = term;
+        idTable[slot] = id + 1;
+        if (size > idTable.length * LOAD_FACTOR) {
+            rehash(idTable.length << 1);
+        }
+        return id;
+    }
+
+    @Override
+    public int idOf(String term) {
+        int slot = slotOf(term);
+        return idTable[slot] != 0 ? idTable[slot] - 1 : NO_ID;
+    }
+
+    @Override
+    public String term(int id) {
+        return terms[id];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The terms array as of now, which growth copies rather than changes, and whose slots are set only once
+     */
+    @Override
+    public IntFunction<String> reader() {
+        final String[] interned = terms;
+        return id -> interned[id];
+    }
+
+    private int slotOf(String term) {
+        final int mask = idTable.length - 1;
+        int slot = TermDictionary.mix(term.hashCode()) & mask;
+        while (idTable[slot] != 0 && !terms[idTable[slot] - 1].equals(term)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        final int mask = capacity - 1;
+        int[] newIdTable = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            int slot = TermDictionary.mix(terms[id].hashCode()) & mask;
+            while (newIdTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newIdTable[slot] = id + 1;
+        }
+        idTable = newIdTable;
+    }
+}
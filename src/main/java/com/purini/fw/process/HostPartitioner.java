@@ -0,0 +1,63 @@
+package com.purini.fw.process;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.purini.fw.utils.ParsedUrl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns urls to partitions, e.g. the workers of a distributed crawl, by a consistent hash of their host.
+ *
+ * All the urls of a host go to the same partition, so that a single partition checks them for being visited
+ * and schedules the requests to the host politely. Each partition has VIRTUAL_NODES points on a hash ring,
+ * and a host goes to the partition of the first point at or after its hash, so that the hosts are spread evenly
+ * and adding a partition only moves the hosts that the new one takes over.
+ */
+public class HostPartitioner {
+
+    static final int VIRTUAL_NODES = 128;
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+    private final int partitions;
+
+    /**
+     * @param partitions - number of partitions, at least 1
+     */
+    public HostPartitioner(int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions should be at least 1, found " + partitions);
+        }
+        this.partitions = partitions;
+        for (int partition = 0; partition < partitions; partition++) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                ring.put(hash("partition-" + partition + "#" + node), partition);
+            }
+        }
+    }
+
+    /**
+     * @param url - url to assign
+     * @return partition of the host of the url, in 0 to partitions - 1, or of the url itself if it has no host
+     */
+    public int partitionOf(String url) {
+        final ParsedUrl parsedUrl = ParsedUrl.parse(url);
+        final String host = parsedUrl != null && parsedUrl.getHost() != null
+                ? parsedUrl.getHost().toLowerCase(Locale.ROOT)
+                : url;
+        final Map.Entry<Integer, Integer> point = ring.ceilingEntry(hash(host));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    private static int hash(String key) {
+        return HASH.hashString(key, StandardCharsets.UTF_8).asInt();
+    }
+}
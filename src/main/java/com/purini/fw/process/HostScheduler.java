@@ -0,0 +1,249 @@
+package com.purini.fw.process;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.purini.fw.PropertyStore;
+import com.purini.fw.utils.ParsedUrl;
+import org.jsoup.HttpStatusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules the requests to each host politely, so that a crawl of one website isn't rate limited:
+ * - at most hostMaxConcurrentRequests requests to a host at a time
+ * - at most hostRequestsPerSecond requests to a host a second, by a token bucket per host
+ * - a request failing with 429, 502, 503 or 504 is to be retried up to hostMaxRetries times, after the time given by
+ *   its Retry-After header (capped by hostMaxRetryAfterMillis), else after an exponential backoff from
+ *   hostRetryBackoffMillis with jitter. A Retry-After holds back all the requests to the host, not just the one retried.
+ *
+ * The fetch threads never wait out a retry or a Retry-After: the request fails with RetryLaterException, telling
+ * the delay after which the caller is to make it again, e.g. UrlTraverser requeues the url. The retries of a url
+ * are counted here until it is fetched or given up.
+ *
+ * Hosts are told apart by host and port, in lower case, each with its own permits and bucket. A host with no request
+ * in flight, not held back and not requested for hostIdleEvictionMillis is evicted, so that a crawl over many
+ * websites keeps only the hosts in use.
+ */
+public class HostScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(HostScheduler.class);
+
+    private final int maxConcurrentRequests;
+    private final double requestsPerSecond;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final long maxRetryAfterMillis;
+    private final long idleEvictionNanos;
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private final AtomicLong lastEvictionNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * A request to a host
+     */
+    public interface Request<T> {
+        T execute() throws IOException;
+    }
+
+    /**
+     * Configured by hostMaxConcurrentRequests, hostRequestsPerSecond, hostMaxRetries, hostRetryBackoffMillis,
+     * hostMaxRetryAfterMillis and hostIdleEvictionMillis
+     */
+    public HostScheduler() {
+        this(PropertyStore.getInstance().getIntProperty(PropertyStore.HOST_MAX_CONCURRENT_REQUESTS),
+                PropertyStore.getInstance().getDoubleProperty(PropertyStore.HOST_REQUESTS_PER_SECOND),
+                PropertyStore.getInstance().getIntProperty(PropertyStore.HOST_MAX_RETRIES),
+                PropertyStore.getInstance().getLongProperty(PropertyStore.HOST_RETRY_BACKOFF_MILLIS),
+                PropertyStore.getInstance().getLongProperty(PropertyStore.HOST_MAX_RETRY_AFTER_MILLIS),
+                PropertyStore.getInstance().getLongProperty(PropertyStore.HOST_IDLE_EVICTION_MILLIS));
+    }
+
+    /**
+     * @param maxConcurrentRequests - max requests to a host at a time
+     * @param requestsPerSecond - max requests to a host a second, 0 for no limit
+     * @param maxRetries - times a request is retried on 429, 502, 503 or 504
+     * @param retryBackoffMillis - delay before the first retry without Retry-After, doubled for each next one
+     * @param maxRetryAfterMillis - max delay taken from a Retry-After header
+     * @param idleEvictionMillis - time after which an idle host is evicted, above the retry delays for the retries
+     *                           of a url to be counted across them
+     */
+    public HostScheduler(int maxConcurrentRequests, double requestsPerSecond, int maxRetries, long retryBackoffMillis,
+                         long maxRetryAfterMillis, long idleEvictionMillis) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.requestsPerSecond = requestsPerSecond;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.maxRetryAfterMillis = maxRetryAfterMillis;
+        this.idleEvictionNanos = TimeUnit.MILLISECONDS.toNanos(idleEvictionMillis);
+    }
+
+    /**
+     * Executes the request when the host of the url allows it
+     * @param url - url requested
+     * @param request - request to execute
+     * @return result of the request
+     * @throws RetryLaterException if the host is held back by a Retry-After, or the request is throttled
+     * and to be retried, after the delay of the exception
+     * @throws IOException if the request fails, or is still throttled after the retries
+     */
+    public <T> T execute(String url, Request<T> request) throws IOException {
+        final Host host = acquire(hostKey(url));
+        try {
+            final long pauseMillis = host.pauseLeftMillis();
+            if (pauseMillis > 0) {
+                //not an attempt, the request not being made
+                throw new RetryLaterException("host of " + url + " held back by Retry-After", pauseMillis, null);
+            }
+            host.awaitTurn();
+            final T result;
+            try {
+                result = request.execute();
+            } finally {
+                host.permits.release();
+            }
+            host.retries.remove(url);
+            return result;
+        } catch (HttpStatusException e) {
+            final int attempt = host.retries.getOrDefault(url, 0);
+            if (attempt >= maxRetries || !isRetryable(e.getStatusCode())) {
+                host.retries.remove(url);
+                throw e;
+            }
+            host.retries.put(url, attempt + 1);
+            final long retryAfterMillis = e instanceof HttpRetryAfterException
+                    ? parseRetryAfterMillis(((HttpRetryAfterException) e).getRetryAfter(), System.currentTimeMillis())
+                    : -1;
+            final long delayMillis;
+            if (retryAfterMillis >= 0) {
+                delayMillis = Math.min(retryAfterMillis, maxRetryAfterMillis);
+                host.pauseFor(delayMillis);
+            } else {
+                delayMillis = (long) ((retryBackoffMillis << Math.min(attempt, 20)) * ThreadLocalRandom.current().nextDouble(0.5, 1.5));
+            }
+            logger.debug("status {} for url {}, retry {} in {} ms", e.getStatusCode(), url, attempt + 1, delayMillis);
+            throw new RetryLaterException("status " + e.getStatusCode() + ", retry " + (attempt + 1) + " of " + url,
+                    delayMillis, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for host of " + url);
+        } finally {
+            release(host);
+        }
+    }
+
+    static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * @param retryAfter - Retry-After header, in seconds or as an HTTP date
+     * @param nowMillis - current time
+     * @return milliseconds to wait, or -1 if the header cannot be parsed
+     */
+    static long parseRetryAfterMillis(String retryAfter, long nowMillis) {
+        final String value = retryAfter.trim();
+        if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+            return value.length() > 9 ? Long.MAX_VALUE : Long.parseLong(value) * 1000;
+        }
+        try {
+            final long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - nowMillis);
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return number of hosts kept, i.e. not evicted
+     */
+    int hostCount() {
+        return hosts.size();
+    }
+
+    /**
+     * Gets the host, counting the request in flight within the same atomic step as the host is looked up,
+     * so that it cannot be evicted while in use
+     */
+    private Host acquire(String hostKey) {
+        return hosts.compute(hostKey, (key, host) -> {
+            final Host acquired = host != null ? host : new Host();
+            acquired.inFlight.incrementAndGet();
+            return acquired;
+        });
+    }
+
+    /**
+     * Ends the request, evicting the idle hosts once in a while
+     */
+    private void release(Host host) {
+        final long now = System.nanoTime();
+        host.lastUsedNanos = now;
+        host.inFlight.decrementAndGet();
+        final long lastEviction = lastEvictionNanos.get();
+        if (now - lastEviction >= idleEvictionNanos && lastEvictionNanos.compareAndSet(lastEviction, now)) {
+            for (String hostKey : hosts.keySet()) {
+                hosts.computeIfPresent(hostKey, (key, candidate) -> candidate.isIdle(now) ? null : candidate);
+            }
+        }
+    }
+
+    private static String hostKey(String url) {
+        final ParsedUrl parsedUrl = ParsedUrl.parse(url);
+        final String hostPort = parsedUrl != null ? parsedUrl.getHostPort() : null;
+        return hostPort != null ? hostPort.toLowerCase(Locale.ROOT) : url;
+    }
+
+    /**
+     * Permits, token bucket and retries of a host
+     */
+    private class Host {
+        private final Semaphore permits = new Semaphore(maxConcurrentRequests, true);
+        private final RateLimiter rateLimiter = requestsPerSecond > 0 ? RateLimiter.create(requestsPerSecond) : null;
+        private final ConcurrentMap<String, Integer> retries = new ConcurrentHashMap<>();
+        private volatile long pausedUntilNanos = System.nanoTime();
+        private volatile long lastUsedNanos = System.nanoTime();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        /**
+         * Waits for a permit and then for a token, the permit being held on return
+         */
+        void awaitTurn() throws InterruptedException {
+            permits.acquire();
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+        }
+
+        long pauseLeftMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(pausedUntilNanos - System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+        }
+
+        void pauseFor(long millis) {
+            final long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            synchronized (this) {
+                if (until - pausedUntilNanos > 0) {
+                    pausedUntilNanos = until;
+                }
+            }
+        }
+
+        /**
+         * Called within a compute of the map of hosts, so that no request gets the host meanwhile
+         */
+        boolean isIdle(long nowNanos) {
+            return inFlight.get() == 0 && nowNanos - pausedUntilNanos >= 0 && nowNanos - lastUsedNanos >= idleEvictionNanos;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.purini.fw.process;
+
+import com.purini.fw.PropertyStore;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Fetches pages over the HTTP client of the JDK, with the knobs Jsoup.connect leaves at their defaults:
+ * - persistent connections: a connection whose response is read to the end is kept alive and reused for the next
+ *   request to the same host, sparing the TCP and TLS handshakes, up to http.maxConnections idle connections
+ *   per host (set from httpMaxConnectionsPerHost at startup, Application.configureJvm), shared by all the fetch threads
+ * - connect and read timeouts (httpConnectTimeoutMillis, httpReadTimeoutMillis), so that a slow host fails fast
+ * - compressed responses, the encodings of httpAcceptEncoding (gzip, deflate) being asked for and decoded
+ * - a cap on the (decoded) body size, httpMaxBodyBytes, beyond which the page is given up
+ *
+ * - optionally a cache of the pages on disk (httpCacheDirectory, httpCacheMaxBytes): a page cached with an ETag or
+ *   Last-Modified is fetched again by a conditional request, a 304 Not Modified being served from the cache
+ *
+ * Redirects are followed across http and https, up to MAX_REDIRECTS, and the final url is the base uri of the page.
+ * Error statuses and non HTML content types fail as with Jsoup, by HttpStatusException and UnsupportedMimeTypeException,
+ * an error status with a Retry-After header by HttpRetryAfterException. So do a 304 Not Modified to a request
+ * that was not conditional and a redirect without a Location, which have no page to give out.
+ */
+public class HttpClientDocumentProvider extends DocumentProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientDocumentProvider.class);
+    static final int MAX_REDIRECTS = 10;
+    private static final int MAX_DISCARDED_BYTES = 64 * 1024;
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final long maxBodyBytes;
+    private final String acceptEncoding;
+    private final String userAgent;
+    @Nullable
+    private final DiskResponseCache cache;
+
+    /**
+     * Configured by httpConnectTimeoutMillis, httpReadTimeoutMillis, httpMaxBodyBytes, httpAcceptEncoding
+     * and httpUserAgent, cached on disk as per httpCacheDirectory and httpCacheMaxBytes
+     */
+    public HttpClientDocumentProvider() {
+        this(PropertyStore.getInstance().getIntProperty(PropertyStore.HTTP_CONNECT_TIMEOUT_MILLIS),
+                PropertyStore.getInstance().getIntProperty(PropertyStore.HTTP_READ_TIMEOUT_MILLIS),
+                PropertyStore.getInstance().getLongProperty(PropertyStore.HTTP_MAX_BODY_BYTES),
+                PropertyStore.getInstance().getProperty(PropertyStore.HTTP_ACCEPT_ENCODING),
+                PropertyStore.getInstance().getProperty(PropertyStore.HTTP_USER_AGENT),
+                newCache());
+    }
+
+    /**
+     * @param connectTimeoutMillis - timeout to connect, 0 for none
+     * @param readTimeoutMillis - timeout of each read of the response, 0 for none
+     * @param maxBodyBytes - max bytes of the decoded body, beyond which the fetch fails
+     * @param acceptEncoding - comma separated encodings to ask for, of gzip and deflate, empty for none
+     * @param userAgent - User-Agent header
+     */
+    public HttpClientDocumentProvider(int connectTimeoutMillis, int readTimeoutMillis, long maxBodyBytes,
+                                      String acceptEncoding, String userAgent) {
+        this(connectTimeoutMillis, readTimeoutMillis, maxBodyBytes, acceptEncoding, userAgent, null);
+    }
+
+    /**
+     * @param connectTimeoutMillis - timeout to connect, 0 for none
+     * @param readTimeoutMillis - timeout of each read of the response, 0 for none
+     * @param maxBodyBytes - max bytes of the decoded body, beyond which the fetch fails
+     * @param acceptEncoding - comma separated encodings to ask for, of gzip and deflate, empty for none
+     * @param userAgent - User-Agent header
+     * @param cache - cache of the pages on disk, null for none
+     */
+    public HttpClientDocumentProvider(int connectTimeoutMillis, int readTimeoutMillis, long maxBodyBytes,
+                                      String acceptEncoding, String userAgent, @Nullable DiskResponseCache cache) {
+        this.cache = cache;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.maxBodyBytes = maxBodyBytes;
+        this.acceptEncoding = acceptEncoding.replace(" ", "");
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * @param url - url to fetch
+     * @return Document object representing the DOM, the charset being taken from the Content-Type header,
+     * else from the page itself
+     * @throws IOException if there is problem fetching the page. e.g. 404, 500, timeout, body too large etc.
+     */
+    @Nullable
+    @Override
+    public Document getDocument(String url) throws IOException {
+        try (Body body = fetch(url)) {
+            final Charset charset = body.getCharset();
+            return Jsoup.parse(body.getStream(), charset == null ? null : charset.name(), body.getUrl());
+        }
+    }
+
+    /**
+     * Fetches the page, following redirects, and opens its decoded body.
+     * The body is to be read to the end and closed, for the connection to be kept alive.
+     * @param url - url to fetch
+     * @return body of the page
+     * @throws IOException if there is problem fetching the page. e.g. 404, 500, timeout, body too large etc.
+     */
+    Body fetch(String url) throws IOException {
+        URL target = new URL(url);
+        boolean revalidate = cache != null;
+        for (int redirects = 0; ; redirects++) {
+            final DiskResponseCache.Entry cached = revalidate ? cache.get(target.toExternalForm()) : null;
+            final URLConnection urlConnection = target.openConnection();
+            if (!(urlConnection instanceof HttpURLConnection)) {
+                throw new IOException("Only http and https urls can be fetched: " + target);
+            }
+            final HttpURLConnection connection = (HttpURLConnection) urlConnection;
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setInstanceFollowRedirects(false); //followed here, as the JDK doesn't go from http to https
+            connection.setRequestProperty("User-Agent", userAgent);
+            connection.setRequestProperty("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+            if (!acceptEncoding.isEmpty()) {
+                connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+            }
+            if (cached != null && cached.getEtag() != null) {
+                connection.setRequestProperty("If-None-Match", cached.getEtag());
+            }
+            if (cached != null && cached.getLastModified() != null) {
+                connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+            }
+
+            final int status = connection.getResponseCode();
+            if (status == 304 && cached != null) {
+                discard(connection);
+                final InputStream cachedBody;
+                try {
+                    cachedBody = cache.openBody(cached);
+                } catch (IOException e) {
+                    //evicted meanwhile, fetched again in full
+                    cache.remove(cached.getUrl());
+                    revalidate = false;
+                    redirects--;
+                    continue;
+                }
+                return new Body(target.toExternalForm(), charsetOf(cached.getContentType()), cachedBody, null);
+            }
+            if (status >= 300 && status < 400 && status != 304 && connection.getHeaderField("Location") != null) {
+                final URL location = new URL(target, connection.getHeaderField("Location"));
+                discard(connection);
+                if (redirects == MAX_REDIRECTS) {
+                    throw new IOException("Too many redirects occurred trying to load URL " + url);
+                }
+                target = location;
+                continue;
+            }
+            //an error, or else a 304 not asked for or a redirect without a Location, neither of which has a page
+            if (status < 200 || status >= 300) {
+                final String retryAfter = connection.getHeaderField("Retry-After");
+                discard(connection);
+                if (retryAfter != null) {
+                    throw new HttpRetryAfterException("HTTP error fetching URL", status, target.toString(), retryAfter);
+                }
+                throw new HttpStatusException("HTTP error fetching URL", status, target.toString());
+            }
+            final String contentType = connection.getContentType();
+            if (contentType != null && !isHtml(contentType)) {
+                connection.disconnect(); //rather than reading through e.g. a large pdf
+                throw new UnsupportedMimeTypeException("Unhandled content type", contentType, target.toString());
+            }
+            if (connection.getContentLengthLong() > maxBodyBytes) { //a compressed body only gets bigger decoded
+                connection.disconnect();
+                throw new IOException("Body of " + connection.getContentLengthLong() + " bytes exceeds " + maxBodyBytes + " bytes: " + target);
+            }
+            InputStream body = decode(connection);
+            final String etag = connection.getHeaderField("ETag");
+            final String lastModified = connection.getHeaderField("Last-Modified");
+            if (cache != null && (etag != null || lastModified != null) && isStorable(connection.getHeaderField("Cache-Control"))) {
+                body = cache.cacheAsRead(target.toExternalForm(), etag, lastModified, contentType, body);
+            }
+            return new Body(target.toExternalForm(), charsetOf(contentType), body, connection);
+        }
+    }
+
+    private InputStream decode(HttpURLConnection connection) throws IOException {
+        final String encoding = connection.getHeaderField("Content-Encoding");
+        InputStream stream = connection.getInputStream();
+        if (encoding != null) {
+            switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+                case "gzip":
+                case "x-gzip":
+                    stream = new GZIPInputStream(stream);
+                    break;
+                case "deflate":
+                    stream = new InflaterInputStream(stream);
+                    break;
+                case "identity":
+                    break;
+                default:
+                    connection.disconnect();
+                    throw new IOException("Unsupported Content-Encoding " + encoding + ": " + connection.getURL());
+            }
+        }
+        return new LimitedInputStream(stream, maxBodyBytes, connection);
+    }
+
+    /**
+     * Reads what is left of a short response, e.g. a redirect or error page, so that the connection
+     * is kept alive rather than closed, a longer one being cut by closing the connection
+     */
+    private static void discard(HttpURLConnection connection) {
+        try (InputStream stream = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+            if (stream != null) {
+                final byte[] buffer = new byte[4096];
+                long left = MAX_DISCARDED_BYTES;
+                int n;
+                while ((n = stream.read(buffer)) != -1) {
+                    left -= n;
+                    if (left < 0) {
+                        connection.disconnect();
+                        return;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+
+    private static boolean isStorable(@Nullable String cacheControl) {
+        return cacheControl == null || !cacheControl.toLowerCase(Locale.ROOT).contains("no-store");
+    }
+
+    @Nullable
+    private static DiskResponseCache newCache() {
+        final String directory = PropertyStore.getInstance().getProperty(PropertyStore.HTTP_CACHE_DIRECTORY);
+        if (directory == null || directory.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return new DiskResponseCache(Paths.get(directory.trim()), PropertyStore.getInstance().getLongProperty(PropertyStore.HTTP_CACHE_MAX_BYTES));
+        } catch (IOException e) {
+            logger.warn("Fetching without a response cache, as the cache directory {} cannot be used", directory, e);
+            return null;
+        }
+    }
+
+    private static boolean isHtml(String contentType) {
+        final String mimeType = contentType.toLowerCase(Locale.ROOT);
+        return mimeType.startsWith("text/") || mimeType.startsWith("application/xhtml+xml")
+                || mimeType.startsWith("application/xml") || mimeType.startsWith("application/") && mimeType.contains("+xml");
+    }
+
+    @Nullable
+    private static Charset charsetOf(@Nullable String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        final int charsetStart = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (charsetStart == -1) {
+            return null;
+        }
+        String charset = contentType.substring(charsetStart + "charset=".length());
+        final int charsetEnd = charset.indexOf(';');
+        charset = (charsetEnd == -1 ? charset : charset.substring(0, charsetEnd)).trim().replace("\"", "").replace("'", "");
+        try {
+            return Charset.isSupported(charset) ? Charset.forName(charset) : null;
+        } catch (IllegalArgumentException e) {
+            return null; //illegal charset name
+        }
+    }
+
+    /**
+     * Decoded body of a fetched page
+     */
+    static class Body implements Closeable {
+        private final String url;
+        @Nullable
+        private final Charset charset;
+        private final InputStream stream;
+        @Nullable
+        private final HttpURLConnection connection;
+
+        /**
+         * @param connection - connection the body is read from, null if read from the cache
+         */
+        Body(String url, @Nullable Charset charset, InputStream stream, @Nullable HttpURLConnection connection) {
+            this.url = url;
+            this.charset = charset;
+            this.stream = stream;
+            this.connection = connection;
+        }
+
+        /**
+         * @return final url of the page, after redirects
+         */
+        String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return charset of the Content-Type header, null if none
+         */
+        @Nullable
+        Charset getCharset() {
+            return charset;
+        }
+
+        InputStream getStream() {
+            return stream;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Fails the read beyond the max bytes, closing the connection rather than reading the rest of it
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private final HttpURLConnection connection;
+        private long bytesRead;
+
+        LimitedInputStream(InputStream in, long maxBytes, HttpURLConnection connection) {
+            super(in);
+            this.maxBytes = maxBytes;
+            this.connection = connection;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            final int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) throws IOException {
+            bytesRead += n;
+            if (bytesRead > maxBytes) {
+                connection.disconnect();
+                throw new IOException("Body exceeds " + maxBytes + " bytes: " + connection.getURL());
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.purini.fw.process;
+
+import org.jsoup.HttpStatusException;
+
+/**
+ * Error status of a response telling how long to wait before trying again, by its Retry-After header,
+ * e.g. 429 Too Many Requests or 503 Service Unavailable
+ */
+public class HttpRetryAfterException extends HttpStatusException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String retryAfter;
+
+    /**
+     * @param message - message
+     * @param statusCode - status of the response
+     * @param url - url fetched
+     * @param retryAfter - Retry-After header, in seconds or as an HTTP date
+     */
+    public HttpRetryAfterException(String message, int statusCode, String url, String retryAfter) {
+        super(message, statusCode, url);
+        this.retryAfter = retryAfter;
+    }
+
+    public String getRetryAfter() {
+        return retryAfter;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ", Retry-After=" + retryAfter;
+    }
+}
@@ -0,0 +1,338 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.WordConstruct;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Memory lean store for word constructs, ranking on demand like CountingWordCountStore.
+ *
+ * Every lower case and original word is interned once into a TermDictionary. A word construct
+ * is then keyed by the ids of its words packed into a single long (a word pair being
+ * two ints side by side), so no Word, WordPair or concatenated string is retained per entry.
+ *
+ * The counts are kept in an open addressing hash table whose slots hold the
+ * key (long), count (int) and the packed ids of the original form (long), i.e. 20 bytes per slot.
+ * By default the dictionary and the table are on the heap, the table being primitive arrays.
+ * Subclasses can back them differently, see OffHeapWordCountStore.
+ * At the load factor of 0.75 and doubling on growth, a distinct word construct costs
+ * 27 to 53 (on average about 36) bytes in the table. Thus, a distinct word pair costs about 36 bytes
+ * as against about 300 bytes in WordCountStore.
+ * A distinct word additionally costs its single interned String, about 50 bytes plus its length,
+ * and about 12 bytes of dictionary index.
+ *
+ * As with WordCountStore, the add and get methods are synchronized, which also guards the dictionary,
+ * except for snapshotTopNWords, which copies the occupied slots under the lock and ranks the copy outside of it.
+ *
+ * @param <T> generic parameter to denote either a WordConstruct i.e. Word or WordPair
+ */
+public class InternedWordCountStore<T extends WordConstruct<T>> implements WordStore<T> {
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final long INT_MASK = 0xffffffffL;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Function<List<String>, T> fromWords;
+    private final TermDictionary dictionary;
+    private final IntFunction<CountTable> tableFactory;
+    private int arity = 0;
+
+    private CountTable table;
+    private int size;
+
+    private List<Pair<T, Integer>> cachedTopWords = null;
+
+    /**
+     * @param fromWords - creates the word construct back from its words, e.g. Word::fromWords
+     */
+    public InternedWordCountStore(Function<List<String>, T> fromWords) {
+        this(fromWords, new HeapTermDictionary(), HeapCountTable::new);
+    }
+
+    /**
+     * @param fromWords - creates the word construct back from its words, e.g. Word::fromWords
+     * @param dictionary - dictionary to intern the words into
+     * @param tableFactory - creates an empty count table of the given capacity
+     */
+    protected InternedWordCountStore(Function<List<String>, T> fromWords, TermDictionary dictionary,
+                                     IntFunction<CountTable> tableFactory) {
+        this.fromWords = fromWords;
+        this.dictionary = dictionary;
+        this.tableFactory = tableFactory;
+        this.table = tableFactory.apply(INITIAL_CAPACITY);
+    }
+
+    @Override
+    synchronized public void addWord(T lowerCaseWord, T word, int count) {
+        List<String> lowerCaseWords = lowerCaseWord.getWords();
+        List<String> words = word.getWords();
+        if (arity == 0) {
+            arity = lowerCaseWords.size();
+        }
+        long key = 0;
+        long original = 0;
+        for (int i = 0; i < arity; i++) {
+            String lowerCase = lowerCaseWords.get(i);
+            String s = words.get(i);
+            int id = dictionary.intern(lowerCase);
+            int originalId = s.equals(lowerCase) ? id : dictionary.intern(s);
+            key = (key << 32) | (id & INT_MASK);
+            original = (original << 32) | (originalId & INT_MASK);
+        }
+
+        int slot = slotOf(table, key);
+        int oldCount = table.count(slot);
+        table.set(slot, key, oldCount + count, original);
+        if (oldCount == 0 && ++size > table.capacity() * LOAD_FACTOR) {
+            rehash(table.capacity() << 1);
+        }
+        cachedTopWords = null;
+    }
+
+    /**
+     * Adds all the counts under a single acquisition of the lock
+     * @param counts - word (original form) to number of occurrences, in the order of last occurrence
+     */
+    @Override
+    synchronized public void addCounts(Map<T, Integer> counts) {
+        counts.forEach((word, count) -> addWord(word.toLowerCase(), word, count));
+    }
+
+    /**
+     * Gives out top n words, sorted by their frequency in descending order.
+     * Uses the cached result if nothing has been added since it was computed for at least n words.
+     * @param n - number of top words to return
+     * @return a list of pair of word and count
+     */
+    @Override
+    synchronized public List<Pair<T, Integer>> getTopNWords(int n) {
+        int maxTopWords = Math.min(n, size);
+        if (cachedTopWords == null || cachedTopWords.size() < maxTopWords) {
+            cachedTopWords = Collections.unmodifiableList(rank(table, dictionary::term, maxTopWords));
+        }
+        return new ArrayList<>(cachedTopWords.subList(0, maxTopWords));
+    }
+
+    /**
+     * Same as getTopNWords, the store being locked only to copy the key, count and original form
+     * of the occupied slots (20 bytes each) and not while they are ranked and their words decoded,
+     * the words being read from the dictionary as interned so far (TermDictionary.reader)
+     * @param n - number of top words to return
+     * @return a list of pair of word and count
+     */
+    @Override
+    public List<Pair<T, Integer>> snapshotTopNWords(int n) {
+        final CountTable counts;
+        final IntFunction<String> terms;
+        synchronized (this) {
+            int maxTopWords = Math.min(n, size);
+            if (cachedTopWords != null && cachedTopWords.size() >= maxTopWords) {
+                return new ArrayList<>(cachedTopWords.subList(0, maxTopWords));
+            }
+            counts = new HeapCountTable(size);
+            int entry = 0;
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.count(slot) != 0) {
+                    counts.set(entry++, table.key(slot), table.count(slot), table.original(slot));
+                }
+            }
+            terms = dictionary.reader();
+        }
+        return rank(counts, terms, Math.min(n, counts.capacity()));
+    }
+
+    /**
+     * @return number of distinct word constructs
+     */
+    synchronized public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of distinct words interned, lower case and original forms alike
+     */
+    synchronized int termCount() {
+        return dictionary.size();
+    }
+
+    /**
+     * @return number of slots of the count table, CountTable.SLOT_BYTES each
+     */
+    synchronized int tableCapacity() {
+        return table.capacity();
+    }
+
+    @Override
+    synchronized public void forEachCount(ObjIntConsumer<T> action) {
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.count(slot) != 0) {
+                action.accept(fromWords.apply(termsOf(table.original(slot), dictionary::term)), table.count(slot));
+            }
+        }
+    }
+
+    /**
+     * @param table - counts to rank, the table of the store or a copy of it
+     * @param terms - terms of the ids in the table
+     */
+    private List<Pair<T, Integer>> rank(CountTable table, IntFunction<String> terms, int n) {
+        if (n <= 0) {
+            return Collections.emptyList();
+        }
+        //min heap of slots, the head being the weakest of the current top n
+        int[] heap = new int[n];
+        int heapSize = 0;
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.count(slot) == 0) {
+                continue;
+            }
+            if (heapSize < n) {
+                heap[heapSize] = slot;
+                siftUp(table, terms, heap, heapSize++);
+            } else if (compareStrength(table, terms, slot, heap[0]) > 0) {
+                heap[0] = slot;
+                siftDown(table, terms, heap, heapSize);
+            }
+        }
+        Pair<T, Integer>[] topWords = newPairArray(heapSize);
+        while (heapSize > 0) {
+            int slot = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(table, terms, heap, heapSize);
+            topWords[heapSize] = Pair.of(fromWords.apply(termsOf(table.original(slot), terms)), table.count(slot));
+        }
+        return Arrays.asList(topWords);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Pair<T, Integer>[] newPairArray(int length) {
+        return (Pair<T, Integer>[]) new Pair<?, ?>[length];
+    }
+
+    private void siftUp(CountTable table, IntFunction<String> terms, int[] heap, int index) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (compareStrength(table, terms, slot, heap[parent]) >= 0) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private void siftDown(CountTable table, IntFunction<String> terms, int[] heap, int heapSize) {
+        int index = 0;
+        int slot = heap[0];
+        while (true) {
+            int child = (index << 1) + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && compareStrength(table, terms, heap[child + 1], heap[child]) < 0) {
+                child++;
+            }
+            if (compareStrength(table, terms, heap[child], slot) >= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = slot;
+    }
+
+    /**
+     * Higher count is stronger, for the same count the lower case value that comes first is stronger
+     */
+    private int compareStrength(CountTable table, IntFunction<String> terms, int slot1, int slot2) {
+        int result = Integer.compare(table.count(slot1), table.count(slot2));
+        return result != 0 ? result : compareValues(terms, table.key(slot2), table.key(slot1));
+    }
+
+    /**
+     * Compares the values as WordConstruct.getValue would, i.e. words joined by a space,
+     * without actually joining them
+     */
+    private int compareValues(IntFunction<String> terms, long key1, long key2) {
+        List<String> words1 = termsOf(key1, terms);
+        List<String> words2 = termsOf(key2, terms);
+        int length1 = valueLength(words1);
+        int length2 = valueLength(words2);
+        for (int i = 0; i < Math.min(length1, length2); i++) {
+            char c1 = valueCharAt(words1, i);
+            char c2 = valueCharAt(words2, i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return length1 - length2;
+    }
+
+    private static int valueLength(List<String> words) {
+        int length = words.size() - 1;
+        for (String word : words) {
+            length += word.length();
+        }
+        return length;
+    }
+
+    private static char valueCharAt(List<String> words, int index) {
+        for (String word : words) {
+            if (index < word.length()) {
+                return word.charAt(index);
+            } else if (index == word.length()) {
+                return ' ';
+            }
+            index -= word.length() + 1;
+        }
+        throw new IndexOutOfBoundsException();
+    }
+
+    private List<String> termsOf(long key, IntFunction<String> terms) {
+        if (arity == 1) {
+            return Collections.singletonList(terms.apply((int) key));
+        }
+        return Arrays.asList(terms.apply((int) (key >>> 32)), terms.apply((int) (key & INT_MASK)));
+    }
+
+    private static int slotOf(CountTable table, long key) {
+        final int mask = table.capacity() - 1;
+        int slot = TermDictionary.mix(Long.hashCode(key)) & mask;
+        while (table.count(slot) != 0 && table.key(slot) != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Releases the dictionary and the count table, e.g. off heap memory, the store not to be used afterwards
+     */
+    @Override
+    synchronized public void close() {
+        table.release();
+        dictionary.release();
+        cachedTopWords = null;
+    }
+
+    private void rehash(int capacity) {
+        CountTable oldTable = table;
+        CountTable newTable = tableFactory.apply(capacity);
+        for (int i = 0; i < oldTable.capacity(); i++) {
+            if (oldTable.count(i) != 0) {
+                newTable.set(slotOf(newTable, oldTable.key(i)), oldTable.key(i), oldTable.count(i), oldTable.original(i));
+            }
+        }
+        table = newTable;
+        oldTable.release();
+    }
+}
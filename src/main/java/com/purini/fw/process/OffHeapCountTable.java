@@ -0,0 +1,59 @@
+package com.purini.fw.process;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+
+/**
+ * Count table in a single block of off heap memory, laid out as three consecutive arrays:
+ * keys (long), originals (long) and counts (int), i.e. 20 bytes per slot.
+ */
+public class OffHeapCountTable implements CountTable {
+
+    private final int capacity;
+    private final OffHeapMemory memory;
+    private final long originalsOffset;
+    private final long countsOffset;
+
+    /**
+     * @param capacity - number of slots
+     * @param directory - directory for the memory mapped file, or null for direct memory
+     */
+    public OffHeapCountTable(int capacity, @Nullable Path directory) {
+        this.capacity = capacity;
+        this.originalsOffset = (long) capacity * Long.BYTES;
+        this.countsOffset = originalsOffset * 2;
+        this.memory = new OffHeapMemory(countsOffset + (long) capacity * Integer.BYTES, directory);
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public long key(int slot) {
+        return memory.getLong((long) slot * Long.BYTES);
+    }
+
+    @Override
+    public int count(int slot) {
+        return memory.getInt(countsOffset + (long) slot * Integer.BYTES);
+    }
+
+    @Override
+    public long original(int slot) {
+        return memory.getLong(originalsOffset + (long) slot * Long.BYTES);
+    }
+
+    @Override
+    public void set(int slot, long key, int count, long original) {
+        memory.putLong((long) slot * Long.BYTES, key);
+        memory.putLong(originalsOffset + (long) slot * Long.BYTES, original);
+        memory.putInt(countsOffset + (long) slot * Integer.BYTES, count);
+    }
+
+    @Override
+    public void release() {
+        memory.release();
+    }
+}
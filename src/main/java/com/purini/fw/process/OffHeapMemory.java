@@ -0,0 +1,169 @@
+package com.purini.fw.process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed size block of zeroed memory outside the Java heap, addressed by a long offset.
+ *
+ * It is either direct memory (bounded by -XX:MaxDirectMemorySize) or, when a directory is given,
+ * a memory mapped temporary file in that directory, in which case the OS pages it in and out as needed
+ * and the size is bounded by the disk. The file is deleted right after it is mapped, so it goes
+ * away with the mapping.
+ *
+ * As a ByteBuffer can only address 2GB, the block is split into chunks of 1GB.
+ * Longs and ints are expected at offsets aligned to their size, so that they never span two chunks.
+ * The memory is released by release, e.g. when the owner grows into a bigger block, rather than left
+ * to the garbage collector, which gets no signal of off heap memory pressure and might otherwise keep
+ * the old blocks, their address space and mappings, for as long as the heap stays quiet.
+ * Before Java 9, where buffers cannot be freed explicitly, it is still left to the garbage collector.
+ */
+public class OffHeapMemory {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapMemory.class);
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    //Unsafe.invokeCleaner(ByteBuffer) of Java 9+, which frees direct memory and unmaps mapped files
+    @Nullable
+    private static final Object UNSAFE;
+    @Nullable
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("off heap memory cannot be released explicitly, leaving it to the garbage collector", e);
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final ByteBuffer[] chunks;
+    private final long size;
+    @Nullable
+    private Path undeletedFile; //mapped file that could not be deleted right after mapping
+
+    /**
+     * @param size - size in bytes
+     * @param directory - directory for the memory mapped file, or null for direct memory
+     */
+    public OffHeapMemory(long size, @Nullable Path directory) {
+        this.size = size;
+        this.chunks = new ByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+        if (directory == null) {
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = ByteBuffer.allocateDirect((int) chunkSize(i));
+            }
+        } else {
+            map(directory);
+        }
+    }
+
+    private void map(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, "word-store-", ".bin");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                for (int i = 0; i < chunks.length; i++) {
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * CHUNK_SIZE, chunkSize(i));
+                }
+            } finally {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    logger.debug("could not delete mapped file {} right away, deleting on release", file, e);
+                    undeletedFile = file;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("while mapping off heap memory in " + directory, e);
+        }
+    }
+
+    private long chunkSize(int chunk) {
+        return Math.min(CHUNK_SIZE, size - chunk * CHUNK_SIZE);
+    }
+
+    /**
+     * Frees the direct memory or unmaps the file right away, and deletes the file if it is still there.
+     * The memory must not be used afterwards. Releasing it twice does nothing.
+     */
+    public void release() {
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                free(chunks[i]);
+                chunks[i] = null;
+            }
+        }
+        if (undeletedFile != null) {
+            try {
+                Files.deleteIfExists(undeletedFile);
+            } catch (IOException e) {
+                logger.debug("could not delete mapped file {}, deleting on exit", undeletedFile, e);
+                undeletedFile.toFile().deleteOnExit();
+            }
+            undeletedFile = null;
+        }
+    }
+
+    private static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            logger.debug("could not release off heap memory, leaving it to the garbage collector", e);
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long getLong(long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)].getLong((int) (offset & CHUNK_MASK));
+    }
+
+    public void putLong(long offset, long value) {
+        chunks[(int) (offset >>> CHUNK_BITS)].putLong((int) (offset & CHUNK_MASK), value);
+    }
+
+    public int getInt(long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)].getInt((int) (offset & CHUNK_MASK));
+    }
+
+    public void putInt(long offset, int value) {
+        chunks[(int) (offset >>> CHUNK_BITS)].putInt((int) (offset & CHUNK_MASK), value);
+    }
+
+    public byte getByte(long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)].get((int) (offset & CHUNK_MASK));
+    }
+
+    public void putByte(long offset, byte value) {
+        chunks[(int) (offset >>> CHUNK_BITS)].put((int) (offset & CHUNK_MASK), value);
+    }
+}
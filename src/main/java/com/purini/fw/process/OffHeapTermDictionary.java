@@ -0,0 +1,188 @@
+package com.purini.fw.process;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Term dictionary kept entirely outside the Java heap.
+ *
+ * The terms are appended to segments of off heap memory (doubling in size from 64KB up to 4MB) as entries of
+ * hash (int), length (int) and UTF-8 bytes, padded to 4 bytes.
+ * The address of the entry of each id (segment and offset packed in a long) is kept in an
+ * off heap array, and the index from term to id is an open addressing hash table of ids, also off heap.
+ * Thus a term costs 8 bytes of entry header, its UTF-8 bytes, 8 bytes of address and
+ * about 7 bytes of index, none of which is on the heap.
+ * The address array and the index are copied into bigger blocks as they grow, the old blocks being released.
+ * All the memory is released by release, once the store is closed.
+ *
+ * Not thread safe, the owner is expected to guard it.
+ */
+public class OffHeapTermDictionary implements TermDictionary {
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MIN_SEGMENT_SIZE = 64 << 10;
+    private static final int MAX_SEGMENT_SIZE = 4 << 20;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    @Nullable
+    private final Path directory;
+    private final List<OffHeapMemory> segments = new ArrayList<>();
+    private int position; //position in the last segment
+    private OffHeapMemory addresses;
+    private OffHeapMemory idTable; //id + 1, 0 being an empty slot
+    private int idTableCapacity = 1024;
+    private int size;
+
+    /**
+     * @param directory - directory for the memory mapped files, or null for direct memory
+     */
+    public OffHeapTermDictionary(@Nullable Path directory) {
+        this.directory = directory;
+        this.addresses = new OffHeapMemory((long) idTableCapacity * Long.BYTES, directory);
+        this.idTable = new OffHeapMemory((long) idTableCapacity * Integer.BYTES, directory);
+    }
+
+    @Override
+    public int intern(String term) {
+        final byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        final int hash = TermDictionary.mix(term.hashCode());
+        final long slot = slotOf(hash, bytes);
+        int id = idTable.getInt(slot * Integer.BYTES) - 1;
+        if (id != NO_ID) {
+            return id;
+        }
+        id = size++;
+        if ((long) size * Long.BYTES > addresses.size()) {
+            addresses = copy(addresses, addresses.size() * 2);
+        }
+        addresses.putLong((long) id * Long.BYTES, append(hash, bytes));
+        idTable.putInt(slot * Integer.BYTES, id + 1);
+        if (size > idTableCapacity * LOAD_FACTOR) {
+            rehash(idTableCapacity << 1);
+        }
+        return id;
+    }
+
+    @Override
+    public int idOf(String term) {
+        final long slot = slotOf(TermDictionary.mix(term.hashCode()), term.getBytes(StandardCharsets.UTF_8));
+        return idTable.getInt(slot * Integer.BYTES) - 1;
+    }
+
+    @Override
+    public String term(int id) {
+        final long address = addresses.getLong((long) id * Long.BYTES);
+        return term(segments.get((int) (address >>> 32)), (int) address);
+    }
+
+    private static String term(OffHeapMemory segment, int offset) {
+        final byte[] bytes = new byte[segment.getInt(offset + Integer.BYTES)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = segment.getByte(offset + HEADER_SIZE + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the addresses of the terms so far to the heap, 8 bytes a term, since the address array is released
+     * when it grows, whereas the segments the terms are in are kept till the dictionary is done with
+     */
+    @Override
+    public IntFunction<String> reader() {
+        final long[] termAddresses = new long[size];
+        for (int id = 0; id < size; id++) {
+            termAddresses[id] = addresses.getLong((long) id * Long.BYTES);
+        }
+        final OffHeapMemory[] termSegments = segments.toArray(new OffHeapMemory[0]);
+        return id -> term(termSegments[(int) (termAddresses[id] >>> 32)], (int) termAddresses[id]);
+    }
+
+    @Override
+    public void release() {
+        segments.forEach(OffHeapMemory::release);
+        addresses.release();
+        idTable.release();
+    }
+
+    private long slotOf(int hash, byte[] bytes) {
+        final int mask = idTableCapacity - 1;
+        long slot = hash & mask;
+        int id;
+        while ((id = idTable.getInt(slot * Integer.BYTES) - 1) != NO_ID && !matches(id, hash, bytes)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean matches(int id, int hash, byte[] bytes) {
+        final long address = addresses.getLong((long) id * Long.BYTES);
+        final OffHeapMemory segment = segments.get((int) (address >>> 32));
+        final int offset = (int) address;
+        if (segment.getInt(offset) != hash || segment.getInt(offset + Integer.BYTES) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (segment.getByte(offset + HEADER_SIZE + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the entry to the last segment, starting a new one if it doesn't fit
+     * @return address of the entry
+     */
+    private long append(int hash, byte[] bytes) {
+        final int entrySize = (HEADER_SIZE + bytes.length + 3) & ~3;
+        if (segments.isEmpty() || position + entrySize > segments.get(segments.size() - 1).size()) {
+            final long segmentSize = segments.isEmpty() ? MIN_SEGMENT_SIZE
+                    : Math.min(MAX_SEGMENT_SIZE, segments.get(segments.size() - 1).size() * 2);
+            segments.add(new OffHeapMemory(Math.max(segmentSize, entrySize), directory));
+            position = 0;
+        }
+        final OffHeapMemory segment = segments.get(segments.size() - 1);
+        final long address = ((long) (segments.size() - 1) << 32) | position;
+        segment.putInt(position, hash);
+        segment.putInt(position + Integer.BYTES, bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            segment.putByte(position + HEADER_SIZE + i, bytes[i]);
+        }
+        position += entrySize;
+        return address;
+    }
+
+    private void rehash(int capacity) {
+        final int mask = capacity - 1;
+        OffHeapMemory newIdTable = new OffHeapMemory((long) capacity * Integer.BYTES, directory);
+        for (int id = 0; id < size; id++) {
+            final long address = addresses.getLong((long) id * Long.BYTES);
+            long slot = segments.get((int) (address >>> 32)).getInt((int) address) & mask;
+            while (newIdTable.getInt(slot * Integer.BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newIdTable.putInt(slot * Integer.BYTES, id + 1);
+        }
+        idTable.release();
+        idTable = newIdTable;
+        idTableCapacity = capacity;
+    }
+
+    private OffHeapMemory copy(OffHeapMemory memory, long newSize) {
+        OffHeapMemory newMemory = new OffHeapMemory(newSize, directory);
+        for (long offset = 0; offset < memory.size(); offset += Long.BYTES) {
+            newMemory.putLong(offset, memory.getLong(offset));
+        }
+        memory.release();
+        return newMemory;
+    }
+}
@@ -0,0 +1,32 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.WordConstruct;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Interned word count store whose term dictionary and count table are outside the Java heap,
+ * for crawls where the distinct word pairs outgrow any reasonable heap.
+ *
+ * Only a few small objects remain on the heap, apart from the words being added.
+ * The off heap memory is either direct memory, or memory mapped files in the given directory,
+ * so that it is bounded by the disk rather than the RAM. See OffHeapMemory.
+ *
+ * The counting and the ranking is exactly that of InternedWordCountStore,
+ * thus the results are the same as those of the in heap stores.
+ *
+ * @param <T> generic parameter to denote either a WordConstruct i.e. Word or WordPair
+ */
+public class OffHeapWordCountStore<T extends WordConstruct<T>> extends InternedWordCountStore<T> {
+
+    /**
+     * @param fromWords - creates the word construct back from its words, e.g. Word::fromWords
+     * @param directory - directory for the memory mapped files, or null for direct memory
+     */
+    public OffHeapWordCountStore(Function<List<String>, T> fromWords, @Nullable Path directory) {
+        super(fromWords, new OffHeapTermDictionary(directory), capacity -> new OffHeapCountTable(capacity, directory));
+    }
+}
@@ -0,0 +1,32 @@
+package com.purini.fw.process;
+
+import org.jsoup.nodes.Document;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * Fetches the pages through another DocumentProvider, as the HostScheduler allows for the host of each page,
+ * so that concurrent fetches don't get the crawl rate limited and throttled pages are retried rather than dropped,
+ * by the caller once the RetryLaterException they fail with is due
+ */
+public class PoliteDocumentProvider extends DocumentProvider {
+
+    private final DocumentProvider documentProvider;
+    private final HostScheduler hostScheduler;
+
+    /**
+     * @param documentProvider - fetches the pages
+     * @param hostScheduler - schedules the fetches to each host
+     */
+    public PoliteDocumentProvider(DocumentProvider documentProvider, HostScheduler hostScheduler) {
+        this.documentProvider = documentProvider;
+        this.hostScheduler = hostScheduler;
+    }
+
+    @Nullable
+    @Override
+    public Document getDocument(String url) throws IOException {
+        return hostScheduler.execute(url, () -> documentProvider.getDocument(url));
+    }
+}
@@ -0,0 +1,72 @@
+package com.purini.fw.process;
+
+/**
+ * Hard ceiling on the documents handed over for processing but not processed yet,
+ * in number of documents and in estimated bytes.
+ *
+ * A document is always let in when the backlog is empty, even if it is bigger than the byte limit,
+ * so that a single large document cannot hold up the crawl.
+ */
+public class ProcessingBacklog {
+
+    private final int maxDocuments;
+    private final long maxBytes;
+    private int documents;
+    private long bytes;
+
+    /**
+     * @param maxDocuments - max number of documents waiting or being processed
+     * @param maxBytes - max estimated bytes of the documents waiting or being processed
+     */
+    public ProcessingBacklog(int maxDocuments, long maxBytes) {
+        if (maxDocuments < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("maxDocuments and maxBytes should be at least 1, found "
+                    + maxDocuments + ", " + maxBytes);
+        }
+        this.maxDocuments = maxDocuments;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds the document to the backlog if there is room for it
+     * @param size - estimated bytes of the document
+     * @return true if added
+     */
+    synchronized public boolean tryAdd(long size) {
+        if (documents == 0 || (documents < maxDocuments && bytes + size <= maxBytes)) {
+            documents++;
+            bytes += size;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the document to the backlog, waiting till there is room for it
+     * @param size - estimated bytes of the document
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized public void add(long size) throws InterruptedException {
+        while (!tryAdd(size)) {
+            wait();
+        }
+    }
+
+    /**
+     * Removes a processed document from the backlog
+     * @param size - estimated bytes of the document, same as when it was added
+     */
+    synchronized public void remove(long size) {
+        documents--;
+        bytes -= size;
+        notifyAll();
+    }
+
+    synchronized public int getDocuments() {
+        return documents;
+    }
+
+    synchronized public long getBytes() {
+        return bytes;
+    }
+}
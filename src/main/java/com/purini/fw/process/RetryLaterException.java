@@ -0,0 +1,28 @@
+package com.purini.fw.process;
+
+import java.io.IOException;
+
+/**
+ * Request not made, or throttled, which its host allows to be made again only after a delay (HostScheduler).
+ * The url is to be requeued by the caller, e.g. by UrlTraverser, rather than waited for on the fetch thread.
+ */
+public class RetryLaterException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long delayMillis;
+
+    /**
+     * @param message - message
+     * @param delayMillis - milliseconds after which the request can be made again
+     * @param cause - status of the throttled request, null if it was held back without being made
+     */
+    public RetryLaterException(String message, long delayMillis, Throwable cause) {
+        super(message, cause);
+        this.delayMillis = delayMillis;
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+}
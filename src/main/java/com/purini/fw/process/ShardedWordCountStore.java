@@ -0,0 +1,113 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.WordConstruct;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Store that partitions the word constructs across a fixed number of shards
+ * by the hash of their lower case form.
+ *
+ * Each shard is a store on its own with its own lock, so threads adding
+ * different words rarely contend with each other, as opposed to a single
+ * store where every word of every thread goes through one monitor.
+ *
+ * Since a word always lands in the same shard, the count of a word is
+ * complete within its shard. Thus top N across the store is the top N of
+ * the top N of each shard, which is merged only when asked for.
+ *
+ * @param <T> generic parameter to denote either a WordConstruct i.e. Word or WordPair
+ */
+public class ShardedWordCountStore<T extends WordConstruct<T>> implements WordStore<T> {
+
+    private final List<WordStore<T>> shards;
+
+    /**
+     * @param shardCount - number of shards, ideally a few times the number of writing threads
+     * @param shardSupplier - creates the store for each shard
+     */
+    public ShardedWordCountStore(int shardCount, Supplier<WordStore<T>> shardSupplier) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount should be at least 1, found " + shardCount);
+        }
+        this.shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(shardSupplier.get());
+        }
+    }
+
+    @Override
+    public void addWord(T lowerCaseWord, T word, int count) {
+        shardFor(lowerCaseWord).addWord(lowerCaseWord, word, count);
+    }
+
+    /**
+     * Splits the counts by shard, so that each shard is locked once for all its words
+     * @param counts - word (original form) to number of occurrences, in the order of last occurrence
+     */
+    @Override
+    public void addCounts(Map<T, Integer> counts) {
+        Map<WordStore<T>, Map<T, Integer>> countsByShard = new HashMap<>();
+        counts.forEach((word, count) -> countsByShard
+                .computeIfAbsent(shardFor(word.toLowerCase()), shard -> new LinkedHashMap<>())
+                .put(word, count));
+        countsByShard.forEach(WordStore::addCounts);
+    }
+
+    /**
+     * Collects top n from each of the shards and merges them.
+     * @param n - number of top words to return
+     * @return a list of pair of word and count
+     */
+    @Override
+    public List<Pair<T, Integer>> getTopNWords(int n) {
+        List<Pair<T, Integer>> candidates = new ArrayList<>();
+        for (WordStore<T> shard : shards) {
+            candidates.addAll(shard.getTopNWords(n));
+        }
+        return merge(candidates, n);
+    }
+
+    /**
+     * Same as getTopNWords, a single shard being read at a time, so writers to the other shards carry on
+     * @param n - number of top words to return
+     * @return a list of pair of word and count
+     */
+    @Override
+    public List<Pair<T, Integer>> snapshotTopNWords(int n) {
+        List<Pair<T, Integer>> candidates = new ArrayList<>();
+        for (WordStore<T> shard : shards) {
+            candidates.addAll(shard.snapshotTopNWords(n));
+        }
+        return merge(candidates, n);
+    }
+
+    private List<Pair<T, Integer>> merge(List<Pair<T, Integer>> candidates, int n) {
+        candidates.sort(WordStore.rankingOrder());
+        return new ArrayList<>(candidates.subList(0, Math.min(n, candidates.size())));
+    }
+
+    @Override
+    public void forEachCount(ObjIntConsumer<T> action) {
+        shards.forEach(shard -> shard.forEachCount(action));
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(WordStore::close);
+    }
+
+    private WordStore<T> shardFor(T lowerCaseWord) {
+        int hash = lowerCaseWord.hashCode();
+        hash ^= (hash >>> 16); //spread the higher bits, as done by HashMap
+        return shards.get(Math.floorMod(hash, shards.size()));
+    }
+
+}
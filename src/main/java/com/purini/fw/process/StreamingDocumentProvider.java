@@ -0,0 +1,92 @@
+package com.purini.fw.process;
+
+import com.purini.fw.utils.HtmlScanner;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fetches the page and scans the HTML as it is read from the connection, giving out the text and links
+ * on the fly, so that no DOM is built and only a small buffer is held per page.
+ *
+ * The charset is taken from the Content-Type header, defaulting to UTF-8, as a meta charset in the page
+ * cannot be known before reading it.
+ * Pages are scanned by fetchPage, the DOM based getDocument still being there for callers that need a Document.
+ * Pages are fetched by Jsoup, or by the given HttpClientDocumentProvider for its pooled connections and limits,
+ * optionally as the given HostScheduler allows, a page being retried only when throttled before any of it is read.
+ */
+public class StreamingDocumentProvider extends DocumentProvider {
+
+    @Nullable
+    private final HttpClientDocumentProvider httpClient;
+    @Nullable
+    private final HostScheduler hostScheduler;
+
+    public StreamingDocumentProvider() {
+        this(null, null);
+    }
+
+    /**
+     * @param httpClient - fetches the pages, null for Jsoup
+     * @param hostScheduler - schedules the fetches to each host, null to fetch right away
+     */
+    public StreamingDocumentProvider(@Nullable HttpClientDocumentProvider httpClient, @Nullable HostScheduler hostScheduler) {
+        this.httpClient = httpClient;
+        this.hostScheduler = hostScheduler;
+    }
+
+    @Nullable
+    @Override
+    public Document getDocument(String url) throws IOException {
+        final HostScheduler.Request<Document> request = () -> httpClient != null ? httpClient.getDocument(url) : super.getDocument(url);
+        return hostScheduler != null ? hostScheduler.execute(url, request) : request.execute();
+    }
+
+    /**
+     * Scans the page as it is read, see scanDocument, rather than building its DOM
+     */
+    @Override
+    public boolean fetchPage(String url, PageHandler handler) throws IOException {
+        handler.scanned(scanDocument(url, handler));
+        return true;
+    }
+
+    /**
+     * @param url - url to fetch
+     * @param handler - receives the own text of each element and the links as the page is read
+     * @return base uri of the document, against which its links are to be resolved
+     * @throws IOException if there is problem fetching the page. e.g. 404, 500 etc.
+     */
+    public String scanDocument(String url, HtmlScanner.Handler handler) throws IOException {
+        return hostScheduler != null ? hostScheduler.execute(url, () -> scan(url, handler)) : scan(url, handler);
+    }
+
+    private String scan(String url, HtmlScanner.Handler handler) throws IOException {
+        if (httpClient != null) {
+            try (HttpClientDocumentProvider.Body body = httpClient.fetch(url)) {
+                final Charset charset = body.getCharset() != null ? body.getCharset() : StandardCharsets.UTF_8;
+                return HtmlScanner.scan(new InputStreamReader(body.getStream(), charset), body.getUrl(), handler);
+            }
+        }
+        Connection.Response response = Jsoup.connect(url).execute();
+        try (Reader reader = new InputStreamReader(response.bodyStream(), charsetOf(response))) {
+            return HtmlScanner.scan(reader, response.url().toExternalForm(), handler);
+        }
+    }
+
+    private static Charset charsetOf(Connection.Response response) {
+        String charset = response.charset();
+        try {
+            return charset != null && Charset.isSupported(charset) ? Charset.forName(charset) : StandardCharsets.UTF_8;
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8; //illegal charset name
+        }
+    }
+}
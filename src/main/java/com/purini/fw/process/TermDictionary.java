@@ -0,0 +1,67 @@
+package com.purini.fw.process;
+
+import java.util.function.IntFunction;
+
+/**
+ * Assigns a dense int id to each distinct term, so that a term is held only once
+ * and everything else can refer to it by its id.
+ * Ids are given out in the order of first occurrence starting from 0.
+ */
+public interface TermDictionary {
+
+    int NO_ID = -1;
+
+    /**
+     * Gets the id of the term, assigning a new one if the term is not present
+     * @param term - term to intern
+     * @return id of the term
+     */
+    int intern(String term);
+
+    /**
+     * @param term - term to look up
+     * @return id of the term or -1 if it is not present
+     */
+    int idOf(String term);
+
+    /**
+     * @param id - id given out by intern
+     * @return the term
+     */
+    String term(int id);
+
+    /**
+     * @return number of distinct terms
+     */
+    int size();
+
+    /**
+     * Lookup of the terms interned so far, which can be read without the guard of the owner
+     * while more terms keep being interned, e.g. to rank the counts outside of the lock of the store,
+     * till the dictionary is released
+     * @return the term of an id given out so far
+     */
+    IntFunction<String> reader();
+
+    /**
+     * Releases the memory of the dictionary once its owner is done with it.
+     * The dictionary must not be used afterwards. Nothing to do for a dictionary on the heap.
+     */
+    default void release() {
+    }
+
+    /**
+     * Finalizer of murmur3, so that similar hash codes don't end up in a long probe sequence
+     * of the open addressing tables
+     * @param hash - hash code
+     * @return mixed hash code
+     */
+    static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,81 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordConstruct;
+import com.purini.fw.domain.WordPair;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Top N words and word pairs of a crawl still in progress, as given out by a TopNSubscription
+ */
+public class TopNSnapshot {
+
+    private final int sequence;
+    private final long documents;
+    private final long timeMillis;
+    private final List<Pair<Word, Integer>> topWords;
+    private final List<Pair<WordPair, Integer>> topWordPairs;
+
+    TopNSnapshot(int sequence, long documents, long timeMillis, List<Pair<Word, Integer>> topWords,
+                 List<Pair<WordPair, Integer>> topWordPairs) {
+        this.sequence = sequence;
+        this.documents = documents;
+        this.timeMillis = timeMillis;
+        this.topWords = topWords;
+        this.topWordPairs = topWordPairs;
+    }
+
+    /**
+     * @return number of the snapshot in its subscription, from 1
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return number of documents whose counts were added to the stores when the snapshot was taken
+     */
+    public long getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return time the snapshot was taken at, as of System.currentTimeMillis
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public List<Pair<Word, Integer>> getTopWords() {
+        return topWords;
+    }
+
+    public List<Pair<WordPair, Integer>> getTopWordPairs() {
+        return topWordPairs;
+    }
+
+    /**
+     * Whether the words and the word pairs are ranked the same as in the other snapshot, whatever their counts,
+     * e.g. to stop the crawl once the ranking stops changing
+     * @param other - snapshot to compare with, e.g. the previous one, or null
+     * @return true if the other snapshot has the same words and word pairs (compared in lower case) in the same order
+     */
+    public boolean hasSameRanking(@Nullable TopNSnapshot other) {
+        return other != null
+                && rankingOf(topWords).equals(rankingOf(other.topWords))
+                && rankingOf(topWordPairs).equals(rankingOf(other.topWordPairs));
+    }
+
+    private static <T extends WordConstruct<T>> List<T> rankingOf(List<Pair<T, Integer>> topN) {
+        return topN.stream().map(pair -> pair.getLeft().toLowerCase()).collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " after " + documents + " documents - words " + topWords + ", word pairs " + topWordPairs;
+    }
+}
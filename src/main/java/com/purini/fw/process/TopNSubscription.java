@@ -0,0 +1,123 @@
+package com.purini.fw.process;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Subscription to the top N of the stores while a crawl is in progress, see WordCountStoreService.subscribe,
+ * e.g. to watch a long crawl and stop it once the ranking has converged.
+ *
+ * A snapshot (TopNSnapshot) is taken every so many documents and/or every so many milliseconds,
+ * on the single thread of the subscription, which also calls the listener. The threads adding the documents
+ * only compare a counter and never rank. The stores are read by WordStore.snapshotTopNWords, which locks them
+ * shard by shard or only to copy the counts, rather than for the whole ranking. Thus a document added meanwhile
+ * may be counted in some shards of a snapshot and not yet in others, which is consistent enough to watch
+ * the ranking converge. Snapshots falling due while one is being taken are coalesced into the next one.
+ * Closing the subscription takes a last snapshot if documents were added since the previous one,
+ * so that the listener always sees all the documents of the crawl.
+ */
+public class TopNSubscription implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopNSubscription.class);
+
+    private final WordCountStoreService stores;
+    private final int n;
+    private final long everyDocuments;
+    private final Consumer<TopNSnapshot> listener;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong nextDocuments;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private int sequence; //only on the thread of the subscription
+    private long snapshotDocuments; //only on the thread of the subscription
+
+    /**
+     * @param stores - stores to take the snapshots of
+     * @param n - number of top words and word pairs in each snapshot
+     * @param everyDocuments - documents between snapshots, 0 for none by documents
+     * @param everyMillis - milliseconds between snapshots, 0 for none by time
+     * @param listener - takes each snapshot, on the thread of the subscription
+     */
+    TopNSubscription(WordCountStoreService stores, int n, long everyDocuments, long everyMillis,
+                     Consumer<TopNSnapshot> listener) {
+        if (everyDocuments <= 0 && everyMillis <= 0) {
+            throw new IllegalArgumentException("Snapshots should be taken every some documents or milliseconds, found "
+                    + everyDocuments + " and " + everyMillis);
+        }
+        this.stores = stores;
+        this.n = n;
+        this.everyDocuments = everyDocuments;
+        this.listener = listener;
+        this.nextDocuments = new AtomicLong(everyDocuments);
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("top-n-%d").setDaemon(true).build());
+        if (everyMillis > 0) {
+            executor.scheduleWithFixedDelay(this::takeSnapshot, everyMillis, everyMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Called by the stores once the counts of a document are added, on the thread that added them
+     * @param documents - number of documents added so far
+     */
+    void documentAdded(long documents) {
+        if (everyDocuments > 0 && documents >= nextDocuments.get() && pending.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::takeSnapshot);
+            } catch (RejectedExecutionException e) {
+                logger.debug("top N subscription closed, snapshot of {} documents not taken", documents);
+            }
+        }
+    }
+
+    private void takeSnapshot() {
+        //cleared before the documents are read, so that a document added from then on asks for a snapshot of its own
+        pending.set(false);
+        final long documents = stores.getDocumentCount();
+        snapshotDocuments = documents;
+        //due again everyDocuments after the documents of this snapshot, whether it was due by documents or by time
+        nextDocuments.set(documents + everyDocuments);
+        try {
+            listener.accept(new TopNSnapshot(++sequence, documents, System.currentTimeMillis(),
+                    stores.snapshotTopNWords(n), stores.snapshotTopNWordPairs(n)));
+        } catch (RuntimeException e) {
+            //not thrown on, which would cancel the snapshots by time
+            logger.warn("Top N listener failed on snapshot {}", sequence, e);
+        }
+    }
+
+    private void takeLastSnapshot() {
+        if (stores.getDocumentCount() > snapshotDocuments) {
+            takeSnapshot();
+        }
+    }
+
+    /**
+     * Stops taking snapshots, taking a last one of the documents added since the previous snapshot, if any,
+     * and waits for the snapshots to reach the listener
+     */
+    @Override
+    public void close() {
+        stores.unsubscribe(this);
+        try {
+            executor.execute(this::takeLastSnapshot);
+        } catch (RejectedExecutionException e) {
+            logger.debug("top N subscription already closed");
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
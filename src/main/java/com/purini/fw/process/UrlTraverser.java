@@ -1,18 +1,29 @@
 package com.purini.fw.process;
 
-import org.apache.commons.lang3.tuple.Pair;
+import com.purini.fw.utils.ParsedUrl;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static com.purini.fw.utils.UrlUtil.*;
@@ -23,101 +34,436 @@ public class UrlTraverser {
     private final DocumentProcessor documentProcessor;
     private final boolean internalLinksOnly;
     private final DocumentProvider documentProvider;
-    private final Set<String> visited;
+    private final ExecutorService fetchExecutor;
+    @Nullable
+    private final CrawlCheckpoint checkpoint;
     private final AtomicInteger counter = new AtomicInteger();
+    private volatile boolean stopped;
 
+    /**
+     * Fetches on an executor created from the properties for each traversal
+     */
     public UrlTraverser(DocumentProcessor documentProcessor, boolean internalLinksOnly, DocumentProvider documentProvider) {
+        this(documentProcessor, internalLinksOnly, documentProvider, null);
+    }
+
+    /**
+     * @param documentProcessor - processes the fetched documents asynchronously
+     * @param internalLinksOnly - whether to traverse links to same website only
+     * @param documentProvider - fetches the documents
+     * @param fetchExecutor - executor to fetch the documents on, owned by the caller,
+     *                      or null to create one from the properties for each traversal
+     */
+    public UrlTraverser(DocumentProcessor documentProcessor, boolean internalLinksOnly, DocumentProvider documentProvider,
+                        @Nullable ExecutorService fetchExecutor) {
+        this(documentProcessor, internalLinksOnly, documentProvider, fetchExecutor, null);
+    }
+
+    /**
+     * Same as without the checkpoint
+     * @param checkpoint - checkpoint to record the levels and the pages fetched in, null for none,
+     *                   the document processor recording the counts in the same checkpoint
+     */
+    public UrlTraverser(DocumentProcessor documentProcessor, boolean internalLinksOnly, DocumentProvider documentProvider,
+                        @Nullable ExecutorService fetchExecutor, @Nullable CrawlCheckpoint checkpoint) {
         this.documentProcessor = documentProcessor;
         this.internalLinksOnly = internalLinksOnly;
         this.documentProvider = documentProvider;
-        this.visited = new HashSet<>();
+        this.fetchExecutor = fetchExecutor;
+        this.checkpoint = checkpoint;
     }
 
     /**
      * BFS method to traverse the hyperlinks, this ensures that priority is given to immediate levels.
      * BFS also allows certain level of parallelism as opposed to DFS in this case.
      * Stops when the given number of levels are traversed.
-     * Keeps track of visited links to avoid duplicates.
+     * Keeps track of visited links to avoid duplicates, each link being fetched only once even when found concurrently.
      * Parses the document and collects links from it and traverses the links.
      * Submits the document to Document processor which processes it asynchronously.
+     * The page is handed over by the document provider (DocumentProvider.fetchPage), e.g. with a StreamingDocumentProvider
+     * it is scanned as it is read instead, without building a DOM.
+     * All the child documents of a level are fetched concurrently on the fetch executor,
+     * the next level starting once they are all fetched.
      *
      * @param url - starting url to parse and extract links from
      * @param levels - number of levels to traverse
      * @return number of valid links processed
      */
     public int traverse(String url, int levels) {
+        return withExecutor(executor -> traverse(url, levels, executor));
+    }
+
+    /**
+     * Carries on a traversal cut short from its checkpoint: fetches the urls of its level not fetched yet,
+     * fetches again the pages whose counts weren't recorded, for their counts only, and then traverses
+     * the levels left as traverse does. The pages complete in the checkpoint are not fetched again.
+     *
+     * @param crawl - traversal to carry on, as resumed from the checkpoint
+     * @param levels - number of levels to traverse
+     * @return number of valid links processed in this traversal, i.e. not counting those complete before
+     */
+    public int resume(CrawlCheckpoint.ResumedCrawl crawl, int levels) {
+        return withExecutor(executor -> resume(crawl, levels, executor));
+    }
+
+    /**
+     * Fetches and processes the urls of one level as traverse does, but leaves checking the links for being
+     * visited to the caller, e.g. to the worker owning them in a distributed crawl (CrawlWorker)
+     * @param urls - urls of the level
+     * @param depth - depth of the level
+     * @param expand - whether the links of the documents are needed, i.e. it is not the last level
+     * @return links of the documents, each once, whether visited or not
+     */
+    public List<String> fetchLevel(List<String> urls, int depth, boolean expand) {
+        final Set<String> levelLinks = ConcurrentHashMap.newKeySet();
+        return withExecutor(executor -> {
+            List<Callable<List<String>>> fetches = new ArrayList<>(urls.size());
+            for (String url : urls) {
+                fetches.add(() -> processAndGetLinks(url, depth, expand, link -> levelLinks.add(link.toString())));
+            }
+            return fetchAll(fetches, executor);
+        });
+    }
+
+    /**
+     * @return number of valid links processed so far, i.e. documents submitted to the document processor
+     */
+    public int getDocumentCount() {
+        return counter.get();
+    }
 
-        int depth = 0;
-        Set<String> visited = ConcurrentHashMap.newKeySet();
-        ConcurrentLinkedQueue<Pair<Document, Integer>> docsToTraverse = new ConcurrentLinkedQueue<>();
+    /**
+     * Stops the traversal early, e.g. once the ranking of a live top N has converged (TopNSubscription).
+     * The fetches not started yet are skipped and no further level is started, while the documents
+     * fetched already are processed as usual. Can be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return whether stop has been called
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    private <T> T withExecutor(Function<ExecutorService, T> traversal) {
+        final ExecutorService executor = fetchExecutor != null ? fetchExecutor : FetchExecutors.newFetchExecutor();
+        try {
+            return traversal.apply(executor);
+        } finally {
+            if (executor != fetchExecutor) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private int traverse(String url, int levels, ExecutorService executor) {
+
+        VisitedUrlSet visited = new VisitedUrlSet();
 
-        visited.add(url);
-        Document doc = processAndGetDoc(url, depth);
-        if (doc == null) {
+        visited.markVisited(visitedKey(url));
+        if (checkpoint != null) {
+            checkpoint.recordLevel(0, Collections.singletonList(url));
+        }
+        final Predicate<ParsedUrl> isNewLink = newLinkOf(visited);
+        final int documentsBefore = counter.get();
+        List<String> frontier = fetchAll(Collections.singletonList(() -> processAndGetLinks(url, 0, levels > 0, isNewLink)), executor);
+        if (counter.get() == documentsBefore) {
             logger.error("Invalid document or url {}", url);
             return 0;
         }
-        counter.incrementAndGet();
-        docsToTraverse.add(Pair.of(doc, depth));
-
-        while (!docsToTraverse.isEmpty() && depth < levels) {
-            final Pair<Document, Integer> docDepth = docsToTraverse.poll();
-            Document currentDoc = docDepth.getLeft();
-            final int currentDepth = docDepth.getRight();
-            depth = currentDepth;
-            List<String> childUrls = getLinks(currentDoc, internalLinksOnly);
-
-            childUrls.parallelStream().forEach(childUrl -> {
-                if (!visited.contains(childUrl)) {
-                    visited.add(childUrl);
-                    Document childDoc = processAndGetDoc(childUrl, currentDepth + 1);
-                    if (childDoc != null) {
-                        counter.incrementAndGet();
-                        docsToTraverse.add(Pair.of(childDoc, currentDepth + 1));
+        return traverseLevels(frontier, 1, levels, visited, executor);
+    }
+
+    private int resume(CrawlCheckpoint.ResumedCrawl crawl, int levels, ExecutorService executor) {
+
+        VisitedUrlSet visited = new VisitedUrlSet();
+        for (String url : crawl.getVisitedUrls()) {
+            visited.markVisited(visitedKey(url));
+        }
+
+        final Predicate<ParsedUrl> isNewLink = newLinkOf(visited);
+        final int depth = crawl.getDepth();
+        final boolean expand = depth < levels;
+        List<Callable<List<String>>> fetches = new ArrayList<>();
+        for (String url : crawl.getPendingUrls()) {
+            fetches.add(() -> processAndGetLinks(url, depth, expand, isNewLink));
+        }
+        for (Map.Entry<String, Integer> page : crawl.getPagesToRecount().entrySet()) {
+            fetches.add(() -> processAndGetLinks(page.getKey(), page.getValue(), false, isNewLink));
+        }
+        List<String> frontier = new ArrayList<>(crawl.getNextLevelUrls());
+        frontier.addAll(fetchAll(fetches, executor));
+        logger.debug("fetched the rest of depth {}, {} urls for the next depth", depth, frontier.size());
+        return traverseLevels(frontier, depth + 1, levels, visited, executor);
+    }
+
+    /**
+     * Level synchronous: all the urls of a level are fetched concurrently before going a level deeper,
+     * so a url reached at more than one depth is always taken at the shallowest one.
+     * Only the urls not visited yet are kept for the next level, not the documents they were found in.
+     * @param frontier - urls of the first level to traverse
+     * @param fromDepth - depth of the first level to traverse
+     */
+    private int traverseLevels(List<String> frontier, int fromDepth, int levels, VisitedUrlSet visited,
+                               ExecutorService executor) {
+        final Predicate<ParsedUrl> isNewLink = newLinkOf(visited);
+        for (int depth = fromDepth; depth <= levels && !frontier.isEmpty() && !stopped; depth++) {
+            final int currentDepth = depth;
+            final boolean expand = depth < levels;
+            if (checkpoint != null) {
+                checkpoint.recordLevel(depth, frontier);
+            }
+            List<Callable<List<String>>> fetches = new ArrayList<>(frontier.size());
+            for (String childUrl : frontier) {
+                fetches.add(() -> processAndGetLinks(childUrl, currentDepth, expand, isNewLink));
+            }
+            frontier = fetchAll(fetches, executor);
+            logger.debug("fetched depth {}, {} urls for the next depth", currentDepth, frontier.size());
+        }
+        return counter.get();
+    }
+
+    /**
+     * @return check of a link for being new, marking it visited
+     */
+    private static Predicate<ParsedUrl> newLinkOf(VisitedUrlSet visited) {
+        return link -> visited.markVisited(visitedKey(link));
+    }
+
+    /**
+     * Fetches all the urls of a level concurrently, waits for them to finish and counts the documents fetched.
+     * A fetch failing with RetryLaterException, i.e. held back by its host, is submitted again once its delay is over,
+     * this thread waiting for it rather than a fetch thread, which goes on with the other urls meanwhile.
+     * If interrupted, the remaining fetches are cancelled and nothing more is given out to traverse.
+     * @param fetches - fetches of the urls, giving out the new links of each document
+     * @param executor - executor to fetch on
+     * @return new links of all the documents, i.e. the urls of the next level
+     */
+    private List<String> fetchAll(List<Callable<List<String>>> fetches, ExecutorService executor) {
+        List<String> links = new ArrayList<>();
+        //fetches to submit again, by the time they are due
+        PriorityQueue<DelayedFetch> delayed = new PriorityQueue<>(Comparator.comparingLong((DelayedFetch f) -> f.dueNanos));
+        List<Callable<List<String>>> round = fetches;
+        while (!round.isEmpty()) {
+            List<Future<List<String>>> futures = new ArrayList<>(round.size());
+            for (Callable<List<String>> fetch : round) {
+                futures.add(executor.submit(fetch));
+            }
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        List<String> docLinks = futures.get(i).get();
+                        if (docLinks != null) {
+                            counter.incrementAndGet();
+                            links.addAll(docLinks);
+                        }
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof RetryLaterException) {
+                            RetryLaterException retry = (RetryLaterException) e.getCause();
+                            logger.debug("{}, requeued for {} ms", retry.getMessage(), retry.getDelayMillis());
+                            delayed.add(new DelayedFetch(round.get(i), retry.getDelayMillis()));
+                        } else {
+                            logger.warn("Error while fetching", e.getCause());
+                        }
+                    }
+                }
+                round = new ArrayList<>();
+                if (!delayed.isEmpty() && !stopped) {
+                    final long waitNanos = delayed.peek().dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                    while (!delayed.isEmpty() && delayed.peek().dueNanos - System.nanoTime() <= 0) {
+                        round.add(delayed.poll().fetch);
                     }
                 }
-            });
+            } catch (InterruptedException e) {
+                logger.warn("Interrupted while waiting for fetches, stopping traversal");
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                return Collections.emptyList();
+            }
         }
-        return counter.get();
+        return links;
     }
 
-    private Document processAndGetDoc(String url, int depth) {
-        Document doc = null;
+    /**
+     * Fetches the document, takes out its links and submits it for processing,
+     * after which nothing refers to the document but the processing task.
+     * @param url - url to fetch
+     * @param depth - depth of the url
+     * @param expand - whether the links of the document are needed, i.e. it is not on the last level
+     * @param isNewLink - checks a normalized link for being new, e.g. marking it visited
+     * @return new links of the document, or null if the document couldn't be fetched or the traversal is stopped
+     * @throws RetryLaterException if the host of the url asks for it to be fetched again later
+     */
+    @Nullable
+    private List<String> processAndGetLinks(String url, int depth, boolean expand, Predicate<ParsedUrl> isNewLink)
+            throws RetryLaterException {
+        if (stopped) {
+            return null;
+        }
+        final Page page = new Page(expand);
         try {
-            doc = documentProvider.getDocument(url);
+            if (!documentProvider.fetchPage(url, page)) {
+                logger.warn("No document for url: {}", url);
+                return null;
+            }
+        } catch (RetryLaterException e) {
+            throw e;
         } catch (IOException e) {
             logger.warn("Error: {}, likely dead/erroneous link: {}", e.getMessage(), url);
             return null;
         }
         logger.debug("processing doc for url - {}, depth - {}", url, depth);
-        documentProcessor.submitAsync(doc);
-        return doc;
+        List<String> links = page.getLinks(isNewLink);
+        recordPage(url, depth, links);
+        page.submit(url);
+        return links;
+    }
+
+    /**
+     * Records the page in the checkpoint, if any, before its counts are submitted,
+     * the counts of a page being taken on resume only once the page is recorded
+     */
+    private void recordPage(String url, int depth, List<String> links) {
+        if (checkpoint != null) {
+            checkpoint.recordPage(url, depth, links);
+        }
     }
 
     /**
      * Gets links from the doc which are internal to the website.
      * E.g. for base uri http://www.abc.com:8080, it would only return
      * links that have base address as http://www.abc.com:8080 or https://www.abc.com:8080
+     * Links are normalized (UrlUtil.normalize), so that relative links of any form are resolved,
+     * and keep their query as written to be fetched, the different ways of writing a url being checked
+     * for being visited as one by UrlUtil.visitedKey.
      * @param doc - document to extract links from
      * @param internalLinksOnly whether to filter only internal links or all links
-     * @return list of links
+     * @param isNewLink - checks a normalized link for being new, e.g. marking it visited
+     * @return list of new links
      */
-    private List<String> getLinks(Document doc, boolean internalLinksOnly) {
-        String docHostPort = getHostPort(doc.baseUri());
-        String docProtocol = getProtocol(doc.baseUri());
+    private List<String> getLinks(Document doc, boolean internalLinksOnly, Predicate<ParsedUrl> isNewLink) {
         List<Element> links = doc.getElementsByTag("a");
-        return links.stream()
-                .map(l -> l.attr("href"))
-                .map(s -> s.startsWith("/") ? formUrlFromRelativeUrl(docHostPort, docProtocol, s) : s)
-                .filter(s -> {
-                    final boolean isValidUrl = isValid(s);
-                    if (internalLinksOnly) {
-                        String childHostPort = isValidUrl ? getHostPort(s) : null;
-                        return docHostPort != null && docHostPort.equalsIgnoreCase(childHostPort);
+        return getLinks(doc.baseUri(), links.stream().map(l -> l.attr("href")).collect(Collectors.toList()),
+                internalLinksOnly, isNewLink);
+    }
+
+    /**
+     * Same as getLinks of a document, for the hrefs taken out of it
+     * @param baseUri - base uri of the document
+     * @param hrefs - href attributes of the a elements of the document
+     * @param internalLinksOnly whether to filter only internal links or all links
+     * @param isNewLink - checks a normalized link for being new, e.g. marking it visited
+     * @return list of new links
+     */
+    private List<String> getLinks(String baseUri, List<String> hrefs, boolean internalLinksOnly,
+                                  Predicate<ParsedUrl> isNewLink) {
+        //the base is parsed once for all the links, each link being parsed once to be resolved, compared,
+        //checked for being visited and written out
+        ParsedUrl base = ParsedUrl.parse(baseUri);
+        ParsedUrl normalizedBase = normalize(base, "");
+        String docHostPort = normalizedBase != null ? normalizedBase.getHostPort() : null;
+        return hrefs.stream()
+                .map(href -> normalize(base, href))
+                .filter(url -> {
+                    if (url == null) {
+                        return false;
+                    } else if (internalLinksOnly) {
+                        return docHostPort != null && docHostPort.equals(url.getHostPort());
                     } else {
-                        return isValidUrl;
+                        return true;
                     }
                 })
+                .filter(isNewLink)
+                .map(ParsedUrl::toString)
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Fetch held back by the host of its url, to be submitted again once due
+     */
+    private static class DelayedFetch {
+        private final Callable<List<String>> fetch;
+        private final long dueNanos;
+
+        private DelayedFetch(Callable<List<String>> fetch, long delayMillis) {
+            this.fetch = fetch;
+            this.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+    }
+
+    /**
+     * Page being fetched, as handed over by the document provider: either its DOM, which is submitted whole
+     * for processing, or its text, which is counted as the page is read without building a DOM, and its links
+     */
+    private class Page implements DocumentProvider.PageHandler {
+        private final boolean expand;
+        private final List<String> hrefs = new ArrayList<>();
+        @Nullable
+        private Document document;
+        @Nullable
+        private WordCountBatch batch;
+        @Nullable
+        private String baseUri;
+
+        /**
+         * @param expand - whether the links of the page are needed
+         */
+        private Page(boolean expand) {
+            this.expand = expand;
+        }
+
+        @Override
+        public void document(Document document) {
+            this.document = document;
+        }
+
+        @Override
+        public void text(String text) {
+            if (batch == null) {
+                batch = documentProcessor.newBatch();
+            }
+            batch.addText(text);
+        }
+
+        @Override
+        public void link(String href) {
+            if (expand) {
+                hrefs.add(href);
+            }
+        }
+
+        @Override
+        public void scanned(String baseUri) {
+            this.baseUri = baseUri;
+        }
+
+        private List<String> getLinks(Predicate<ParsedUrl> isNewLink) {
+            if (!expand) {
+                return Collections.emptyList();
+            } else if (document != null) {
+                return UrlTraverser.this.getLinks(document, internalLinksOnly, isNewLink);
+            }
+            return baseUri != null
+                    ? UrlTraverser.this.getLinks(baseUri, hrefs, internalLinksOnly, isNewLink)
+                    : Collections.emptyList();
+        }
+
+        /**
+         * Submits the DOM, or else the counts of the text, after which nothing refers to the page
+         * but the processing task
+         */
+        private void submit(String url) {
+            if (document != null) {
+                documentProcessor.submitAsync(url, document);
+            } else {
+                documentProcessor.submitAsync(url, batch != null ? batch : documentProcessor.newBatch());
+            }
+        }
+    }
 }
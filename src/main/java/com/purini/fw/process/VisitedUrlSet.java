@@ -0,0 +1,171 @@
+package com.purini.fw.process;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hashing;
+import com.purini.fw.PropertyStore;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Set of visited urls, keeping a 64 bit fingerprint of each url rather than the url itself.
+ *
+ * The fingerprints are kept in open addressing arrays of primitive longs, split into segments by the
+ * fingerprint so that threads marking different urls rarely wait on each other, which takes about
+ * 16 bytes per url as against more than 100 bytes for a String in a concurrent set.
+ * Two distinct urls having the same fingerprint is unlikely enough (about 1 in 10^7 for a million urls)
+ * to be taken as the same url.
+ *
+ * Most links found on a page are visited already (menus, footers), so a url being visited is checked
+ * without locking first, the segment being locked only to add a new url.
+ * Optionally, a Bloom filter in front tells most of the new urls apart without probing the segments at all,
+ * its bits being set without locking.
+ */
+public class VisitedUrlSet {
+
+    private static final int SEGMENTS = 64;
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    @Nullable
+    private final BloomFilter<Long> bloomFilter;
+
+    /**
+     * Optionally fronted by a Bloom filter sized by visitedUrlBloomFilterExpectedUrls, 0 disabling it,
+     * with the false positive probability of visitedUrlBloomFilterFpp
+     */
+    public VisitedUrlSet() {
+        this(PropertyStore.getInstance().getIntProperty(PropertyStore.VISITED_URL_BLOOM_FILTER_EXPECTED_URLS),
+                PropertyStore.getInstance().getDoubleProperty(PropertyStore.VISITED_URL_BLOOM_FILTER_FPP));
+    }
+
+    /**
+     * @param bloomFilterExpectedUrls - expected number of urls for the Bloom filter, 0 for no Bloom filter
+     * @param bloomFilterFpp - false positive probability of the Bloom filter at the expected number of urls
+     */
+    public VisitedUrlSet(int bloomFilterExpectedUrls, double bloomFilterFpp) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        this.bloomFilter = bloomFilterExpectedUrls > 0
+                ? BloomFilter.create(Funnels.longFunnel(), bloomFilterExpectedUrls, bloomFilterFpp)
+                : null;
+    }
+
+    /**
+     * Marks the url visited, atomically, so that of all the threads marking the same url only one gets true
+     * @param url - url to mark
+     * @return true if the url was not visited before
+     */
+    public boolean markVisited(String url) {
+        final long fingerprint = fingerprint(url);
+        final Segment segment = segmentFor(fingerprint);
+        //the bits are set before adding, so that a url in the segments is never missed by the filter.
+        //if any bit changed, the url is surely new, else it is likely visited and checked without locking
+        final boolean surelyNew = bloomFilter != null && bloomFilter.put(fingerprint);
+        if (!surelyNew && segment.containsWithoutLocking(fingerprint)) {
+            return false;
+        }
+        return segment.add(fingerprint);
+    }
+
+    /**
+     * @param url - url to check
+     * @return true if the url was marked visited
+     */
+    public boolean isVisited(String url) {
+        final long fingerprint = fingerprint(url);
+        if (bloomFilter != null && !bloomFilter.mightContain(fingerprint)) {
+            return false;
+        }
+        return segmentFor(fingerprint).contains(fingerprint);
+    }
+
+    /**
+     * @return number of visited urls
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @param url - url
+     * @return 64 bit fingerprint of the url, never 0 as 0 marks an empty slot
+     */
+    static long fingerprint(String url) {
+        final long fingerprint = Hashing.farmHashFingerprint64().hashString(url, StandardCharsets.UTF_8).asLong();
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private Segment segmentFor(long fingerprint) {
+        return segments[(int) (fingerprint >>> 58)]; //top 6 bits, the lower ones index within the segment
+    }
+
+    /**
+     * Open addressing set of fingerprints, kept at most half full
+     */
+    private static class Segment {
+        /**
+         * Written under the lock only, a resize replacing it with a copy, so that it can also be read without
+         * locking, any fingerprint seen in it being truly there
+         */
+        private volatile long[] table = new long[INITIAL_SEGMENT_CAPACITY];
+        private int size;
+
+        synchronized boolean add(long fingerprint) {
+            final long[] current = table;
+            final int slot = slotOf(current, fingerprint);
+            if (current[slot] == fingerprint) {
+                return false;
+            }
+            current[slot] = fingerprint;
+            if (++size * 2 > table.length) {
+                resize();
+            }
+            return true;
+        }
+
+        synchronized boolean contains(long fingerprint) {
+            return table[slotOf(table, fingerprint)] == fingerprint;
+        }
+
+        /**
+         * May miss a fingerprint being added at the same time, so false is to be confirmed under the lock
+         */
+        boolean containsWithoutLocking(long fingerprint) {
+            final long[] current = table;
+            return current[slotOf(current, fingerprint)] == fingerprint;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void resize() {
+            final long[] newTable = new long[table.length * 2];
+            for (long fingerprint : table) {
+                if (fingerprint != 0) {
+                    newTable[slotOf(newTable, fingerprint)] = fingerprint;
+                }
+            }
+            table = newTable;
+        }
+
+        /**
+         * @return slot of the fingerprint, or the empty slot where it would go
+         */
+        private static int slotOf(long[] table, long fingerprint) {
+            final int mask = table.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (table[slot] != 0 && table[slot] != fingerprint) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordPair;
+import com.purini.fw.utils.StopWordsUtil;
+import com.purini.fw.utils.WordTokenizer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local, unsynchronized buffer of word and word pair counts, e.g. for a whole document,
+ * which is merged into the stores of WordCountStoreService in one batched operation.
+ *
+ * Repeated words are counted locally, so each distinct word reaches the shared stores once
+ * with its count, and each store takes its lock once per batch rather than once per word.
+ *
+ * The counts are kept in access order, i.e. in the order of last occurrence,
+ * so that the last occurrence still wins for the original form of the word.
+ * Text can be added either as lists of words and word pairs, or as is through addText,
+ * which tokenizes, excludes stop words and forms the pairs in a single pass without
+ * any intermediate list.
+ *
+ * Not thread safe, meant to be used by a single thread.
+ */
+public class WordCountBatch {
+
+    private final WordCountStoreService wordCountStoreService;
+    private final StopWordsUtil stopWordsUtil;
+    private final Map<Word, Integer> wordCounts = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<WordPair, Integer> wordPairCounts = new LinkedHashMap<>(256, 0.75f, true);
+
+    //state of the text being added, the previous word being needed to form the pair
+    private String previousWord;
+    private boolean previousStopWord;
+
+    WordCountBatch(WordCountStoreService wordCountStoreService, StopWordsUtil stopWordsUtil) {
+        this.wordCountStoreService = wordCountStoreService;
+        this.stopWordsUtil = stopWordsUtil;
+    }
+
+    /**
+     * Excludes the stop words and counts the words locally
+     * @param words - words to add
+     */
+    public void addWords(List<Word> words) {
+        stopWordsUtil.copyWithoutStopWords(words).forEach(word -> wordCounts.merge(word, 1, Integer::sum));
+    }
+
+    /**
+     * Excludes the stop word pairs and counts the word pairs locally
+     * @param wordPairs - word pairs to add
+     */
+    public void addWordPairs(List<WordPair> wordPairs) {
+        stopWordsUtil.copyWithoutStopWordPairs(wordPairs).forEach(wordPair -> wordPairCounts.merge(wordPair, 1, Integer::sum));
+    }
+
+    /**
+     * Same as adding TextToWordUtil.toWords(text) as words and their TextToWordUtil.toWordPairs as word pairs,
+     * but in a single pass over the text. As before, the pairs are formed before the stop words are excluded,
+     * and a pair is excluded only when both of its words are stop words.
+     * @param text - text to tokenize and count
+     */
+    public void addText(CharSequence text) {
+        previousWord = null;
+        WordTokenizer.tokenize(text, this::addToken);
+        previousWord = null;
+    }
+
+    private void addToken(CharSequence text, int start, int end) {
+        final boolean stopWord = stopWordsUtil.isStopWord(text, start, end);
+        final String word = text.subSequence(start, end).toString();
+        if (!stopWord) {
+            wordCounts.merge(new Word(word), 1, Integer::sum);
+        }
+        if (previousWord != null && !(previousStopWord && stopWord)) {
+            wordPairCounts.merge(new WordPair(previousWord, word), 1, Integer::sum);
+        }
+        previousWord = word;
+        previousStopWord = stopWord;
+    }
+
+    /**
+     * @return number of distinct words and word pairs counted so far
+     */
+    public int size() {
+        return wordCounts.size() + wordPairCounts.size();
+    }
+
+    Map<Word, Integer> getWordCounts() {
+        return wordCounts;
+    }
+
+    Map<WordPair, Integer> getWordPairCounts() {
+        return wordPairCounts;
+    }
+
+    /**
+     * Merges the local counts into the stores, as those of one document, and clears them, so that the batch can be reused
+     */
+    public void commit() {
+        wordCountStoreService.addDocumentCounts(wordCounts, wordPairCounts);
+        wordCounts.clear();
+        wordPairCounts.clear();
+    }
+}
@@ -0,0 +1,472 @@
+package com.purini.fw.process;
+
+import com.google.common.primitives.Ints;
+import com.purini.fw.domain.WordConstruct;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Full counts of a word store in a compact, read only file, so that the results of crawls can be kept
+ * and aggregated, e.g. the daily crawls into a weekly total, without holding them all in the heap.
+ *
+ * The entries are sorted by their key, i.e. the words of the lower case form joined by '\0', in UTF-8.
+ * Each entry is written as varints (unsigned LEB128):
+ * - bytes shared with the key before, bytes not shared, followed by the latter
+ * - count
+ * - 0 if the original form is the key, else its length + 1 followed by it, encoded as the key
+ * Every RESTART_INTERVAL entries the key is written in full, at a restart point.
+ * The offsets of the restart points (ints) follow the entries, and then the footer:
+ * offset of the restart points (int), number of restart points (int), number of entries (long) and the magic.
+ *
+ * Opening a snapshot maps the file and reads the footer only, whatever its size. The entries are then
+ * read in order through a cursor, or looked up by a binary search over the restart points.
+ * A snapshot is limited to 2GB, the size a MappedByteBuffer can address.
+ */
+public class WordCountSnapshot {
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int restartsOffset;
+    private final int restartCount;
+    private final long size;
+
+    private WordCountSnapshot(Path file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        final int limit = buffer.limit();
+        if (limit < WordCountSnapshotWriter.HEADER_BYTES + WordCountSnapshotWriter.FOOTER_BYTES
+                || buffer.getInt(0) != WordCountSnapshotWriter.MAGIC
+                || buffer.getInt(limit - 4) != WordCountSnapshotWriter.MAGIC) {
+            throw new IOException("Not a word count snapshot: " + file);
+        }
+        if (buffer.get(4) != WordCountSnapshotWriter.VERSION) {
+            throw new IOException("Unsupported version " + buffer.get(4) + " of word count snapshot " + file);
+        }
+        final int footer = limit - WordCountSnapshotWriter.FOOTER_BYTES;
+        this.restartsOffset = buffer.getInt(footer);
+        this.restartCount = buffer.getInt(footer + 4);
+        this.size = buffer.getLong(footer + 8);
+        if (restartsOffset < WordCountSnapshotWriter.HEADER_BYTES || restartCount < 0
+                || (long) restartsOffset + restartCount * 4L != footer) {
+            throw new IOException("Corrupt word count snapshot: " + file);
+        }
+    }
+
+    /**
+     * Maps the snapshot file
+     * @param file - snapshot written by write, merge or WordCountSnapshotWriter
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static WordCountSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("word count snapshot over 2GB: " + file);
+            }
+            return new WordCountSnapshot(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes all the counts of the store to a snapshot.
+     * The entries are sorted in memory first, in a single byte array holding all the encoded words and int arrays
+     * indexing it, about the size of the encoded words plus 20 bytes an entry. The snapshot is written to a temporary
+     * file moved in place of the file once complete, so that the file is never left half written.
+     * @param store - store to write out
+     * @param file - file to write, replaced if present
+     * @throws IOException if the file cannot be written
+     */
+    public static <T extends WordConstruct<T>> void write(WordStore<T> store, Path file) throws IOException {
+        final Entries entries = new Entries();
+        store.forEachCount((word, count) -> entries.add(WordCountSnapshotWriter.encode(word.toLowerCase().getWords()),
+                WordCountSnapshotWriter.encode(word.getWords()), count));
+        final int[] order = entries.sortedOrder();
+        writeAtomically(file, writer -> {
+            for (int i : order) {
+                entries.writeTo(writer, i);
+            }
+        });
+    }
+
+    /**
+     * Merges the snapshots into one, summing the counts of the same word, the original form being taken
+     * from the last of the snapshots having it. The snapshots are streamed through, only one entry of each
+     * being held at a time. The output is written to a temporary file moved in place once complete.
+     * @param files - snapshots to merge, e.g. oldest first
+     * @param output - file to write, replaced if present
+     * @throws IOException if a snapshot cannot be read or the output cannot be written
+     */
+    public static void merge(List<Path> files, Path output) throws IOException {
+        final List<Cursor> cursors = new ArrayList<>(files.size());
+        for (Path file : files) {
+            final Cursor cursor = open(file).cursor();
+            cursor.mergeOrder = cursors.size();
+            cursors.add(cursor);
+        }
+        //ordered by key, and for the same key by the order of the files
+        final PriorityQueue<Cursor> heads = new PriorityQueue<>(Math.max(1, cursors.size()),
+                Comparator.<Cursor>naturalOrder().thenComparingInt(cursor -> cursor.mergeOrder));
+        for (Cursor cursor : cursors) {
+            if (cursor.next()) {
+                heads.add(cursor);
+            }
+        }
+        writeAtomically(output, writer -> {
+            byte[] key = new byte[64];
+            byte[] original = new byte[64];
+            while (!heads.isEmpty()) {
+                Cursor cursor = heads.poll();
+                final int keyLength = cursor.keyLength;
+                key = copy(cursor.key, keyLength, key);
+                long count = 0;
+                int originalLength = -1;
+                while (true) {
+                    count += cursor.count;
+                    if (cursor.originalLength >= 0) {
+                        original = copy(cursor.original, cursor.originalLength, original);
+                        originalLength = cursor.originalLength;
+                    } else {
+                        originalLength = -1;
+                    }
+                    if (cursor.next()) {
+                        heads.add(cursor);
+                    }
+                    final Cursor head = heads.peek();
+                    if (head == null || WordCountSnapshotWriter.compare(head.key, head.keyLength, key, keyLength) != 0) {
+                        break;
+                    }
+                    cursor = heads.poll();
+                }
+                writer.add(key, keyLength, originalLength >= 0 ? original : null, Math.max(originalLength, 0), count);
+            }
+        });
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to the file and moves it in place of the file,
+     * as CrawlCheckpoint does with its snapshot, the temporary file being deleted if writing fails
+     */
+    private static void writeAtomically(Path file, EntryWriter entryWriter) throws IOException {
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (WordCountSnapshotWriter writer = new WordCountSnapshotWriter(temp)) {
+                entryWriter.write(writer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private interface EntryWriter {
+        void write(WordCountSnapshotWriter writer) throws IOException;
+    }
+
+    private static byte[] copy(byte[] source, int length, byte[] target) {
+        if (target.length < length) {
+            target = new byte[Math.max(length, target.length << 1)];
+        }
+        System.arraycopy(source, 0, target, 0, length);
+        return target;
+    }
+
+    /**
+     * @return number of entries
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return a cursor before the first entry
+     */
+    public Cursor cursor() {
+        return new Cursor(WordCountSnapshotWriter.HEADER_BYTES);
+    }
+
+    /**
+     * Looks the word up by a binary search over the restart points, followed by a scan of at most
+     * RESTART_INTERVAL entries
+     * @param words - words of the word construct, in any case
+     * @return count of the word, 0 if not in the snapshot
+     */
+    public long getCount(List<String> words) {
+        final List<String> lowerCaseWords = new ArrayList<>(words.size());
+        words.forEach(word -> lowerCaseWords.add(word.toLowerCase()));
+        final byte[] key = WordCountSnapshotWriter.encode(lowerCaseWords);
+
+        //last restart point whose key is not after the key looked up
+        int low = 0;
+        int high = restartCount - 1;
+        int restart = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final Cursor cursor = new Cursor(buffer.getInt(restartsOffset + mid * 4));
+            cursor.next();
+            if (WordCountSnapshotWriter.compare(cursor.key, cursor.keyLength, key, key.length) <= 0) {
+                restart = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (restart < 0) {
+            return 0;
+        }
+        final Cursor cursor = new Cursor(buffer.getInt(restartsOffset + restart * 4));
+        for (int i = 0; i < WordCountSnapshotWriter.RESTART_INTERVAL && cursor.next(); i++) {
+            final int comparison = WordCountSnapshotWriter.compare(cursor.key, cursor.keyLength, key, key.length);
+            if (comparison == 0) {
+                return cursor.count;
+            } else if (comparison > 0) {
+                break;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Adds all the counts of the snapshot to the store, a count beyond an int being capped
+     * @param store - store to add to
+     * @param fromWords - creates the word construct back from its words, e.g. Word::fromWords
+     */
+    public <T extends WordConstruct<T>> void addTo(WordStore<T> store, Function<List<String>, T> fromWords) {
+        final Cursor cursor = cursor();
+        while (cursor.next()) {
+            final T lowerCaseWord = fromWords.apply(cursor.getWords());
+            final T word = cursor.originalLength >= 0 ? fromWords.apply(cursor.getOriginalWords()) : lowerCaseWord;
+            store.addWord(lowerCaseWord, word, Ints.saturatedCast(cursor.count));
+        }
+    }
+
+    /**
+     * Ranks the entries of the snapshot as WordStore.getTopNWords does, streaming through them while keeping
+     * a min heap bounded to n entries, so that a snapshot far larger than the heap can be ranked. The word construct
+     * of an entry is only created if its count can make it into the top n. A count beyond an int is capped.
+     * @param n - number of top entries to return
+     * @param fromWords - creates the word construct back from its words, e.g. Word::fromWords
+     * @return a list of pair of word construct, in its original form, and count, sorted by count in descending order
+     */
+    public <T extends WordConstruct<T>> List<Pair<T, Integer>> getTopN(int n, Function<List<String>, T> fromWords) {
+        if (n <= 0) {
+            return new ArrayList<>();
+        }
+        final Comparator<Pair<T, Integer>> rankingOrder = WordStore.rankingOrder();
+        //head of the heap is the weakest of the current top n
+        final PriorityQueue<Pair<T, Integer>> topN = new PriorityQueue<>(n, rankingOrder.reversed());
+        final Cursor cursor = cursor();
+        while (cursor.next()) {
+            final int count = Ints.saturatedCast(cursor.count);
+            if (topN.size() == n && count < topN.peek().getRight()) {
+                continue;
+            }
+            final Pair<T, Integer> entry = Pair.of(fromWords.apply(cursor.getOriginalWords()), count);
+            if (topN.size() < n) {
+                topN.add(entry);
+            } else if (rankingOrder.compare(entry, topN.peek()) < 0) {
+                topN.poll();
+                topN.add(entry);
+            }
+        }
+        final List<Pair<T, Integer>> ranked = new ArrayList<>(topN);
+        ranked.sort(rankingOrder);
+        return ranked;
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+
+    /**
+     * Entries of a store to sort: the encoded keys and original forms back to back in one byte array,
+     * and the offsets, lengths and counts in int arrays, sorted by an array of int indices
+     */
+    private static class Entries {
+        private byte[] bytes = new byte[1 << 12];
+        private int bytesSize;
+        private int[] keyOffsets = new int[64];
+        private int[] keyLengths = new int[64];
+        //-1 if the original form is the key
+        private int[] originalLengths = new int[64];
+        private int[] counts = new int[64];
+        private int size;
+
+        private void add(byte[] key, byte[] original, int count) {
+            if (size == counts.length) {
+                final int capacity = size << 1;
+                keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+                keyLengths = Arrays.copyOf(keyLengths, capacity);
+                originalLengths = Arrays.copyOf(originalLengths, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+            final boolean sameAsKey = Arrays.equals(key, original);
+            keyOffsets[size] = bytesSize;
+            keyLengths[size] = key.length;
+            originalLengths[size] = sameAsKey ? -1 : original.length;
+            counts[size] = count;
+            size++;
+            append(key);
+            if (!sameAsKey) {
+                append(original);
+            }
+        }
+
+        private void append(byte[] source) {
+            if (bytes.length - bytesSize < source.length) {
+                final long capacity = Math.max((long) bytes.length << 1, (long) bytesSize + source.length);
+                if (capacity > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("words of the store over 2GB, beyond what a snapshot can hold");
+                }
+                bytes = Arrays.copyOf(bytes, (int) capacity);
+            }
+            System.arraycopy(source, 0, bytes, bytesSize, source.length);
+            bytesSize += source.length;
+        }
+
+        /**
+         * @return indices of the entries in the order of their keys
+         */
+        private int[] sortedOrder() {
+            final int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            mergeSort(order, new int[size], 0, size);
+            return order;
+        }
+
+        /**
+         * Merge sort of the indices in [from, to), by the keys they point to
+         */
+        private void mergeSort(int[] order, int[] temp, int from, int to) {
+            if (to - from < 2) {
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            mergeSort(order, temp, from, middle);
+            mergeSort(order, temp, middle, to);
+            if (compare(order[middle - 1], order[middle]) <= 0) {
+                return; //already in order
+            }
+            System.arraycopy(order, from, temp, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right == to || (left < middle && compare(temp[left], temp[right]) <= 0)) {
+                    order[i] = temp[left++];
+                } else {
+                    order[i] = temp[right++];
+                }
+            }
+        }
+
+        private int compare(int i, int j) {
+            return WordCountSnapshotWriter.compareRange(bytes, keyOffsets[i], keyLengths[i], bytes, keyOffsets[j], keyLengths[j]);
+        }
+
+        private void writeTo(WordCountSnapshotWriter writer, int i) throws IOException {
+            final int keyOffset = keyOffsets[i];
+            final int keyLength = keyLengths[i];
+            final int originalLength = originalLengths[i];
+            writer.add(bytes, keyOffset, keyLength, originalLength >= 0 ? bytes : null,
+                    keyOffset + keyLength, Math.max(originalLength, 0), counts[i]);
+        }
+    }
+
+    /**
+     * Reads the entries in order, from a restart point. Not thread safe, but each cursor reads on its own.
+     */
+    public class Cursor implements Comparable<Cursor> {
+        private final ByteBuffer entries = buffer.duplicate();
+        private byte[] key = new byte[64];
+        private int keyLength;
+        private byte[] original = new byte[64];
+        private int originalLength;
+        private long count;
+        //order of the snapshot in a merge, for the same key to be taken from the snapshots in order
+        private int mergeOrder;
+
+        private Cursor(int offset) {
+            entries.position(offset);
+            entries.limit(restartsOffset);
+        }
+
+        /**
+         * @return true if moved to the next entry, false if at the end
+         */
+        public boolean next() {
+            if (!entries.hasRemaining()) {
+                return false;
+            }
+            final int shared = (int) readVarint();
+            keyLength = shared + (int) readVarint();
+            key = ensureCapacity(key, keyLength);
+            entries.get(key, shared, keyLength - shared);
+            count = readVarint();
+            originalLength = (int) readVarint() - 1;
+            if (originalLength >= 0) {
+                original = ensureCapacity(original, originalLength);
+                entries.get(original, 0, originalLength);
+            }
+            return true;
+        }
+
+        /**
+         * @return words of the lower case form
+         */
+        public List<String> getWords() {
+            return decode(key, keyLength);
+        }
+
+        /**
+         * @return words of the original form
+         */
+        public List<String> getOriginalWords() {
+            return originalLength >= 0 ? decode(original, originalLength) : getWords();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            return WordCountSnapshotWriter.compare(key, keyLength, o.key, o.keyLength);
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = entries.get();
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private byte[] ensureCapacity(byte[] bytes, int length) {
+            return bytes.length >= length ? bytes : Arrays.copyOf(bytes, Math.max(length, bytes.length << 1));
+        }
+
+        private List<String> decode(byte[] bytes, int length) {
+            return Arrays.asList(new String(bytes, 0, length, StandardCharsets.UTF_8)
+                    .split(String.valueOf(WordCountSnapshotWriter.SEPARATOR), -1));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.purini.fw.process;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a word count snapshot file, the entries being added in ascending order of their key,
+ * see WordCountSnapshot for the format.
+ */
+public class WordCountSnapshotWriter implements Closeable {
+
+    static final int MAGIC = 0x46575743; //FWWC
+    static final byte VERSION = 1;
+    static final int HEADER_BYTES = 5;
+    static final int FOOTER_BYTES = 20;
+    static final int RESTART_INTERVAL = 16;
+    static final char SEPARATOR = '\0';
+
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private int[] restarts = new int[64];
+    private int restartCount;
+    private long entryCount;
+    private byte[] previousKey = new byte[64];
+    private int previousKeyLength = -1;
+
+    /**
+     * @param file - file to write, replaced if present
+     * @throws IOException if the file cannot be created
+     */
+    public WordCountSnapshotWriter(Path file) throws IOException {
+        this.file = new FileOutputStream(file.toFile());
+        this.out = new DataOutputStream(new BufferedOutputStream(this.file, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    /**
+     * @param lowerCaseWords - words of the lower case form, as the key of the entry
+     * @param words - words of the original form
+     * @param count - count of the entry
+     * @throws IOException if the entry cannot be written
+     * @throws IllegalArgumentException if the key is not after the one added before
+     */
+    public void add(List<String> lowerCaseWords, List<String> words, long count) throws IOException {
+        final byte[] key = encode(lowerCaseWords);
+        final byte[] original = words.equals(lowerCaseWords) ? null : encode(words);
+        add(key, key.length, original, original != null ? original.length : 0, count);
+    }
+
+    /**
+     * @param original - original form, encoded as the key, or null if the same as the key
+     */
+    void add(byte[] key, int keyLength, @Nullable byte[] original, int originalLength, long count) throws IOException {
+        add(key, 0, keyLength, original, 0, originalLength, count);
+    }
+
+    /**
+     * Same as add, for a key and an original form in ranges of the arrays
+     */
+    void add(byte[] key, int keyOffset, int keyLength, @Nullable byte[] original, int originalOffset, int originalLength,
+             long count) throws IOException {
+        if (previousKeyLength >= 0 && compareRange(previousKey, 0, previousKeyLength, key, keyOffset, keyLength) >= 0) {
+            throw new IllegalArgumentException("keys should be added in ascending order, found "
+                    + new String(key, keyOffset, keyLength, StandardCharsets.UTF_8) + " after "
+                    + new String(previousKey, 0, previousKeyLength, StandardCharsets.UTF_8));
+        }
+        if (out.size() >= Integer.MAX_VALUE - FOOTER_BYTES) {
+            throw new IOException("word count snapshot over 2GB");
+        }
+        int shared = 0;
+        if (entryCount % RESTART_INTERVAL == 0) {
+            if (restartCount == restarts.length) {
+                restarts = Arrays.copyOf(restarts, restartCount << 1);
+            }
+            restarts[restartCount++] = out.size();
+        } else {
+            final int maxShared = Math.min(previousKeyLength, keyLength);
+            while (shared < maxShared && previousKey[shared] == key[keyOffset + shared]) {
+                shared++;
+            }
+        }
+        writeVarint(out, shared);
+        writeVarint(out, keyLength - shared);
+        out.write(key, keyOffset + shared, keyLength - shared);
+        writeVarint(out, count);
+        if (original == null) {
+            writeVarint(out, 0);
+        } else {
+            writeVarint(out, originalLength + 1L);
+            out.write(original, originalOffset, originalLength);
+        }
+
+        if (previousKey.length < keyLength) {
+            previousKey = Arrays.copyOf(previousKey, Math.max(keyLength, previousKey.length << 1));
+        }
+        System.arraycopy(key, keyOffset, previousKey, 0, keyLength);
+        previousKeyLength = keyLength;
+        entryCount++;
+    }
+
+    /**
+     * Writes the restart points and the footer, and syncs the file to the disk
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            final int restartsOffset = out.size();
+            for (int i = 0; i < restartCount; i++) {
+                out.writeInt(restarts[i]);
+            }
+            out.writeInt(restartsOffset);
+            out.writeInt(restartCount);
+            out.writeLong(entryCount);
+            out.writeInt(MAGIC);
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    static byte[] encode(List<String> words) {
+        return String.join(String.valueOf(SEPARATOR), words).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Unsigned lexicographic order of the bytes, i.e. the order of the code points
+     */
+    static int compare(byte[] a, int aLength, byte[] b, int bLength) {
+        return compareRange(a, 0, aLength, b, 0, bLength);
+    }
+
+    /**
+     * Same as compare, for ranges of the arrays
+     */
+    static int compareRange(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        final int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return (a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff);
+            }
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * Unsigned LEB128, 7 bits a byte, the high bit marking that more bytes follow
+     */
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.ObjIntConsumer;
 
 /**
  * Common store for storing word constructs: words or word pairs.
@@ -33,7 +34,7 @@ import java.util.Map;
  *
  * @param <T> generic parameter to denote either a WordConstruct i.e. Word or WordPair
  */
-public class WordCountStore<T extends WordConstruct<T>> {
+public class WordCountStore<T extends WordConstruct<T>> implements WordStore<T> {
 
     private Map<T, Integer> wordToCount = new HashMap<>();
     private TreeMultimap<Integer, WordInfo<T>> countToWords = TreeMultimap.create(Ordering.<Integer>natural().reverse(), Ordering.natural());
@@ -42,26 +43,29 @@ public class WordCountStore<T extends WordConstruct<T>> {
      * Adds the word to both the collections.
      * - For the HashMap, it increases the frequency
      * - For the Multimap, it first removes the old frequency entry and then puts the new frequency
-     * @param word - word to add
+     * @param lowerCaseWord - lower case form of the word, used for comparisons
+     * @param word - original word, used for output
+     * @param count - number of occurrences, at least 1
      */
-    synchronized public void addWord(T word) {
+    @Override
+    synchronized public void addWord(T lowerCaseWord, T word, int count) {
 
-        T lowerCaseWord = word.toLowerCase();
-        int newCount = wordToCount.compute(lowerCaseWord, (w, c) -> c == null ? 1 : c + 1);
-        if (newCount > 1) {
+        int newCount = wordToCount.compute(lowerCaseWord, (w, c) -> c == null ? count : c + count);
+        if (newCount > count) {
             // first remove from old count
-            final int oldCount = newCount - 1;
+            final int oldCount = newCount - count;
             countToWords.remove(oldCount, new WordInfo<>(lowerCaseWord, word));
         }
         countToWords.put(newCount, new WordInfo<>(lowerCaseWord, word));
     }
 
     /**
-     * Takes a list of words to add
-     * @param words - words to add
+     * Adds all the counts under a single acquisition of the lock
+     * @param counts - word (original form) to number of occurrences, in the order of last occurrence
      */
-    public void addWords(List<T> words) {
-        words.forEach(this::addWord);
+    @Override
+    synchronized public void addCounts(Map<T, Integer> counts) {
+        counts.forEach((word, count) -> addWord(word.toLowerCase(), word, count));
     }
 
     /**
@@ -70,7 +74,8 @@ public class WordCountStore<T extends WordConstruct<T>> {
      * @param n - number of top words to return
      * @return a list of pair of word and count
      */
-    public List<Pair<T, Integer>> getTopNWords(int n) {
+    @Override
+    synchronized public List<Pair<T, Integer>> getTopNWords(int n) {
         int maxTopWords = Math.min(n, wordToCount.size());
         List<Pair<T, Integer>> topWords = new ArrayList<>();
         int i = 0;
@@ -84,4 +89,9 @@ public class WordCountStore<T extends WordConstruct<T>> {
         return topWords;
     }
 
+    @Override
+    synchronized public void forEachCount(ObjIntConsumer<T> action) {
+        countToWords.entries().forEach(entry -> action.accept(entry.getValue().getOriginalWord(), entry.getKey()));
+    }
+
 }
@@ -1,28 +1,61 @@
 package com.purini.fw.process;
 
+import com.purini.fw.PropertyStore;
 import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordConstruct;
 import com.purini.fw.domain.WordPair;
 import com.purini.fw.utils.StopWordsUtil;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Contains the stores for the found words and word pairs.
  * Thus provides a single place to access the output.
+ * The kind of stores is as per the wordCountStoreType property and they are sharded
+ * as per the wordCountStoreShards property, so that document processor threads
+ * don't contend on a single lock.
+ * The top N can also be subscribed to while the words are being added, see subscribe.
+ * Once the results are read, the service is closed to release the memory of the stores, e.g. off heap.
  */
-public class WordCountStoreService {
+public class WordCountStoreService implements Closeable {
 
-    private final WordCountStore<Word> wordCountStore;
-    private final WordCountStore<WordPair> wordPairCountStore;
+    private final WordStore<Word> wordCountStore;
+    private final WordStore<WordPair> wordPairCountStore;
     private final StopWordsUtil stopWordsUtil;
+    private final AtomicLong documentCount = new AtomicLong();
+    private final List<TopNSubscription> subscriptions = new CopyOnWriteArrayList<>();
 
     public WordCountStoreService() {
-        this.wordCountStore = new WordCountStore<>();
-        this.wordPairCountStore = new WordCountStore<>();
+        this(WordCountStoreType.fromName(PropertyStore.getInstance().getProperty(PropertyStore.WORD_COUNT_STORE_TYPE)),
+                PropertyStore.getInstance().getIntProperty(PropertyStore.WORD_COUNT_STORE_SHARDS));
+    }
+
+    /**
+     * @param storeType - kind of store to use for words and word pairs
+     * @param shardCount - number of shards for each store, 1 means a single unsharded store
+     */
+    public WordCountStoreService(WordCountStoreType storeType, int shardCount) {
+        this.wordCountStore = newStore(storeType, shardCount, Word::fromWords);
+        this.wordPairCountStore = newStore(storeType, shardCount, WordPair::fromWords);
         this.stopWordsUtil = new StopWordsUtil();
     }
 
+    private static <T extends WordConstruct<T>> WordStore<T> newStore(WordCountStoreType storeType, int shardCount,
+                                                                       Function<List<String>, T> fromWords) {
+        return shardCount > 1
+                ? new ShardedWordCountStore<>(shardCount, () -> storeType.newStore(fromWords, shardCount))
+                : storeType.newStore(fromWords);
+    }
+
     public void addWords(List<Word> words) {
         wordCountStore.addWords(stopWordsUtil.copyWithoutStopWords(words));
     }
@@ -31,6 +64,49 @@ public class WordCountStoreService {
         wordPairCountStore.addWords(stopWordsUtil.copyWithoutStopWordPairs(wordPairs));
     }
 
+    /**
+     * Creates a local buffer that counts words, e.g. of a whole document, and merges them
+     * into the stores in one go on commit, see WordCountBatch
+     * @return new batch
+     */
+    public WordCountBatch newBatch() {
+        return new WordCountBatch(this, stopWordsUtil);
+    }
+
+    void addCounts(Map<Word, Integer> wordCounts, Map<WordPair, Integer> wordPairCounts) {
+        wordCountStore.addCounts(wordCounts);
+        wordPairCountStore.addCounts(wordPairCounts);
+    }
+
+    /**
+     * Adds the counts of a document, see WordCountBatch.commit, letting the subscriptions know
+     */
+    void addDocumentCounts(Map<Word, Integer> wordCounts, Map<WordPair, Integer> wordPairCounts) {
+        addCounts(wordCounts, wordPairCounts);
+        final long documents = documentCount.incrementAndGet();
+        for (TopNSubscription subscription : subscriptions) {
+            subscription.documentAdded(documents);
+        }
+    }
+
+    /**
+     * @return number of documents whose counts have been added through batches
+     */
+    public long getDocumentCount() {
+        return documentCount.get();
+    }
+
+    /**
+     * Adds all the counts of the other stores, e.g. those of one website to those of a batch of websites,
+     * one count at a time rather than through a copy of the other stores
+     * @param other - stores to add the counts of
+     */
+    public void addAll(WordCountStoreService other) {
+        other.wordCountStore.forEachCount((word, count) -> wordCountStore.addWord(word.toLowerCase(), word, count));
+        other.wordPairCountStore.forEachCount((wordPair, count) ->
+                wordPairCountStore.addWord(wordPair.toLowerCase(), wordPair, count));
+    }
+
     public List<Pair<Word, Integer>> getTopNWords(int n) {
         return wordCountStore.getTopNWords(n);
     }
@@ -39,5 +115,68 @@ public class WordCountStoreService {
         return wordPairCountStore.getTopNWords(n);
     }
 
+    /**
+     * Same as getTopNWords, while words keep being added, see WordStore.snapshotTopNWords
+     */
+    public List<Pair<Word, Integer>> snapshotTopNWords(int n) {
+        return wordCountStore.snapshotTopNWords(n);
+    }
+
+    /**
+     * Same as getTopNWordPairs, while word pairs keep being added, see WordStore.snapshotTopNWords
+     */
+    public List<Pair<WordPair, Integer>> snapshotTopNWordPairs(int n) {
+        return wordPairCountStore.snapshotTopNWords(n);
+    }
 
+    /**
+     * Subscribes to snapshots of the top N taken while the documents are being added, e.g. to watch a long crawl
+     * and stop it once the ranking has converged, see TopNSubscription
+     * @param n - number of top words and word pairs in each snapshot
+     * @param everyDocuments - documents between snapshots, 0 for none by documents
+     * @param everyMillis - milliseconds between snapshots, 0 for none by time
+     * @param listener - takes each snapshot, on the thread of the subscription
+     * @return subscription, to be closed once the snapshots are not needed anymore
+     * @throws IllegalArgumentException if neither documents nor milliseconds are given
+     */
+    public TopNSubscription subscribe(int n, long everyDocuments, long everyMillis, Consumer<TopNSnapshot> listener) {
+        final TopNSubscription subscription = new TopNSubscription(this, n, everyDocuments, everyMillis, listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    void unsubscribe(TopNSubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * Writes the full counts of the words and of the word pairs to snapshots, see WordCountSnapshot
+     * @param wordsFile - snapshot of the words
+     * @param wordPairsFile - snapshot of the word pairs
+     * @throws IOException if a snapshot cannot be written
+     */
+    public void writeSnapshots(Path wordsFile, Path wordPairsFile) throws IOException {
+        WordCountSnapshot.write(wordCountStore, wordsFile);
+        WordCountSnapshot.write(wordPairCountStore, wordPairsFile);
+    }
+
+    /**
+     * Adds the counts of the snapshots to the stores, e.g. to rank the words of a merged snapshot
+     * @param wordsFile - snapshot of the words
+     * @param wordPairsFile - snapshot of the word pairs
+     * @throws IOException if a snapshot cannot be read
+     */
+    public void addSnapshots(Path wordsFile, Path wordPairsFile) throws IOException {
+        WordCountSnapshot.open(wordsFile).addTo(wordCountStore, Word::fromWords);
+        WordCountSnapshot.open(wordPairsFile).addTo(wordPairCountStore, WordPair::fromWords);
+    }
+
+    /**
+     * Releases the memory of the stores, e.g. off heap, the service not to be used afterwards
+     */
+    @Override
+    public void close() {
+        wordCountStore.close();
+        wordPairCountStore.close();
+    }
 }
@@ -0,0 +1,111 @@
+package com.purini.fw.process;
+
+import com.purini.fw.PropertyStore;
+import com.purini.fw.domain.WordConstruct;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Kinds of stores that can back the WordCountStoreService.
+ * Configured through the wordCountStoreType property.
+ */
+public enum WordCountStoreType {
+
+    /**
+     * Keeps the words sorted by frequency at all times, see WordCountStore
+     */
+    SORTED {
+        @Override
+        <T extends WordConstruct<T>> WordStore<T> newStore(Function<List<String>, T> fromWords, int shardCount) {
+            return new WordCountStore<>();
+        }
+    },
+
+    /**
+     * Only counts while adding and ranks on demand, see CountingWordCountStore
+     */
+    COUNTING {
+        @Override
+        <T extends WordConstruct<T>> WordStore<T> newStore(Function<List<String>, T> fromWords, int shardCount) {
+            return new CountingWordCountStore<>();
+        }
+    },
+
+    /**
+     * Interns the words and counts in primitive arrays, ranks on demand, see InternedWordCountStore
+     */
+    INTERNED {
+        @Override
+        <T extends WordConstruct<T>> WordStore<T> newStore(Function<List<String>, T> fromWords, int shardCount) {
+            return new InternedWordCountStore<>(fromWords);
+        }
+    },
+
+    /**
+     * Same as interned but outside the Java heap, in direct memory or memory mapped files
+     * under the offHeapStoreDirectory property, see OffHeapWordCountStore
+     */
+    OFF_HEAP {
+        @Override
+        <T extends WordConstruct<T>> WordStore<T> newStore(Function<List<String>, T> fromWords, int shardCount) {
+            String directory = PropertyStore.getInstance().getProperty(PropertyStore.OFF_HEAP_STORE_DIRECTORY);
+            return new OffHeapWordCountStore<>(fromWords, StringUtils.isBlank(directory) ? null : Paths.get(directory.trim()));
+        }
+    },
+
+    /**
+     * Tracks only the heavy hitters in fixed memory, as per the approximateStore* properties,
+     * see ApproximateWordCountStore. The capacity and the sketch are those of the whole store,
+     * divided among its shards.
+     */
+    APPROXIMATE {
+        @Override
+        <T extends WordConstruct<T>> WordStore<T> newStore(Function<List<String>, T> fromWords, int shardCount) {
+            PropertyStore propertyStore = PropertyStore.getInstance();
+            double sketchEpsilon = propertyStore.getDoubleProperty(PropertyStore.APPROXIMATE_STORE_SKETCH_EPSILON);
+            //each shard sees about 1/shardCount of the words, so the same error bound relative to all the words
+            //takes 1/shardCount of the counters and a sketch 1/shardCount as wide
+            int capacity = propertyStore.getIntProperty(PropertyStore.APPROXIMATE_STORE_CAPACITY);
+            return new ApproximateWordCountStore<>(Math.max(1, (capacity + shardCount - 1) / shardCount),
+                    sketchEpsilon > 0
+                            ? new CountMinSketch(sketchEpsilon * shardCount,
+                                    propertyStore.getDoubleProperty(PropertyStore.APPROXIMATE_STORE_SKETCH_DELTA))
+                            : null);
+        }
+    };
+
+    /**
+     * @param fromWords - creates the word construct back from its words, e.g. Word::fromWords
+     * @param <T> Word or WordPair
+     * @return new store, unsharded
+     */
+    <T extends WordConstruct<T>> WordStore<T> newStore(Function<List<String>, T> fromWords) {
+        return newStore(fromWords, 1);
+    }
+
+    /**
+     * @param fromWords - creates the word construct back from its words, e.g. Word::fromWords
+     * @param shardCount - number of shards of the store the new one is a shard of, 1 if unsharded,
+     *                   any fixed memory budget being divided among them
+     * @param <T> Word or WordPair
+     * @return new store
+     */
+    abstract <T extends WordConstruct<T>> WordStore<T> newStore(Function<List<String>, T> fromWords, int shardCount);
+
+    /**
+     * @param name - case insensitive name of the store type, with or without the underscore e.g. offHeap
+     * @return the store type
+     */
+    public static WordCountStoreType fromName(String name) {
+        String normalizedName = name.trim().replace("_", "").replace("-", "");
+        for (WordCountStoreType type : values()) {
+            if (type.name().replace("_", "").equalsIgnoreCase(normalizedName)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown word count store type " + name);
+    }
+}
@@ -0,0 +1,112 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.WordConstruct;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.Closeable;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Abstraction over the stores that count word constructs: words or word pairs.
+ *
+ * All comparisons are done on the lower case form of the word construct,
+ * while the original form (last occurrence wins) is given out in the results.
+ *
+ * A store holding memory that the garbage collector doesn't free on its own, e.g. off heap, releases it on close,
+ * after which it must not be used.
+ *
+ * @param <T> generic parameter to denote either a WordConstruct i.e. Word or WordPair
+ */
+public interface WordStore<T extends WordConstruct<T>> extends Closeable {
+
+    /**
+     * Adds the word, increasing its frequency by one
+     * @param word - word to add
+     */
+    default void addWord(T word) {
+        addWord(word.toLowerCase(), word);
+    }
+
+    /**
+     * Adds the word whose lower case form has already been computed by the caller
+     * @param lowerCaseWord - lower case form of the word, used for comparisons
+     * @param word - original word, used for output
+     */
+    default void addWord(T lowerCaseWord, T word) {
+        addWord(lowerCaseWord, word, 1);
+    }
+
+    /**
+     * Adds the given number of occurrences of the word
+     * @param lowerCaseWord - lower case form of the word, used for comparisons
+     * @param word - original word, used for output
+     * @param count - number of occurrences, at least 1
+     */
+    void addWord(T lowerCaseWord, T word, int count);
+
+    /**
+     * Takes a list of words to add
+     * @param words - words to add
+     */
+    default void addWords(List<T> words) {
+        words.forEach(this::addWord);
+    }
+
+    /**
+     * Adds pre-aggregated counts of words in one go, e.g. those of a whole document.
+     * Stores override it to take their lock once for all the words rather than once per word.
+     * @param counts - word (original form) to number of occurrences, in the order of last occurrence
+     */
+    default void addCounts(Map<T, Integer> counts) {
+        counts.forEach((word, count) -> addWord(word.toLowerCase(), word, count));
+    }
+
+    /**
+     * Gives out top n words, sorted by their frequency in descending order.
+     * Words with the same frequency are sorted by their lower case value.
+     * Note that it would return <n elements if the collection has <n
+     * @param n - number of top words to return
+     * @return a list of pair of word and count
+     */
+    List<Pair<T, Integer>> getTopNWords(int n);
+
+    /**
+     * Same as getTopNWords, for reading the ranking while words keep being added, e.g. for live results.
+     * The store is not locked for the whole ranking, only in parts (e.g. shard by shard) or to copy the counts,
+     * so the result is as of some moment during the call rather than of a single one across all the words.
+     * By default it is getTopNWords, for stores where the ranking is cheap, e.g. bounded or kept sorted.
+     * @param n - number of top words to return
+     * @return a list of pair of word and count
+     */
+    default List<Pair<T, Integer>> snapshotTopNWords(int n) {
+        return getTopNWords(n);
+    }
+
+    /**
+     * Passes over all the words counted, e.g. to write them out, in no particular order
+     * @param action - takes each word (original form) and its count
+     */
+    void forEachCount(ObjIntConsumer<T> action);
+
+    /**
+     * Order in which the results are given out: frequency descending, then lower case value ascending.
+     * Useful for stores that rank on demand or merge results of other stores.
+     * @param <T> Word or WordPair
+     * @return comparator for word count pairs
+     */
+    static <T extends WordConstruct<T>> Comparator<Pair<T, Integer>> rankingOrder() {
+        return Comparator.<Pair<T, Integer>, Integer>comparing(Pair::getRight, Comparator.reverseOrder())
+                .thenComparing(p -> p.getLeft().toLowerCase().getValue());
+    }
+
+
+    /**
+     * Releases the memory of the store, nothing to do for a store on the heap
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,114 @@
+package com.purini.fw.utils;
+
+import org.jsoup.nodes.Entities;
+
+/**
+ * Decodes the character references of HTML text and attribute values as the HTML tokenizer does,
+ * for HtmlScanner to give out the same text as a DOM parsed by Jsoup.
+ *
+ * Numeric references (&#38; and &#x26;) are decoded here, windows-1252 code points being mapped as browsers do.
+ * Named references are looked up in the entities of the public Entities API of Jsoup, a reference without
+ * the semicolon being decoded only for the legacy entities that allow it (e.g. &amp), and in an attribute
+ * only if not followed by a letter, a digit or an equals sign, so that urls like ?a=1&copy=2 are left as is.
+ */
+class HtmlEntities {
+
+    private static final int REPLACEMENT_CHARACTER = 0xFFFD;
+    private static final int WINDOWS_1252_START = 0x80;
+    private static final int[] WINDOWS_1252 = {0x20AC, 0x0081, 0x201A, 0x0192, 0x201E, 0x2026, 0x2020, 0x2021,
+            0x02C6, 0x2030, 0x0160, 0x2039, 0x0152, 0x008D, 0x017D, 0x008F, 0x0090, 0x2018, 0x2019, 0x201C, 0x201D,
+            0x2022, 0x2013, 0x2014, 0x02DC, 0x2122, 0x0161, 0x203A, 0x0153, 0x009D, 0x017E, 0x0178};
+
+    private HtmlEntities() {
+    }
+
+    /**
+     * @param text - text or attribute value as found in the HTML
+     * @param inAttribute - whether it is an attribute value
+     * @return the text with its character references decoded
+     */
+    static String unescape(String text, boolean inAttribute) {
+        int amp = text.indexOf('&');
+        if (amp == -1) {
+            return text;
+        }
+        final StringBuilder decoded = new StringBuilder(text.length());
+        int position = 0;
+        while (amp != -1) {
+            decoded.append(text, position, amp);
+            position = decodeReference(text, amp + 1, inAttribute, decoded);
+            if (position == -1) {
+                decoded.append('&');
+                position = amp + 1;
+            }
+            amp = text.indexOf('&', position);
+        }
+        return decoded.append(text, position, text.length()).toString();
+    }
+
+    /**
+     * @param start - index right after the ampersand
+     * @return index after the reference, having appended what it stands for, or -1 if it is not a reference
+     */
+    private static int decodeReference(String text, int start, boolean inAttribute, StringBuilder decoded) {
+        if (start == text.length()) {
+            return -1;
+        }
+        if (text.charAt(start) == '#') {
+            return decodeNumeric(text, start + 1, decoded);
+        }
+        int end = start;
+        while (end < text.length() && isLetter(text.charAt(end))) {
+            end++;
+        }
+        while (end < text.length() && isDigit(text.charAt(end))) {
+            end++;
+        }
+        final String name = text.substring(start, end);
+        final boolean semicolon = end < text.length() && text.charAt(end) == ';';
+        if (name.isEmpty() || !(Entities.isBaseNamedEntity(name) || (semicolon && Entities.isNamedEntity(name)))) {
+            return -1;
+        }
+        if (inAttribute && !semicolon && end < text.length()) {
+            final char next = text.charAt(end);
+            if (isLetter(next) || isDigit(next) || next == '=' || next == '-' || next == '_') {
+                return -1;
+            }
+        }
+        decoded.append(Entities.getByName(name));
+        return semicolon ? end + 1 : end;
+    }
+
+    private static int decodeNumeric(String text, int start, StringBuilder decoded) {
+        final boolean hex = start < text.length() && (text.charAt(start) == 'x' || text.charAt(start) == 'X');
+        final int digitsStart = hex ? start + 1 : start;
+        int end = digitsStart;
+        while (end < text.length() && (hex ? Character.digit(text.charAt(end), 16) != -1 : isDigit(text.charAt(end)))) {
+            end++;
+        }
+        if (end == digitsStart) {
+            return -1;
+        }
+        int codePoint;
+        try {
+            codePoint = Integer.parseInt(text.substring(digitsStart, end), hex ? 16 : 10);
+        } catch (NumberFormatException e) {
+            codePoint = -1; //too many digits
+        }
+        if (codePoint == -1 || (codePoint >= 0xD800 && codePoint <= 0xDFFF) || codePoint > Character.MAX_CODE_POINT) {
+            codePoint = REPLACEMENT_CHARACTER;
+        } else if (codePoint >= WINDOWS_1252_START && codePoint < WINDOWS_1252_START + WINDOWS_1252.length) {
+            codePoint = WINDOWS_1252[codePoint - WINDOWS_1252_START];
+        }
+        decoded.appendCodePoint(codePoint);
+        return end < text.length() && text.charAt(end) == ';' ? end + 1 : end;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || Character.isLetter(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
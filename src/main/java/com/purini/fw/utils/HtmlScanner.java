@@ -0,0 +1,548 @@
+package com.purini.fw.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Streaming HTML scanner that gives out the own text of each element and the links, as the HTML is read,
+ * without building a DOM. Only the open elements, with the text gathered for each, are kept in memory.
+ *
+ * The own text of an element is what Jsoup's Element.ownText gives out, i.e. the text directly in the element,
+ * entities decoded and white space normalised, and the links are the href attributes of the a elements as is.
+ * It is given out when the element is closed, i.e. children before parents.
+ *
+ * It follows the HTML parsing rules that matter for text: comments, doctype, void elements, script and style
+ * content, raw text and RCDATA elements, entities, br, pre and the usual implied end tags (p, li, dd, dt,
+ * option, td, th, tr, a). Foster parenting of text in tables and the adoption of misnested formatting elements
+ * are not done, so the text of badly broken HTML may be grouped differently than in a DOM.
+ */
+public class HtmlScanner {
+
+    /**
+     * Receives what is found in the HTML
+     */
+    public interface Handler {
+        /**
+         * @param text - own text of an element, not empty
+         */
+        void text(String text);
+
+        /**
+         * @param href - href of an a element, entities decoded
+         */
+        void link(String href);
+    }
+
+    /**
+     * Text of an element beyond which it is given out in parts, so that memory stays bounded for any page
+     */
+    static final int MAX_TEXT_LENGTH = 1 << 14;
+    private static final int MAX_DEPTH = 256;
+
+    private static final Set<String> VOID_ELEMENTS = setOf("area", "base", "basefont", "bgsound", "br", "col",
+            "command", "device", "embed", "frame", "hr", "img", "input", "keygen", "link", "menuitem", "meta",
+            "param", "source", "track", "wbr");
+    private static final Set<String> DATA_ELEMENTS = setOf("script", "style");
+    private static final Set<String> RAW_TEXT_ELEMENTS = setOf("xmp", "iframe", "noembed", "noframes");
+    private static final Set<String> RCDATA_ELEMENTS = setOf("title", "textarea");
+    private static final Set<String> PRESERVE_WHITESPACE = setOf("pre", "plaintext", "title", "textarea");
+    private static final Set<String> CLOSES_P = setOf("address", "article", "aside", "blockquote", "center",
+            "details", "dialog", "dir", "div", "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup",
+            "main", "menu", "nav", "ol", "p", "section", "summary", "ul", "h1", "h2", "h3", "h4", "h5", "h6", "pre",
+            "listing", "form", "hr", "table", "plaintext", "xmp", "li", "dd", "dt");
+    private static final Set<String> BUTTON_SCOPE = setOf("applet", "caption", "html", "table", "td", "th",
+            "marquee", "object", "button");
+    private static final Set<String> LIST_SCOPE = setOf("ul", "ol", "table");
+    private static final Set<String> DEFINITION_SCOPE = setOf("dl", "table");
+    private static final Set<String> ROW_SCOPE = setOf("tr", "table");
+    private static final Set<String> TABLE_SCOPE = setOf("table");
+    private static final Set<String> P = setOf("p");
+    private static final Set<String> LI = setOf("li");
+    private static final Set<String> DD_DT = setOf("dd", "dt");
+    private static final Set<String> TD_TH = setOf("td", "th");
+    private static final Set<String> TR = setOf("tr");
+    private static final Set<String> A = setOf("a");
+    private static final Set<String> HEADINGS = setOf("h1", "h2", "h3", "h4", "h5", "h6");
+
+    private final Reader reader;
+    private final Handler handler;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private final Deque<OpenElement> openElements = new ArrayDeque<>();
+    private final StringBuilder run = new StringBuilder();
+    private String baseUri;
+    private boolean baseUriSet;
+
+    private HtmlScanner(Reader reader, String baseUri, Handler handler) {
+        this.reader = reader;
+        this.baseUri = baseUri;
+        this.handler = handler;
+        openElements.push(new OpenElement("#root", false));
+    }
+
+    /**
+     * Scans the whole HTML, giving out the text and links to the handler on the fly
+     * @param reader - HTML to scan, not closed
+     * @param baseUri - uri the HTML was fetched from
+     * @param handler - receives the text and links
+     * @return base uri of the document, i.e. the href of its base element or else the uri it was fetched from
+     * @throws IOException if the HTML cannot be read
+     */
+    public static String scan(Reader reader, String baseUri, Handler handler) throws IOException {
+        HtmlScanner scanner = new HtmlScanner(reader, baseUri, handler);
+        scanner.scan();
+        return scanner.baseUri;
+    }
+
+    private void scan() throws IOException {
+        if (peek() == '\uFEFF') {
+            read(); //byte order mark
+        }
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '<') {
+                final int next = peek();
+                if (isLetter(next) || next == '/' || next == '!' || next == '?') {
+                    flushRun();
+                    readMarkup();
+                    continue;
+                }
+            }
+            run.append((char) c);
+            if (run.length() >= MAX_TEXT_LENGTH && isActuallyWhitespace(c)) {
+                flushRun();
+            }
+        }
+        flushRun();
+        while (!openElements.isEmpty()) {
+            close(openElements.pop());
+        }
+    }
+
+    private void readMarkup() throws IOException {
+        final int c = read();
+        if (c == '!') {
+            if (peek() == '-') {
+                read();
+                if (peek() == '-') {
+                    read();
+                    skipComment();
+                    return;
+                }
+            }
+            skipPast('>'); //doctype, cdata and bogus comments
+        } else if (c == '?') {
+            skipPast('>');
+        } else if (c == '/') {
+            if (isLetter(peek())) {
+                final String name = readTagName();
+                skipPast('>');
+                endTag(name);
+            } else {
+                skipPast('>');
+            }
+        } else {
+            startTag(Character.toLowerCase((char) c) + readTagName());
+        }
+    }
+
+    private void startTag(String name) throws IOException {
+        String href = null;
+        boolean selfClosing = false;
+        int c;
+        //attributes, of which only href is of interest
+        while ((c = read()) != -1 && c != '>') {
+            if (isWhitespace(c)) {
+                continue;
+            }
+            if (c == '/') {
+                selfClosing = peek() == '>';
+                continue;
+            }
+            StringBuilder attributeName = new StringBuilder().append(Character.toLowerCase((char) c));
+            while ((c = peek()) != -1 && !isWhitespace(c) && c != '/' && c != '>' && c != '=') {
+                append(attributeName, Character.toLowerCase((char) read()));
+            }
+            skipWhitespace();
+            String value = "";
+            if (peek() == '=') {
+                read();
+                skipWhitespace();
+                value = readAttributeValue();
+            }
+            if (href == null && "href".equals(attributeName.toString())) {
+                href = HtmlEntities.unescape(value, true);
+            }
+        }
+        closeImplied(name);
+        if ("a".equals(name) && href != null) {
+            handler.link(href);
+        }
+        if ("base".equals(name) && href != null && !baseUriSet) {
+            ParsedUrl reference = ParsedUrl.parse(href);
+            ParsedUrl resolved = reference != null ? ParsedUrl.resolve(ParsedUrl.parse(baseUri), reference) : null;
+            if (resolved != null) {
+                baseUri = resolved.toString();
+                baseUriSet = true;
+            }
+        }
+        if ("br".equals(name)) {
+            appendSpaceIfNotThere(openElements.peek());
+        }
+        if (selfClosing || VOID_ELEMENTS.contains(name) || openElements.size() >= MAX_DEPTH) {
+            return;
+        }
+        final OpenElement element = new OpenElement(name, preservesWhitespace(name));
+        openElements.push(element);
+        if (DATA_ELEMENTS.contains(name)) {
+            readTextUntilEndTag(name, null);
+        } else if (RAW_TEXT_ELEMENTS.contains(name)) {
+            readTextUntilEndTag(name, text -> appendText(element, text));
+        } else if (RCDATA_ELEMENTS.contains(name)) {
+            readTextUntilEndTag(name, text -> appendText(element, HtmlEntities.unescape(text, false)));
+        } else {
+            return;
+        }
+        close(openElements.pop());
+    }
+
+    private void endTag(String name) {
+        if ("br".equals(name)) {
+            appendSpaceIfNotThere(openElements.peek());
+            return;
+        }
+        if ("html".equals(name) || "body".equals(name)) {
+            return; //the text after the body still belongs to the body
+        }
+        popToOpen(Collections.singleton(name), Collections.emptySet());
+    }
+
+    /**
+     * Start tags that end open elements without an end tag, as per the HTML tree construction rules
+     */
+    private void closeImplied(String name) {
+        if (CLOSES_P.contains(name)) {
+            popToOpen(P, BUTTON_SCOPE);
+        }
+        if ("li".equals(name)) {
+            popToOpen(LI, LIST_SCOPE);
+        } else if ("dd".equals(name) || "dt".equals(name)) {
+            popToOpen(DD_DT, DEFINITION_SCOPE);
+        } else if ("option".equals(name) || "optgroup".equals(name)) {
+            if ("option".equals(openElements.peek().name)) {
+                close(openElements.pop());
+            }
+        } else if ("td".equals(name) || "th".equals(name)) {
+            popToOpen(TD_TH, ROW_SCOPE);
+        } else if ("tr".equals(name)) {
+            popToOpen(TR, TABLE_SCOPE);
+        } else if ("a".equals(name)) {
+            popToOpen(A, TABLE_SCOPE);
+        } else if (HEADINGS.contains(name) && HEADINGS.contains(openElements.peek().name)) {
+            close(openElements.pop());
+        }
+    }
+
+    /**
+     * Closes the most recently opened element of the given names, and the elements opened after it,
+     * if there is one above the boundaries
+     * @param names - element names
+     * @param boundaries - elements beyond which the search stops
+     */
+    private void popToOpen(Set<String> names, Set<String> boundaries) {
+        for (OpenElement element : openElements) {
+            if (names.contains(element.name)) {
+                popTo(element.name);
+                return;
+            }
+            if (boundaries.contains(element.name)) {
+                return;
+            }
+        }
+    }
+
+    private void popTo(String name) {
+        OpenElement element;
+        do {
+            element = openElements.pop();
+            close(element);
+        } while (!element.name.equals(name));
+    }
+
+    private void close(OpenElement element) {
+        giveOutText(element.text.toString());
+        element.text.setLength(0);
+    }
+
+    private void giveOutText(String text) {
+        final String trimmed = text.trim();
+        if (!trimmed.isEmpty()) {
+            handler.text(trimmed);
+        }
+    }
+
+    private void flushRun() {
+        if (run.length() > 0) {
+            appendText(openElements.peek(), HtmlEntities.unescape(run.toString(), false));
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * Same as Element.ownText does for each text node
+     */
+    private void appendText(OpenElement element, String text) {
+        final StringBuilder accum = element.text;
+        if (element.preserveWhitespace) {
+            accum.append(text);
+        } else {
+            appendNormalisedWhitespace(accum, text, lastCharIsSpace(accum));
+        }
+        while (accum.length() >= MAX_TEXT_LENGTH) {
+            //gives out the text till a white space, so that no word is broken
+            int cut = MAX_TEXT_LENGTH - 1;
+            while (cut > 0 && !isActuallyWhitespace(accum.charAt(cut))) {
+                cut--;
+            }
+            if (cut == 0) {
+                break; //a single word that long, kept as is
+            }
+            giveOutText(accum.substring(0, cut));
+            accum.delete(0, cut);
+        }
+    }
+
+    /**
+     * Appends the text with each run of white space as a single space, dropping the leading white space
+     * if asked to and the invisible characters (zero width space and soft hyphen), as the DOM's text does
+     */
+    private static void appendNormalisedWhitespace(StringBuilder accum, String text, boolean stripLeading) {
+        boolean lastWasWhite = false;
+        boolean reachedNonWhite = false;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (isActuallyWhitespace(c)) {
+                if ((stripLeading && !reachedNonWhite) || lastWasWhite) {
+                    continue;
+                }
+                accum.append(' ');
+                lastWasWhite = true;
+            } else if (c != '\u200B' && c != '\u00AD') {
+                accum.append(c);
+                lastWasWhite = false;
+                reachedNonWhite = true;
+            }
+        }
+    }
+
+    private static void appendSpaceIfNotThere(OpenElement element) {
+        if (!lastCharIsSpace(element.text)) {
+            element.text.append(' ');
+        }
+    }
+
+    private static boolean lastCharIsSpace(StringBuilder accum) {
+        return accum.length() != 0 && accum.charAt(accum.length() - 1) == ' ';
+    }
+
+    /**
+     * Same as Jsoup's check of the element and its ancestors up to 5 levels for pre, textarea etc.
+     */
+    private boolean preservesWhitespace(String name) {
+        if (PRESERVE_WHITESPACE.contains(name)) {
+            return true;
+        }
+        Iterator<OpenElement> ancestors = openElements.iterator();
+        for (int i = 0; i < 5 && ancestors.hasNext(); i++) {
+            if (PRESERVE_WHITESPACE.contains(ancestors.next().name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the content of script, style, title etc. which is text till the end tag of the element
+     * @param name - element name
+     * @param textConsumer - receives the text in parts, or null to skip it
+     */
+    private void readTextUntilEndTag(String name, TextConsumer textConsumer) throws IOException {
+        final StringBuilder text = new StringBuilder();
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '<' && peek() == '/' && matchesEndTag(name)) {
+                break;
+            }
+            if (textConsumer != null) {
+                text.append((char) c);
+                if (text.length() >= MAX_TEXT_LENGTH && isActuallyWhitespace(c)) {
+                    textConsumer.accept(text.toString());
+                    text.setLength(0);
+                }
+            }
+        }
+        if (textConsumer != null && text.length() > 0) {
+            textConsumer.accept(text.toString());
+        }
+    }
+
+    /**
+     * Checks, right after a less than sign, if the end tag of the element follows, consuming it if so.
+     * Otherwise what was read is taken as text.
+     */
+    private boolean matchesEndTag(String name) throws IOException {
+        //the end tag is short, so it is checked within the buffer
+        final int needed = name.length() + 2;
+        if (limit - position < needed && !fill(needed)) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toLowerCase(buffer[position + 1 + i]) != name.charAt(i)) {
+                return false;
+            }
+        }
+        final char after = buffer[position + 1 + name.length()];
+        if (!isWhitespace(after) && after != '/' && after != '>') {
+            return false;
+        }
+        position += name.length() + 1;
+        skipPast('>');
+        return true;
+    }
+
+    private String readTagName() throws IOException {
+        final StringBuilder name = new StringBuilder();
+        int c;
+        while ((c = peek()) != -1 && !isWhitespace(c) && c != '/' && c != '>') {
+            append(name, Character.toLowerCase((char) read()));
+        }
+        return name.toString();
+    }
+
+    private String readAttributeValue() throws IOException {
+        final StringBuilder value = new StringBuilder();
+        final int quote = peek();
+        int c;
+        if (quote == '"' || quote == '\'') {
+            read();
+            while ((c = read()) != -1 && c != quote) {
+                append(value, (char) c);
+            }
+        } else {
+            while ((c = peek()) != -1 && !isWhitespace(c) && c != '>') {
+                append(value, (char) read());
+            }
+        }
+        return value.toString();
+    }
+
+    private void skipComment() throws IOException {
+        int dashes = 0;
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '>' && dashes >= 2) {
+                return;
+            }
+            dashes = c == '-' ? dashes + 1 : 0;
+        }
+    }
+
+    private void skipPast(char end) throws IOException {
+        int c;
+        while ((c = read()) != -1 && c != end) {
+            //skip
+        }
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (isWhitespace(peek())) {
+            read();
+        }
+    }
+
+    /**
+     * Tag and attribute names and values are capped so that a malformed page cannot take up memory
+     */
+    private static void append(StringBuilder builder, char c) {
+        if (builder.length() < MAX_TEXT_LENGTH) {
+            builder.append(c);
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill(1)) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill(1)) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Makes sure that the buffer has at least the given number of unread chars, if the HTML has as many
+     * @return false if the HTML ended before
+     */
+    private boolean fill(int needed) throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit < needed) {
+            final int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * White space of the text, i.e. also the no-break space, as against that of the markup
+     */
+    private static boolean isActuallyWhitespace(int c) {
+        return isWhitespace(c) || c == '\u00A0';
+    }
+
+    private static Set<String> setOf(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    @FunctionalInterface
+    private interface TextConsumer {
+        void accept(String text);
+    }
+
+    private static class OpenElement {
+        private final String name;
+        private final boolean preserveWhitespace;
+        private final StringBuilder text = new StringBuilder();
+
+        private OpenElement(String name, boolean preserveWhitespace) {
+            this.name = name;
+            this.preserveWhitespace = preserveWhitespace;
+        }
+    }
+}
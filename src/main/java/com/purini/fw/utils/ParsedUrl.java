@@ -0,0 +1,370 @@
+package com.purini.fw.utils;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Url split into its components once, by a lightweight parser that never throws,
+ * so that it can be validated, compared by host and used to resolve relative links without parsing it again.
+ *
+ * Parsing follows the generic syntax of RFC 3986, i.e. scheme:[//[userinfo@]host[:port]]path[?query][#fragment],
+ * characters not allowed in a uri (e.g. spaces, non ASCII) being percent encoded as UTF-8, as browsers do.
+ * Components are kept as written (still encoded), absent ones being null, other than the path which is never null.
+ */
+public class ParsedUrl {
+
+    @Nullable
+    private final String scheme;
+    @Nullable
+    private final String userInfo;
+    @Nullable
+    private final String host;
+    private final int port;
+    private final String path;
+    @Nullable
+    private final String query;
+    @Nullable
+    private final String fragment;
+
+    /**
+     * @param scheme - scheme, null for a relative reference
+     * @param userInfo - user info, null if none
+     * @param host - host, null if there is no authority
+     * @param port - port, -1 if none
+     * @param path - path, empty if none
+     * @param query - query without the ?, null if none
+     * @param fragment - fragment without the #, null if none
+     */
+    public ParsedUrl(@Nullable String scheme, @Nullable String userInfo, @Nullable String host, int port, String path,
+                     @Nullable String query, @Nullable String fragment) {
+        this.scheme = scheme;
+        this.userInfo = userInfo;
+        this.host = host;
+        this.port = port;
+        this.path = path;
+        this.query = query;
+        this.fragment = fragment;
+    }
+
+    /**
+     * @param url - absolute url or relative reference
+     * @return parsed url, or null if it cannot be parsed, e.g. the port is not a number
+     */
+    @Nullable
+    public static ParsedUrl parse(String url) {
+        final String encoded = encodeIllegalChars(url.trim());
+        final int length = encoded.length();
+        int position = 0;
+
+        String scheme = null;
+        final int colon = indexOfAny(encoded, ":/?#", 0);
+        if (colon > 0 && encoded.charAt(colon) == ':' && isScheme(encoded, colon)) {
+            scheme = encoded.substring(0, colon);
+            position = colon + 1;
+        }
+
+        String userInfo = null;
+        String host = null;
+        int port = -1;
+        if (encoded.startsWith("//", position)) {
+            final int authorityEnd = indexOfAny(encoded, "/?#", position + 2);
+            final int end = authorityEnd == -1 ? length : authorityEnd;
+            int hostStart = position + 2;
+            final int at = encoded.lastIndexOf('@', end - 1);
+            if (at >= hostStart) {
+                userInfo = encoded.substring(hostStart, at);
+                hostStart = at + 1;
+            }
+            int hostEnd = end;
+            if (hostStart < end && encoded.charAt(hostStart) == '[') {
+                final int bracket = encoded.indexOf(']', hostStart);
+                if (bracket == -1 || bracket >= end) {
+                    return null;
+                }
+                hostEnd = bracket + 1;
+                if (hostEnd < end && encoded.charAt(hostEnd) != ':') {
+                    return null;
+                }
+            } else {
+                final int portColon = encoded.indexOf(':', hostStart);
+                if (portColon != -1 && portColon < end) {
+                    hostEnd = portColon;
+                }
+            }
+            host = encoded.substring(hostStart, hostEnd);
+            if (hostEnd < end) {
+                port = parsePort(encoded, hostEnd + 1, end);
+                if (port == -2) {
+                    return null;
+                }
+            }
+            position = end;
+        }
+
+        final int pathEnd = indexOfAny(encoded, "?#", position);
+        final String path = encoded.substring(position, pathEnd == -1 ? length : pathEnd);
+        String query = null;
+        String fragment = null;
+        if (pathEnd != -1) {
+            final int hash = encoded.indexOf('#', pathEnd);
+            if (encoded.charAt(pathEnd) == '?') {
+                query = encoded.substring(pathEnd + 1, hash == -1 ? length : hash);
+            }
+            if (hash != -1) {
+                fragment = encoded.substring(hash + 1);
+            }
+        }
+        return new ParsedUrl(scheme, userInfo, host, port, path, query, fragment);
+    }
+
+    /**
+     * Resolves a reference against a base url as per section 5.2 of RFC 3986, e.g. page.html, ../x, //host/x, ?q, #f
+     * @param base - base url, null if there is none
+     * @param reference - reference to resolve
+     * @return the target url, or null if the reference is relative and there is no base url
+     */
+    @Nullable
+    public static ParsedUrl resolve(@Nullable ParsedUrl base, ParsedUrl reference) {
+        if (reference.scheme != null) {
+            return new ParsedUrl(reference.scheme, reference.userInfo, reference.host, reference.port,
+                    removeDotSegments(reference.path), reference.query, reference.fragment);
+        }
+        return base == null ? null : base.resolveRelative(reference);
+    }
+
+    private ParsedUrl resolveRelative(ParsedUrl reference) {
+        if (reference.host != null) {
+            return new ParsedUrl(scheme, reference.userInfo, reference.host, reference.port,
+                    removeDotSegments(reference.path), reference.query, reference.fragment);
+        }
+        if (reference.path.isEmpty()) {
+            return new ParsedUrl(scheme, userInfo, host, port, path,
+                    reference.query != null ? reference.query : query, reference.fragment);
+        }
+        final String targetPath;
+        if (reference.path.startsWith("/")) {
+            targetPath = removeDotSegments(reference.path);
+        } else if (host != null && path.isEmpty()) {
+            targetPath = removeDotSegments("/" + reference.path);
+        } else {
+            targetPath = removeDotSegments(path.substring(0, path.lastIndexOf('/') + 1) + reference.path);
+        }
+        return new ParsedUrl(scheme, userInfo, host, port, targetPath, reference.query, reference.fragment);
+    }
+
+    /**
+     * @return true if the scheme is http or https and there is a host
+     */
+    public boolean isHttp() {
+        return ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) && host != null && !host.isEmpty();
+    }
+
+    /**
+     * @return host:port if there is a port, otherwise just host, or null if there is no host
+     */
+    @Nullable
+    public String getHostPort() {
+        if (host == null) {
+            return null;
+        }
+        return port == -1 ? host : host + ":" + port;
+    }
+
+    @Nullable
+    public String getScheme() {
+        return scheme;
+    }
+
+    @Nullable
+    public String getUserInfo() {
+        return userInfo;
+    }
+
+    @Nullable
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    @Nullable
+    public String getQuery() {
+        return query;
+    }
+
+    @Nullable
+    public String getFragment() {
+        return fragment;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder url = new StringBuilder();
+        if (scheme != null) {
+            url.append(scheme).append(':');
+        }
+        if (host != null) {
+            url.append("//");
+            if (userInfo != null) {
+                url.append(userInfo).append('@');
+            }
+            url.append(host);
+            if (port != -1) {
+                url.append(':').append(port);
+            }
+        }
+        url.append(path);
+        if (query != null) {
+            url.append('?').append(query);
+        }
+        if (fragment != null) {
+            url.append('#').append(fragment);
+        }
+        return url.toString();
+    }
+
+    /**
+     * Removes . and .. segments as per section 5.2.4 of RFC 3986
+     */
+    static String removeDotSegments(String path) {
+        if (path.indexOf('.') == -1) {
+            return path;
+        }
+        final StringBuilder output = new StringBuilder(path.length());
+        int position = 0;
+        final int length = path.length();
+        while (position < length) {
+            if (path.startsWith("../", position)) {
+                position += 3;
+            } else if (path.startsWith("./", position)) {
+                position += 2;
+            } else if (path.startsWith("/./", position)) {
+                position += 2;
+            } else if (isSegment(path, position, "/.")) {
+                output.append('/');
+                position = length;
+            } else if (path.startsWith("/../", position)) {
+                removeLastSegment(output);
+                position += 3;
+            } else if (isSegment(path, position, "/..")) {
+                removeLastSegment(output);
+                output.append('/');
+                position = length;
+            } else if (isSegment(path, position, ".") || isSegment(path, position, "..")) {
+                position = length;
+            } else {
+                final int next = path.indexOf('/', path.charAt(position) == '/' ? position + 1 : position);
+                final int end = next == -1 ? length : next;
+                output.append(path, position, end);
+                position = end;
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * @return true if the rest of the path from the position is exactly the given segment
+     */
+    private static boolean isSegment(String path, int position, String segment) {
+        return path.length() - position == segment.length() && path.startsWith(segment, position);
+    }
+
+    private static void removeLastSegment(StringBuilder output) {
+        final int lastSlash = output.lastIndexOf("/");
+        output.setLength(Math.max(lastSlash, 0));
+    }
+
+    private static boolean isScheme(String url, int end) {
+        if (!isAsciiLetter(url.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < end; i++) {
+            final char c = url.charAt(i);
+            if (!isAsciiLetter(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return port, -1 if empty, or -2 if not a valid port
+     */
+    private static int parsePort(String url, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        if (end - start > 5) {
+            return -2;
+        }
+        int port = 0;
+        for (int i = start; i < end; i++) {
+            final char c = url.charAt(i);
+            if (c < '0' || c > '9') {
+                return -2;
+            }
+            port = port * 10 + (c - '0');
+        }
+        return port <= 65535 ? port : -2;
+    }
+
+    private static int indexOfAny(String s, String chars, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (chars.indexOf(s.charAt(i)) != -1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Percent encodes, as UTF-8, the characters that are not allowed anywhere in a uri, and % not starting an escape
+     */
+    static String encodeIllegalChars(String url) {
+        StringBuilder encoded = null;
+        for (int i = 0; i < url.length(); i++) {
+            final char c = url.charAt(i);
+            final boolean legal = c < 128 && (Character.isLetterOrDigit(c) || "-._~:/?#[]@!$&'()*+,;=".indexOf(c) != -1
+                    || (c == '%' && i + 2 < url.length() && isHex(url.charAt(i + 1)) && isHex(url.charAt(i + 2))));
+            if (legal) {
+                if (encoded != null) {
+                    encoded.append(c);
+                }
+                continue;
+            }
+            if (encoded == null) {
+                encoded = new StringBuilder(url.length() + 16).append(url, 0, i);
+            }
+            final int end = Character.isHighSurrogate(c) && i + 1 < url.length() ? i + 2 : i + 1;
+            for (byte b : url.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                encoded.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xF, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+            }
+            i = end - 1;
+        }
+        return encoded == null ? url : encoded.toString();
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * @return scheme in lower case, or null
+     */
+    @Nullable
+    String getLowerCaseScheme() {
+        return scheme == null ? null : scheme.toLowerCase(Locale.ROOT);
+    }
+}
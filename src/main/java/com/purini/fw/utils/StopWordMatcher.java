@@ -0,0 +1,130 @@
+package com.purini.fw.utils;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Case insensitive set of stop words, built once, that can be looked up with any range of a CharSequence
+ * without allocating, so the cost of a lookup doesn't grow with the number of stop words.
+ *
+ * It is an open addressing hash table of the lower case stop words as char arrays,
+ * hashed and compared char by char on the lower case form of the range being looked up.
+ */
+public class StopWordMatcher {
+
+    /**
+     * Chars for which String.toUpperCase gives something else than the char itself, e.g. a, ß.
+     * Computed once so that all caps can be checked char by char exactly like String.toUpperCase would.
+     */
+    private static final BitSet NOT_UPPER_CASE = new BitSet(Character.MAX_VALUE + 1);
+
+    static {
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            if (Character.isSurrogate((char) c)) {
+                continue;
+            }
+            String s = String.valueOf((char) c);
+            if (!s.toUpperCase().equals(s)) {
+                NOT_UPPER_CASE.set(c);
+            }
+        }
+    }
+
+    private final char[][] table;
+    private final int mask;
+    private final int size;
+
+    /**
+     * @param stopWords - stop words, in any case, blank ones are ignored
+     */
+    public StopWordMatcher(Collection<String> stopWords) {
+        int capacity = Integer.highestOneBit(Math.max(4, stopWords.size() * 2) - 1) << 1;
+        this.table = new char[capacity][];
+        this.mask = capacity - 1;
+        int count = 0;
+        for (String stopWord : stopWords) {
+            String trimmed = stopWord.trim();
+            if (!trimmed.isEmpty() && !contains(trimmed, 0, trimmed.length())) {
+                char[] lowerCase = new char[trimmed.length()];
+                for (int i = 0; i < lowerCase.length; i++) {
+                    lowerCase[i] = Character.toLowerCase(trimmed.charAt(i));
+                }
+                table[slotOf(trimmed, 0, trimmed.length())] = lowerCase;
+                count++;
+            }
+        }
+        this.size = count;
+    }
+
+    /**
+     * @param text - text containing the word
+     * @param start - start index of the word, inclusive
+     * @param end - end index of the word, exclusive
+     * @return true if the word is one of the stop words, ignoring case
+     */
+    public boolean contains(CharSequence text, int start, int end) {
+        return table[slotOf(text, start, end)] != null;
+    }
+
+    /**
+     * Stop words that appear in full capitals are not considered stop words, e.g. IT
+     * @param text - text containing the word
+     * @param start - start index of the word, inclusive
+     * @param end - end index of the word, exclusive
+     * @return true if the word is a stop word and should be excluded
+     */
+    public boolean isStopWord(CharSequence text, int start, int end) {
+        return !isAllCaps(text, start, end) && contains(text, start, end);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Same as checking text.toUpperCase().equals(text) for the range, but without allocating
+     * @param text - text containing the word
+     * @param start - start index of the word, inclusive
+     * @param end - end index of the word, exclusive
+     * @return true if the word is unchanged when upper cased
+     */
+    public static boolean isAllCaps(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                if (Character.toUpperCase(codePoint) != codePoint) {
+                    return false;
+                }
+            } else if (NOT_UPPER_CASE.get(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int slotOf(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + Character.toLowerCase(text.charAt(i));
+        }
+        hash ^= hash >>> 16;
+        int slot = hash & mask;
+        while (table[slot] != null && !matches(table[slot], text, start, end)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static boolean matches(char[] lowerCase, CharSequence text, int start, int end) {
+        if (lowerCase.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < lowerCase.length; i++) {
+            if (lowerCase[i] != Character.toLowerCase(text.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
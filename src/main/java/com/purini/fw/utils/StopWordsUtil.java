@@ -3,16 +3,59 @@ package com.purini.fw.utils;
 import com.purini.fw.PropertyStore;
 import com.purini.fw.domain.Word;
 import com.purini.fw.domain.WordPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class StopWordsUtil {
 
-    private final List<String> stopWords;
+    private static final Logger logger = LoggerFactory.getLogger(StopWordsUtil.class);
 
+    private final StopWordMatcher stopWordMatcher;
+
+    /**
+     * Uses the stop words from the properties, the matcher for which is built only once
+     */
     public StopWordsUtil() {
-        stopWords = PropertyStore.getInstance().getPropertyList(PropertyStore.STOP_WORDS);
+        this(DefaultMatcherHolder.DEFAULT_MATCHER);
+    }
+
+    /**
+     * @param stopWordMatcher - matcher of the stop words to exclude
+     */
+    public StopWordsUtil(StopWordMatcher stopWordMatcher) {
+        this.stopWordMatcher = stopWordMatcher;
+    }
+
+    /**
+     * Stop words that appear in full capitals are not considered stop words, e.g. IT
+     * @param word - word to check
+     * @return true if the word is a stop word and should be excluded
+     */
+    public boolean isStopWord(String word) {
+        return stopWordMatcher.isStopWord(word, 0, word.length());
+    }
+
+    /**
+     * Same as isStopWord(String) for a range of the text, without allocating a String for it
+     * @param text - text containing the word
+     * @param start - start index of the word, inclusive
+     * @param end - end index of the word, exclusive
+     * @return true if the word is a stop word and should be excluded
+     */
+    public boolean isStopWord(CharSequence text, int start, int end) {
+        return stopWordMatcher.isStopWord(text, start, end);
     }
 
     /**
@@ -21,10 +64,7 @@ public class StopWordsUtil {
      * @return list of words without stop words
      */
     public List<Word> copyWithoutStopWords(List<Word> words) {
-        return words.stream().filter(w -> {
-            String s = w.getWords().get(0);
-            return s.toUpperCase().equals(s) || !stopWords.contains(s.toLowerCase());
-        }).collect(Collectors.toList());
+        return words.stream().filter(w -> !isStopWord(w.getWords().get(0))).collect(Collectors.toList());
     }
 
     /**
@@ -34,10 +74,58 @@ public class StopWordsUtil {
      */
     public List<WordPair> copyWithoutStopWordPairs(List<WordPair> wordPairs) {
         return wordPairs.stream().filter(w -> {
-            String s1 = w.getWords().get(0);
-            String s2 = w.getWords().get(1);
-            return s1.toUpperCase().equals(s1) || s2.toUpperCase().equals(s2)
-                    || !stopWords.contains(s1.toLowerCase()) || !stopWords.contains(s2.toLowerCase());
+            List<String> words = w.getWords();
+            return !isStopWord(words.get(0)) || !isStopWord(words.get(1));
         }).collect(Collectors.toList());
     }
+
+    /**
+     * Reads stop words from a file or, if there is no such file, a class path resource.
+     * One or more comma separated words per line, lines starting with # being comments.
+     * @param location - file path or class path resource
+     * @return the stop words
+     */
+    static List<String> readStopWords(String location) {
+        try (InputStream inputStream = Files.exists(Paths.get(location))
+                ? Files.newInputStream(Paths.get(location))
+                : StopWordsUtil.class.getResourceAsStream(location.startsWith("/") ? location : "/" + location)) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("Stop words file not found: " + location);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            List<String> stopWords = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().startsWith("#")) {
+                    for (String word : line.split(",")) {
+                        stopWords.add(word);
+                    }
+                }
+            }
+            return stopWords;
+        } catch (IOException e) {
+            throw new UncheckedIOException("while reading stop words from " + location, e);
+        }
+    }
+
+    /**
+     * Builds the matcher for the stop words from the properties on first use
+     */
+    private static class DefaultMatcherHolder {
+        private static final StopWordMatcher DEFAULT_MATCHER = createDefaultMatcher();
+
+        private static StopWordMatcher createDefaultMatcher() {
+            PropertyStore propertyStore = PropertyStore.getInstance();
+            List<String> stopWords = new ArrayList<>(propertyStore.getPropertyList(PropertyStore.STOP_WORDS));
+            String stopWordsFiles = propertyStore.getProperty(PropertyStore.STOP_WORDS_FILES);
+            if (stopWordsFiles != null && !stopWordsFiles.trim().isEmpty()) {
+                for (String location : stopWordsFiles.split(",")) {
+                    stopWords.addAll(readStopWords(location.trim()));
+                }
+            }
+            StopWordMatcher matcher = new StopWordMatcher(stopWords);
+            logger.info("Loaded {} stop words", matcher.size());
+            return matcher;
+        }
+    }
 }
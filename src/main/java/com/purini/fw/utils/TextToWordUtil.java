@@ -4,9 +4,7 @@ import com.purini.fw.domain.Word;
 import com.purini.fw.domain.WordPair;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class TextToWordUtil {
 
@@ -34,16 +32,14 @@ public class TextToWordUtil {
      * starting and ending non-alphanumeric characters, or words that start with number.
      * E.g. 'It can't be true', said the good-hearted? 22 : and that's all there is to it.
      * Would give words as - It can't be true said the good-hearted and that's all there is to it
+     * See WordTokenizer, which does the actual tokenizing in a single pass.
      * @param text - text to split
      * @return list of Word objects
      */
     public static List<Word> toWords(String text) {
-        return Arrays.stream(text.split("\\s+"))
-                .map(s -> s.replaceAll("^[\\W]*(.*?)[\\W]*$", "$1")
-                        .replaceAll("^\\d.*", ""))
-                .filter(s -> !s.isEmpty())
-                .map(Word::new)
-                .collect(Collectors.toList());
+        List<Word> words = new ArrayList<>();
+        WordTokenizer.tokenize(text, (t, start, end) -> words.add(new Word(text.substring(start, end))));
+        return words;
     }
 
 }
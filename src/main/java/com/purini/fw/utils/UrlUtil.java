@@ -1,31 +1,30 @@
 package com.purini.fw.utils;
 
+import com.purini.fw.PropertyStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 public class UrlUtil {
 
     private static final Logger logger = LoggerFactory.getLogger(UrlUtil.class);
 
     /**
-     * Validate the Url against the standard Java URL
-     * and ensures only http or https protocol
+     * Validate the Url, parsed once without throwing on malformed urls,
+     * and ensures only http or https protocol with a host
      * @param urlString - url to validate
      * @return true if valid
      */
     public static boolean isValid(String urlString) {
-        URL url = null;
-        try {
-            url = new URL(urlString);
-            return isHttp(url);
-        } catch (MalformedURLException e) {
-            //Ignore
-        }
-        return false;
+        final ParsedUrl url = ParsedUrl.parse(urlString);
+        return url != null && url.isHttp();
     }
 
     /**
@@ -35,19 +34,8 @@ public class UrlUtil {
      */
     @Nullable
     public static String getHostPort(String urlString) {
-        URL url = null;
-        String hostPort = null;
-        try {
-            url = new URL(urlString);
-            hostPort = url.getHost();
-            final int port = url.getPort();
-            if (port != -1) {
-                hostPort = hostPort + ":" + port;
-            }
-        } catch (MalformedURLException e) {
-            //Ignore malformed urls
-        }
-        return hostPort;
+        final ParsedUrl url = ParsedUrl.parse(urlString);
+        return url == null || url.getScheme() == null ? null : url.getHostPort();
     }
 
     /**
@@ -57,15 +45,8 @@ public class UrlUtil {
      */
     @Nullable
     public static String getProtocol(String urlString) {
-        URL url = null;
-        String protocol = null;
-        try {
-            url = new URL(urlString);
-            protocol = url.getProtocol();
-        } catch (MalformedURLException e) {
-            //Ignore malformed urls
-        }
-        return protocol;
+        final ParsedUrl url = ParsedUrl.parse(urlString);
+        return url == null ? null : url.getLowerCaseScheme();
     }
 
     /**
@@ -80,13 +61,173 @@ public class UrlUtil {
     }
 
     /**
-     * Validate the Url against the standard Java URL
+     * Canonical form of a link, stripping or sorting the query parameters as configured by
+     * urlStrippedQueryParameters and urlSortQueryParameters
+     * @param baseUri - base uri of the document the link is in
+     * @param href - link as in the document, absolute or relative
+     * @return canonical url, or null if the link is not a valid http or https url
+     */
+    @Nullable
+    public static String canonicalize(String baseUri, String href) {
+        return canonicalize(baseUri, href, QueryParameterConfig.STRIPPED, QueryParameterConfig.SORT);
+    }
+
+    /**
+     * Canonical form of a link, so that the different ways of writing a url give the same url:
+     * - resolved against the base uri as per RFC 3986, e.g. page.html, ../x, //host/x, ?q=1
+     * - scheme and host in lower case, default port (80 for http, 443 for https) removed
+     * - dot segments removed from the path and an empty path made /
+     * - fragment removed
+     * - stripped query parameters removed and the rest optionally sorted, an empty query removed
+     * Characters not allowed in a uri, e.g. spaces, are percent encoded first, as browsers do.
      *
-     * @param url - url to validated
-     * @return true if valid
+     * @param baseUri - base uri of the document the link is in
+     * @param href - link as in the document, absolute or relative
+     * @param strippedQueryParameters - names of the query parameters to remove, a trailing * matching any suffix e.g. utm_*
+     * @param sortQueryParameters - whether to sort the query parameters
+     * @return canonical url, or null if the link is not a valid http or https url
+     */
+    @Nullable
+    public static String canonicalize(String baseUri, String href, Set<String> strippedQueryParameters,
+                                      boolean sortQueryParameters) {
+        final ParsedUrl canonical = canonicalize(ParsedUrl.parse(baseUri), href, strippedQueryParameters, sortQueryParameters);
+        return canonical == null ? null : canonical.toString();
+    }
+
+    /**
+     * Same as canonicalize of a base uri, for a base uri parsed once for all the links of a document,
+     * with the query parameters configured by urlStrippedQueryParameters and urlSortQueryParameters
+     * @param base - parsed base uri of the document the link is in, null if it could not be parsed
+     * @param href - link as in the document, absolute or relative
+     * @return canonical url, or null if the link is not a valid http or https url
      */
-    private static boolean isHttp(URL url) {
-        return url.getProtocol().equalsIgnoreCase("http") || url.getProtocol().equalsIgnoreCase("https");
+    @Nullable
+    public static ParsedUrl canonicalize(@Nullable ParsedUrl base, String href) {
+        return canonicalize(base, href, QueryParameterConfig.STRIPPED, QueryParameterConfig.SORT);
+    }
+
+    /**
+     * Url of a link to fetch: resolved, scheme and host in lower case, default port, dot segments and fragment
+     * removed as by canonicalize, but with the query as written, since the server may need the parameters
+     * that canonicalize strips (e.g. a session id). The stripped form is only used by visitedKey.
+     * @param base - parsed base uri of the document the link is in, null if it could not be parsed
+     * @param href - link as in the document, absolute or relative
+     * @return url to fetch, or null if the link is not a valid http or https url
+     */
+    @Nullable
+    public static ParsedUrl normalize(@Nullable ParsedUrl base, String href) {
+        return canonicalize(base, href, null, false);
+    }
+
+    /**
+     * @param strippedQueryParameters - names of the query parameters to remove, null to keep the query as written
+     */
+    @Nullable
+    private static ParsedUrl canonicalize(@Nullable ParsedUrl base, String href,
+                                          @Nullable Set<String> strippedQueryParameters, boolean sortQueryParameters) {
+        final ParsedUrl reference = ParsedUrl.parse(href);
+        final ParsedUrl url = reference == null ? null : ParsedUrl.resolve(base, reference);
+        if (url == null || !url.isHttp()) {
+            return null;
+        }
+        final String scheme = url.getLowerCaseScheme();
+        final int port = url.getPort() == defaultPort(scheme) ? -1 : url.getPort();
+        final String query = strippedQueryParameters == null
+                ? (url.getQuery() == null ? "" : url.getQuery())
+                : canonicalQuery(url.getQuery(), strippedQueryParameters, sortQueryParameters);
+        return new ParsedUrl(scheme, url.getUserInfo(), url.getHost().toLowerCase(Locale.ROOT), port,
+                url.getPath().isEmpty() ? "/" : url.getPath(), query.isEmpty() ? null : query, null);
+    }
+
+    /**
+     * Same as visitedKey of a parsed url, for a url not normalized yet, e.g. the url to start the crawl from
+     * @param url - absolute url
+     * @return the canonical url without its scheme and trailing slash of the path, or the url as is if it is not valid
+     */
+    public static String visitedKey(String url) {
+        final ParsedUrl normalized = normalize(null, url);
+        return normalized == null ? url : visitedKey(normalized);
+    }
+
+    /**
+     * Key under which a url is checked for being visited: its canonical form (canonicalize) without
+     * the scheme and the trailing slash of the path, so that urls differing only in tracking parameters,
+     * in http vs https or in a trailing slash are fetched once, e.g. http://abc.com/x?utm_source=y and https://abc.com/x/
+     * It is built from the parts of the url as given out by normalize, which is not parsed again.
+     * @param url - url as given out by normalize
+     * @return the canonical url without its scheme and trailing slash of the path
+     */
+    public static String visitedKey(ParsedUrl url) {
+        final String query = canonicalQuery(url.getQuery(), QueryParameterConfig.STRIPPED, QueryParameterConfig.SORT);
+        final String path = url.getPath();
+        final StringBuilder key = new StringBuilder(url.getHost().length() + path.length() + query.length() + 8);
+        if (url.getUserInfo() != null) {
+            key.append(url.getUserInfo()).append('@');
+        }
+        key.append(url.getHost());
+        if (url.getPort() != -1) {
+            key.append(':').append(url.getPort());
+        }
+        key.append(path, 0, path.length() > 1 && path.endsWith("/") ? path.length() - 1 : path.length());
+        if (!query.isEmpty()) {
+            key.append('?').append(query);
+        }
+        return key.toString();
+    }
+
+    private static int defaultPort(String scheme) {
+        return "https".equals(scheme) ? 443 : 80;
+    }
+
+    private static String canonicalQuery(@Nullable String query, Set<String> strippedParameters, boolean sort) {
+        if (query == null || query.isEmpty()) {
+            return "";
+        }
+        final List<String> parameters = new ArrayList<>();
+        for (String parameter : query.split("&")) {
+            if (!parameter.isEmpty() && !isStripped(parameter, strippedParameters)) {
+                parameters.add(parameter);
+            }
+        }
+        if (sort) {
+            Collections.sort(parameters);
+        }
+        return String.join("&", parameters);
+    }
+
+    private static boolean isStripped(String parameter, Set<String> strippedParameters) {
+        if (strippedParameters.isEmpty()) {
+            return false;
+        }
+        final int equals = parameter.indexOf('=');
+        final String name = (equals == -1 ? parameter : parameter.substring(0, equals)).toLowerCase(Locale.ROOT);
+        if (strippedParameters.contains(name)) {
+            return true;
+        }
+        for (String stripped : strippedParameters) {
+            if (stripped.endsWith("*") && name.startsWith(stripped.substring(0, stripped.length() - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Query parameters config from the properties, read on first use
+     */
+    private static class QueryParameterConfig {
+        private static final Set<String> STRIPPED = new HashSet<>();
+        private static final boolean SORT;
+
+        static {
+            PropertyStore propertyStore = PropertyStore.getInstance();
+            for (String name : propertyStore.getPropertyList(PropertyStore.URL_STRIPPED_QUERY_PARAMETERS)) {
+                if (!name.trim().isEmpty()) {
+                    STRIPPED.add(name.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+            SORT = propertyStore.getBooleanProperty(PropertyStore.URL_SORT_QUERY_PARAMETERS);
+        }
     }
 
 }
@@ -0,0 +1,110 @@
+package com.purini.fw.utils;
+
+/**
+ * Single pass, regex free tokenizer that gives out the same words as the regular expressions
+ * TextToWordUtil used to run on each token, i.e.
+ * split by "\\s+", then replaceAll("^[\\W]*(.*?)[\\W]*$", "$1"), then replaceAll("^\\d.*", "").
+ *
+ * - tokens are separated by white space (space, tab, new line, vertical tab, form feed, carriage return)
+ * - starting and ending non word characters are stripped, word characters being [a-zA-Z_0-9],
+ * so that hyphens and apostrophes in between are preserved. E.g. go-live, McDonald's
+ * - words starting with a digit are dropped
+ *
+ * Words are given out to a sink as ranges of the text, so nothing is allocated by the tokenizer itself.
+ */
+public class WordTokenizer {
+
+    /**
+     * Receives the words found in the text
+     */
+    @FunctionalInterface
+    public interface TokenSink {
+        /**
+         * @param text - the text being tokenized
+         * @param start - start index of the word, inclusive
+         * @param end - end index of the word, exclusive
+         */
+        void accept(CharSequence text, int start, int end);
+    }
+
+    /**
+     * Finds the words in the text and gives them out to the sink in order
+     * @param text - text to tokenize
+     * @param sink - receives each word
+     */
+    public static void tokenize(CharSequence text, TokenSink sink) {
+        final int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            final int tokenStart = i;
+            int firstWordChar = -1;
+            int lastWordChar = -1;
+            int firstLineTerminator = -1;
+            boolean lineTerminatorAfterWordChar = false;
+            boolean lineTerminatorInBetween = false;
+            for (; i < length; i++) {
+                final char c = text.charAt(i);
+                if (isWhitespace(c)) {
+                    break;
+                } else if (isWordChar(c)) {
+                    if (firstWordChar == -1) {
+                        firstWordChar = i;
+                    }
+                    lastWordChar = i;
+                    lineTerminatorInBetween |= lineTerminatorAfterWordChar;
+                } else if (isLineTerminator(c)) {
+                    if (firstLineTerminator == -1) {
+                        firstLineTerminator = i;
+                    }
+                    lineTerminatorAfterWordChar = firstWordChar != -1;
+                }
+            }
+            final int tokenEnd = i;
+            if (firstWordChar == -1) {
+                continue; //all non word characters, stripped down to nothing
+            }
+            if (!lineTerminatorInBetween) {
+                if (!isDigit(text.charAt(firstWordChar))) {
+                    sink.accept(text, firstWordChar, lastWordChar + 1);
+                }
+            } else if (!isDigit(text.charAt(tokenStart))) {
+                //the regex doesn't match across a line terminator, so the token is left as is
+                sink.accept(text, tokenStart, tokenEnd);
+            } else {
+                //a starting digit is stripped only till the line terminator
+                sink.accept(text, firstLineTerminator, tokenEnd);
+            }
+        }
+    }
+
+    /**
+     * Same as the \s character class
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Same as the \w character class
+     */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Line terminators, which the . of a regular expression doesn't match, other than the white spaces
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,95 @@
+package com.purini.fw;
+
+import com.purini.fw.domain.Word;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class BatchApplicationTest {
+
+    private HttpServer server;
+    private int port;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        page("/first", "<p>quantum gravity</p><a href=\"/first/more\">x</a>");
+        page("/first/more", "<p>quantum stuff</p>");
+        page("/second", "<p>quantum computing computing</p>");
+        server.start();
+        port = server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testSeedsAreCrawledOnSharedPools() {
+        List<BatchApplication.Seed> seeds = Arrays.asList(
+                new BatchApplication.Seed("http://127.0.0.1:" + port + "/first", 1, true),
+                new BatchApplication.Seed("not a url", 1, true),
+                new BatchApplication.Seed("http://localhost:" + port + "/second", 0, true));
+        BatchApplication.BatchResult result = new BatchApplication(seeds).run(2);
+
+        List<BatchApplication.SeedResult> seedResults = result.getSeedResults();
+        Assertions.assertEquals(3, seedResults.size());
+        Assertions.assertTrue(seedResults.get(0).isCrawled());
+        Assertions.assertEquals(2, seedResults.get(0).getDocuments());
+        Assertions.assertEquals(Pair.of(new Word("quantum"), 2), seedResults.get(0).getTopWords().get(0));
+        Assertions.assertFalse(seedResults.get(1).isCrawled());
+        Assertions.assertTrue(seedResults.get(1).getTopWords().isEmpty());
+        Assertions.assertEquals(Arrays.asList(Pair.of(new Word("computing"), 2), Pair.of(new Word("quantum"), 1)),
+                seedResults.get(2).getTopWords());
+
+        Assertions.assertEquals(Arrays.asList(Pair.of(new Word("quantum"), 3), Pair.of(new Word("computing"), 2)),
+                result.getTopWords());
+    }
+
+    @Test
+    public void testSeedsAreReadWithDefaults() throws IOException {
+        Path file = Files.write(directory.resolve("seeds.txt"), Arrays.asList(
+                "# sites to crawl",
+                "http://a.com/",
+                "",
+                "http://b.com/ 3",
+                "http://c.com/, 1, false"));
+        List<BatchApplication.Seed> seeds = BatchApplication.readSeeds(file);
+        Assertions.assertEquals(3, seeds.size());
+        Assertions.assertEquals("http://a.com/ 2 true", seeds.get(0).toString());
+        Assertions.assertEquals("http://b.com/ 3 true", seeds.get(1).toString());
+        Assertions.assertEquals("http://c.com/ 1 false", seeds.get(2).toString());
+
+        Path badFile = Files.write(directory.resolve("bad.txt"), Arrays.asList("http://a.com/ two"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BatchApplication.readSeeds(badFile));
+    }
+
+    private void page(String path, String body) {
+        byte[] bytes = ("<html><body>" + body + "</body></html>").getBytes(StandardCharsets.UTF_8);
+        server.createContext(path, exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+    }
+}
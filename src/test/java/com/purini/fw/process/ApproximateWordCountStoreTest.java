@@ -0,0 +1,89 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.Word;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ApproximateWordCountStoreTest {
+
+    private static final int DISTINCT_WORDS = 50000;
+    private static final int TOTAL_WORDS = 500000;
+    private static final int CAPACITY = 1000;
+    private static final int TOP_N = 20;
+
+    @Test
+    public void testExactWhenWithinCapacity() {
+        ApproximateWordCountStore<Word> wordCountStore = new ApproximateWordCountStore<>(10, null);
+        String[] words = {"This", "is", "a", "test", "with", "A", "Test", "in", "test"};
+        wordCountStore.addWords(Arrays.stream(words).map(Word::new).collect(Collectors.toList()));
+        List<Pair<Word, Integer>> wordFrequency = wordCountStore.getTopNWords(3);
+
+        assertEquals(Pair.of(new Word("test"), 3), wordFrequency.get(0)); //last occurrence wins
+        assertEquals(Pair.of(new Word("A"), 2), wordFrequency.get(1)); //last occurrence wins
+        assertEquals(Pair.of(new Word("in"), 1), wordFrequency.get(2)); //ties in alphabetical order
+        assertEquals(6, wordCountStore.getTopNWords(10).size());
+    }
+
+    @Test
+    public void testSpaceSavingAccuracyOnZipfianCorpus() {
+        assertAccurate(new ApproximateWordCountStore<>(CAPACITY, null));
+    }
+
+    @Test
+    public void testSketchFilteredAccuracyOnZipfianCorpus() {
+        assertAccurate(new ApproximateWordCountStore<>(CAPACITY, new CountMinSketch(0.0001, 0.01)));
+    }
+
+    private static void assertAccurate(ApproximateWordCountStore<Word> approximateStore) {
+        List<Word> corpus = zipfianCorpus(new Random(17));
+        CountingWordCountStore<Word> exactStore = new CountingWordCountStore<>();
+        exactStore.addWords(corpus);
+        approximateStore.addWords(corpus);
+
+        List<Pair<Word, Integer>> exactTopN = exactStore.getTopNWords(TOP_N);
+        List<Pair<Word, Integer>> approximateTopN = approximateStore.getTopNWords(TOP_N);
+        assertEquals(TOP_N, approximateTopN.size());
+
+        Set<Word> exactWords = exactTopN.stream().map(Pair::getLeft).collect(Collectors.toSet());
+        long recalled = approximateTopN.stream().map(Pair::getLeft).filter(exactWords::contains).count();
+        assertTrue(recalled >= TOP_N - 1, "recalled only " + recalled + " of the top " + TOP_N);
+
+        //the counts are never under estimated and over estimated by at most N / capacity
+        Map<Word, Integer> exactCounts = exactStore.getTopNWords(DISTINCT_WORDS).stream()
+                .collect(Collectors.toMap(Pair::getLeft, Pair::getRight));
+        for (Pair<Word, Integer> wordCount : approximateTopN) {
+            int exactCount = exactCounts.get(wordCount.getLeft());
+            assertTrue(wordCount.getRight() >= exactCount, wordCount + " vs " + exactCount);
+            assertTrue(wordCount.getRight() - exactCount <= TOTAL_WORDS / CAPACITY, wordCount + " vs " + exactCount);
+        }
+    }
+
+    /**
+     * Words drawn with probability proportional to 1 / rank
+     */
+    private static List<Word> zipfianCorpus(Random random) {
+        double[] cumulative = new double[DISTINCT_WORDS];
+        double sum = 0;
+        for (int rank = 1; rank <= DISTINCT_WORDS; rank++) {
+            sum += 1.0 / rank;
+            cumulative[rank - 1] = sum;
+        }
+        List<Word> corpus = new ArrayList<>(TOTAL_WORDS);
+        for (int i = 0; i < TOTAL_WORDS; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            corpus.add(new Word("word" + (index < 0 ? -index - 1 : index)));
+        }
+        return corpus;
+    }
+}
@@ -0,0 +1,73 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordPair;
+import com.purini.fw.utils.TextToWordUtil;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CountingWordCountStoreTest {
+
+    @Test
+    public void testWord() {
+        CountingWordCountStore<Word> wordCountStore = new CountingWordCountStore<>();
+        String[] words = {"This", "is", "a", "test", "with", "A", "Test", "in", "test"};
+        wordCountStore.addWords(Arrays.stream(words).map(Word::new).collect(Collectors.toList()));
+        List<Pair<Word, Integer>> wordFrequency = wordCountStore.getTopNWords(3);
+
+        assertEquals(3, wordFrequency.size());
+        assertEquals(Pair.of(new Word("test"), 3), wordFrequency.get(0)); //last occurrence wins
+        assertEquals(Pair.of(new Word("A"), 2), wordFrequency.get(1)); //last occurrence wins
+        assertEquals(Pair.of(new Word("in"), 1), wordFrequency.get(2)); //ties in alphabetical order
+        assertEquals(6, wordCountStore.getTopNWords(10).size());
+    }
+
+    @Test
+    public void testCacheIsInvalidatedOnAdd() {
+        CountingWordCountStore<Word> wordCountStore = new CountingWordCountStore<>();
+        wordCountStore.addWords(Arrays.asList(new Word("one"), new Word("two"), new Word("two")));
+        assertEquals(Pair.of(new Word("two"), 2), wordCountStore.getTopNWords(1).get(0));
+        assertEquals(Pair.of(new Word("two"), 2), wordCountStore.getTopNWords(1).get(0));
+
+        wordCountStore.addWords(Arrays.asList(new Word("one"), new Word("One")));
+        assertEquals(Pair.of(new Word("One"), 3), wordCountStore.getTopNWords(1).get(0));
+        assertEquals(2, wordCountStore.getTopNWords(5).size());
+        assertTrue(wordCountStore.getTopNWords(0).isEmpty());
+    }
+
+    @Test
+    public void testSameResultsAsSortedStore() {
+        Random random = new Random(7);
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            //skewed distribution so that there are plenty of ties as well as distinct counts
+            int id = (int) Math.abs(random.nextGaussian() * 300);
+            words.add(new Word(random.nextBoolean() ? "Word" + id : "word" + id));
+        }
+        List<WordPair> wordPairs = TextToWordUtil.toWordPairs(words);
+
+        WordCountStore<Word> sortedStore = new WordCountStore<>();
+        CountingWordCountStore<Word> countingStore = new CountingWordCountStore<>();
+        sortedStore.addWords(words);
+        countingStore.addWords(words);
+        for (int n : new int[]{1, 10, 100, 10000}) {
+            assertEquals(sortedStore.getTopNWords(n), countingStore.snapshotTopNWords(n));
+            assertEquals(sortedStore.getTopNWords(n), countingStore.getTopNWords(n));
+        }
+
+        WordCountStore<WordPair> sortedPairStore = new WordCountStore<>();
+        CountingWordCountStore<WordPair> countingPairStore = new CountingWordCountStore<>();
+        sortedPairStore.addWords(wordPairs);
+        countingPairStore.addWords(wordPairs);
+        assertEquals(sortedPairStore.getTopNWords(50), countingPairStore.getTopNWords(50));
+    }
+}
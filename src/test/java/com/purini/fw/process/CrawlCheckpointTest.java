@@ -0,0 +1,210 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordPair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CrawlCheckpointTest {
+
+    private static final String URL = "http://a.com/";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testResumeSkipsCompletePages() throws IOException {
+        try (CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, 300, 1000)) {
+            checkpoint.start(URL, 2, true);
+            checkpoint.recordLevel(0, Collections.singletonList(URL));
+            checkpoint.recordPage(URL, 0, Arrays.asList("http://a.com/1", "http://a.com/2", "http://a.com/3"));
+            checkpoint.recordCounts(URL, words("alpha", 2), pairs("alpha", "beta", 1));
+            checkpoint.recordLevel(1, Arrays.asList("http://a.com/1", "http://a.com/2", "http://a.com/3"));
+            checkpoint.recordPage("http://a.com/1", 1, Collections.singletonList("http://a.com/4"));
+            checkpoint.recordCounts("http://a.com/1", words("alpha", 1), pairs("alpha", "beta", 2));
+            checkpoint.recordPage("http://a.com/2", 1, Collections.singletonList("http://a.com/5"));
+            //the counts of 2 never made it, and 3 wasn't fetched
+        }
+
+        WordCountStoreService stores = new WordCountStoreService();
+        CrawlCheckpoint.ResumedCrawl crawl;
+        try (CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, 300, 1000)) {
+            crawl = checkpoint.resume(URL, 2, true, stores);
+        }
+        Assertions.assertNotNull(crawl);
+        Assertions.assertEquals(1, crawl.getDepth());
+        Assertions.assertEquals(2, crawl.getCompletePages());
+        Assertions.assertEquals(Collections.singletonList("http://a.com/3"), crawl.getPendingUrls());
+        Assertions.assertEquals(Collections.singletonMap("http://a.com/2", 1), crawl.getPagesToRecount());
+        Assertions.assertEquals(Arrays.asList("http://a.com/4", "http://a.com/5"), crawl.getNextLevelUrls());
+        Assertions.assertTrue(crawl.getVisitedUrls().containsAll(Arrays.asList(URL, "http://a.com/3", "http://a.com/5")));
+        Assertions.assertEquals(Collections.singletonList(Pair.of(new Word("alpha"), 3)), stores.getTopNWords(10));
+        Assertions.assertEquals(Collections.singletonList(Pair.of(new WordPair("alpha", "beta"), 3)), stores.getTopNWordPairs(10));
+    }
+
+    @Test
+    public void testResumedCrawlIsCheckpointedAfterTheSnapshot() throws IOException {
+        try (CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, 300, 1000)) {
+            checkpoint.start(URL, 2, false);
+            checkpoint.recordLevel(0, Collections.singletonList(URL));
+            checkpoint.recordPage(URL, 0, Collections.singletonList("http://b.com/"));
+            checkpoint.recordCounts(URL, words("alpha", 1), pairs("alpha", "beta", 1));
+        }
+        try (CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, 300, 1000)) {
+            Assertions.assertNotNull(checkpoint.resume(URL, 2, false, new WordCountStoreService()));
+            checkpoint.recordLevel(1, Collections.singletonList("http://b.com/"));
+            checkpoint.recordPage("http://b.com/", 1, Collections.emptyList());
+            checkpoint.recordCounts("http://b.com/", words("gamma", 5), pairs("gamma", "delta", 1));
+        }
+
+        WordCountStoreService stores = new WordCountStoreService();
+        CrawlCheckpoint.ResumedCrawl crawl;
+        try (CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, 300, 1000)) {
+            crawl = checkpoint.resume(URL, 2, false, stores);
+        }
+        Assertions.assertNotNull(crawl);
+        Assertions.assertEquals(1, crawl.getDepth());
+        Assertions.assertEquals(2, crawl.getCompletePages());
+        Assertions.assertTrue(crawl.getPendingUrls().isEmpty());
+        Assertions.assertTrue(crawl.getPagesToRecount().isEmpty());
+        Assertions.assertEquals(Arrays.asList(Pair.of(new Word("gamma"), 5), Pair.of(new Word("alpha"), 1)), stores.getTopNWords(10));
+    }
+
+    @Test
+    public void testTornRecordEndsTheLog() throws IOException {
+        try (DataOutputStream log = new DataOutputStream(Files.newOutputStream(directory.resolve("log-1")))) {
+            CrawlState.writeRecord(log, CrawlState.encodeStart(URL, 1, true));
+            for (byte[] record : CrawlState.encodeLevel(0, Collections.singletonList(URL))) {
+                CrawlState.writeRecord(log, record);
+            }
+            CrawlState.writeRecord(log, CrawlState.encodePage(URL, 0, Collections.emptyList()));
+            byte[] counts = CrawlState.encodeCounts(URL, words("alpha", 1), pairs("alpha", "beta", 1));
+            log.writeInt(counts.length);
+            log.writeInt(0);
+            log.write(counts, 0, counts.length / 2);
+        }
+
+        WordCountStoreService stores = new WordCountStoreService();
+        CrawlCheckpoint.ResumedCrawl crawl;
+        try (CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, 300, 1000)) {
+            crawl = checkpoint.resume(URL, 1, true, stores);
+        }
+        Assertions.assertNotNull(crawl);
+        Assertions.assertEquals(0, crawl.getCompletePages());
+        Assertions.assertEquals(Collections.singletonMap(URL, 0), crawl.getPagesToRecount());
+        Assertions.assertTrue(stores.getTopNWords(10).isEmpty());
+    }
+
+    @Test
+    public void testRecordsWaitForRoomAndSnapshotsAreTakenUnderLoad() throws Exception {
+        //a queue of one record and a snapshot due on every record, while recording from several threads at once
+        try (CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, 0, 1)) {
+            checkpoint.start(URL, 2, true);
+            checkpoint.recordLevel(1, Collections.singletonList(URL));
+            ExecutorService recorders = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> recorded = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    final int thread = i;
+                    recorded.add(recorders.submit(() -> {
+                        for (int page = 0; page < 25; page++) {
+                            String url = "http://a.com/" + thread + "/" + page;
+                            checkpoint.recordPage(url, 1, Collections.emptyList());
+                            checkpoint.recordCounts(url, words("alpha", 1), pairs("alpha", "beta", 1));
+                        }
+                    }));
+                }
+                for (Future<?> future : recorded) {
+                    future.get();
+                }
+            } finally {
+                recorders.shutdown();
+            }
+            Assertions.assertTrue(Files.exists(directory.resolve("snapshot")));
+        }
+
+        WordCountStoreService stores = new WordCountStoreService();
+        CrawlCheckpoint.ResumedCrawl crawl;
+        try (CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, 300, 1000)) {
+            crawl = checkpoint.resume(URL, 2, true, stores);
+        }
+        Assertions.assertNotNull(crawl);
+        Assertions.assertEquals(100, crawl.getCompletePages());
+        Assertions.assertEquals(Collections.singletonList(Pair.of(new Word("alpha"), 100)), stores.getTopNWords(10));
+    }
+
+    @Test
+    public void testCheckpointOfAnotherCrawlIsNotResumed() throws IOException {
+        try (CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, 300, 1000)) {
+            checkpoint.start(URL, 2, true);
+        }
+        try (CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, 300, 1000)) {
+            Assertions.assertNull(checkpoint.resume(URL, 3, true, new WordCountStoreService()));
+            Assertions.assertNull(checkpoint.resume("http://b.com/", 2, true, new WordCountStoreService()));
+        }
+    }
+
+    @Test
+    public void testLargeSnapshotIsSplitIntoRecordsAndReadWhole() throws IOException {
+        CrawlState state = new CrawlState();
+        state.apply(CrawlState.encodeStart(URL, 2, true));
+        List<String> urls = new ArrayList<>();
+        Map<Word, Integer> wordCounts = new HashMap<>();
+        for (int i = 0; i < 30000; i++) {
+            urls.add(URL + "page-" + i);
+            wordCounts.put(new Word("word" + i), 1);
+        }
+        List<byte[]> level = CrawlState.encodeLevel(1, urls);
+        Assertions.assertTrue(level.size() > 1, "the level is split into records");
+        for (byte[] record : level) {
+            state.apply(record);
+        }
+        state.apply(CrawlState.encodePage(urls.get(0), 1, urls));
+        state.apply(CrawlState.encodeCounts(urls.get(0), wordCounts, pairs("alpha", "beta", 2)));
+
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        state.writeSnapshot(snapshot, 7);
+        Assertions.assertTrue(snapshot.size() > 2 * CrawlState.MAX_CHUNK_BYTES);
+        CrawlState read = new CrawlState();
+        Assertions.assertEquals(7, read.readSnapshot(new ByteArrayInputStream(snapshot.toByteArray())));
+        Assertions.assertEquals(state.knownUrls, read.knownUrls);
+        Assertions.assertEquals(urls, read.levelUrls);
+        Assertions.assertEquals(wordCounts, read.wordCounts);
+        Assertions.assertEquals(pairs("alpha", "beta", 2), read.wordPairCounts);
+        Assertions.assertEquals(1, read.completePages);
+
+        //only the tail of a log may be torn, not a snapshot
+        byte[] cutShort = Arrays.copyOf(snapshot.toByteArray(), snapshot.size() - 10);
+        Assertions.assertThrows(IOException.class, () -> new CrawlState().readSnapshot(new ByteArrayInputStream(cutShort)));
+    }
+
+    private static Map<Word, Integer> words(String word, int count) {
+        Map<Word, Integer> words = new HashMap<>();
+        words.put(new Word(word), count);
+        return words;
+    }
+
+    private static Map<WordPair, Integer> pairs(String first, String second, int count) {
+        Map<WordPair, Integer> pairs = new HashMap<>();
+        pairs.put(new WordPair(first, second), count);
+        return pairs;
+    }
+}
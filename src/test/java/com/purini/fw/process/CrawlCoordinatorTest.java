@@ -0,0 +1,164 @@
+package com.purini.fw.process;
+
+import com.purini.fw.Application;
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordConstruct;
+import com.purini.fw.domain.WordPair;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class CrawlCoordinatorTest {
+
+    private HttpServer server;
+    private int port;
+    private final Map<String, Integer> fetches = new ConcurrentHashMap<>();
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Pages on two hosts, 127.0.0.1 and localhost, linking to each other
+     */
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.start();
+        port = server.getAddress().getPort();
+        page("/a", "Alpha beta quantum", "http://localhost:" + port + "/b", "/c");
+        page("/b", "beta gamma quantum", "http://127.0.0.1:" + port + "/a", "/c", "/d");
+        page("/c", "gamma delta Quantum", "/a");
+        page("/d", "delta epsilon quantum");
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testWorkersCountAsASingleJvm() throws Exception {
+        String url = "http://127.0.0.1:" + port + "/a";
+        Pair<List<Pair<Word, Integer>>, List<Pair<WordPair, Integer>>> expected =
+                new Application(2, url, false).getTopNWordsAndWordPairs(100);
+        Assertions.assertNotNull(expected);
+        fetches.clear();
+
+        ExecutorService workerThreads = Executors.newFixedThreadPool(3);
+        try (CrawlCoordinator coordinator = new CrawlCoordinator(0, 60000)) {
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                workers.add(workerThreads.submit(() -> {
+                    new CrawlWorker("127.0.0.1", coordinator.getPort()).run();
+                    return null;
+                }));
+            }
+            coordinator.awaitWorkers(3, 10000);
+            Assertions.assertEquals(5, coordinator.crawl(url, 2, false, wordsFile(), wordPairsFile()));
+            for (Future<Void> worker : workers) {
+                worker.get(10, TimeUnit.SECONDS);
+            }
+            //the original form of a word is that of its last occurrence, in whichever order the pages were processed
+            Assertions.assertEquals(lowerCase(expected.getLeft()),
+                    lowerCase(WordCountSnapshot.open(wordsFile()).getTopN(100, Word::fromWords)));
+            Assertions.assertEquals(lowerCase(expected.getRight()),
+                    lowerCase(WordCountSnapshot.open(wordPairsFile()).getTopN(100, WordPair::fromWords)));
+        } finally {
+            workerThreads.shutdownNow();
+        }
+        Assertions.assertEquals(5, fetches.size(), fetches.toString());
+        fetches.forEach((page, count) -> Assertions.assertEquals(1, count, page));
+    }
+
+    @Test
+    public void testWorkersInTheirOwnJvms() throws Exception {
+        List<Process> processes = new ArrayList<>();
+        try (CrawlCoordinator coordinator = new CrawlCoordinator(0, 60000)) {
+            for (int i = 0; i < 2; i++) {
+                processes.add(CrawlCoordinator.startLocalWorker(coordinator.getPort()));
+            }
+            coordinator.awaitWorkers(2, 60000);
+            coordinator.crawl("http://localhost:" + port + "/b", 1, true, wordsFile(), wordPairsFile());
+            //b, c and d, on localhost only
+            Assertions.assertEquals(Arrays.asList(Pair.of(new Word("x"), 4), Pair.of(new Word("quantum"), 3)),
+                    lowerCase(WordCountSnapshot.open(wordsFile()).getTopN(2, Word::fromWords)));
+            for (Process process : processes) {
+                Assertions.assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+                Assertions.assertEquals(0, process.exitValue());
+            }
+        } finally {
+            processes.forEach(Process::destroy);
+        }
+    }
+
+    @Test
+    public void testWorkerNotAnsweringFailsTheCrawl() throws Exception {
+        try (CrawlCoordinator coordinator = new CrawlCoordinator(0, 200);
+             Socket silentWorker = new Socket(InetAddress.getLoopbackAddress(), coordinator.getPort())) {
+            DataOutputStream out = new DataOutputStream(silentWorker.getOutputStream());
+            out.writeInt(CrawlProtocol.MAGIC);
+            out.writeInt(CrawlProtocol.VERSION);
+            out.flush();
+            coordinator.awaitWorkers(1, 10000);
+            Assertions.assertThrows(SocketTimeoutException.class,
+                    () -> coordinator.crawl("http://localhost:" + port + "/a", 1, true, wordsFile(), wordPairsFile()));
+        }
+    }
+
+    private Path wordsFile() {
+        return directory.resolve("words.fwc");
+    }
+
+    private Path wordPairsFile() {
+        return directory.resolve("wordPairs.fwc");
+    }
+
+    private static <T extends WordConstruct<T>> List<Pair<T, Integer>> lowerCase(List<Pair<T, Integer>> wordCounts) {
+        return wordCounts.stream().map(p -> Pair.of(p.getLeft().toLowerCase(), p.getRight())).collect(Collectors.toList());
+    }
+
+    private void page(String path, String text, String... links) {
+        StringBuilder html = new StringBuilder("<html><body><p>").append(text).append("</p>");
+        for (String link : links) {
+            html.append("<a href=\"").append(link).append("\">x</a>");
+        }
+        byte[] body = html.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+        server.createContext(path, exchange -> {
+            fetches.merge(exchange.getRequestHeaders().getFirst("Host") + path, 1, Integer::sum);
+            respond(exchange, body);
+        });
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.purini.fw.process;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+public class DiskResponseCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testSameContentIsStoredOnce() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 1000);
+        cache("http://a.com/x", "same content", cache);
+        cache("http://a.com/y", "same content", cache);
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals("same content".length(), cache.getBytes());
+        Assertions.assertEquals(1, countFiles(directory.resolve("bodies")));
+        Assertions.assertEquals("same content", read(cache, "http://a.com/y"));
+
+        cache.remove("http://a.com/x");
+        Assertions.assertEquals("same content", read(cache, "http://a.com/y"));
+        cache.remove("http://a.com/y");
+        Assertions.assertEquals(0, cache.getBytes());
+        Assertions.assertEquals(0, countFiles(directory.resolve("bodies")));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 25);
+        cache("http://a.com/1", "0123456789", cache);
+        cache("http://a.com/2", "abcdefghij", cache);
+        Assertions.assertNotNull(cache.get("http://a.com/1")); //used, so 2 is the least recently used
+        cache("http://a.com/3", "ABCDEFGHIJ", cache);
+        Assertions.assertNotNull(cache.get("http://a.com/1"));
+        Assertions.assertNull(cache.get("http://a.com/2"));
+        Assertions.assertNotNull(cache.get("http://a.com/3"));
+        Assertions.assertEquals(20, cache.getBytes());
+    }
+
+    @Test
+    public void testBodyClosedBeforeItsEndIsNotCachedAndCacheIsReloaded() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 1000);
+        try (InputStream body = cache.cacheAsRead("http://a.com/partial", "\"e\"", null, null,
+                new ByteArrayInputStream("partial body".getBytes(StandardCharsets.UTF_8)))) {
+            Assertions.assertEquals('p', body.read());
+        }
+        Assertions.assertNull(cache.get("http://a.com/partial"));
+        cache("http://a.com/x", "kept across runs", cache);
+
+        DiskResponseCache reloaded = new DiskResponseCache(directory, 1000);
+        Assertions.assertEquals(1, reloaded.size());
+        DiskResponseCache.Entry entry = reloaded.get("http://a.com/x");
+        Assertions.assertEquals("\"etag\"", entry.getEtag());
+        Assertions.assertEquals("text/html", entry.getContentType());
+        Assertions.assertEquals("kept across runs", read(reloaded, "http://a.com/x"));
+        Assertions.assertEquals(0, countFiles(directory.resolve("tmp")));
+    }
+
+    private static void cache(String url, String body, DiskResponseCache cache) throws IOException {
+        try (InputStream in = cache.cacheAsRead(url, "\"etag\"", "Wed, 21 Oct 2015 07:28:00 GMT", "text/html",
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)))) {
+            byte[] buffer = new byte[4];
+            while (in.read(buffer) != -1) {
+                //read to the end
+            }
+        }
+    }
+
+    private static String read(DiskResponseCache cache, String url) throws IOException {
+        try (InputStream in = cache.openBody(cache.get(url))) {
+            return new String(readAll(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static long countFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
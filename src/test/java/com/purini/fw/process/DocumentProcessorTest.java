@@ -12,9 +12,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class DocumentProcessorTest {
 
@@ -38,6 +41,98 @@ public class DocumentProcessorTest {
 
     }
 
+    @Test
+    public void testFetcherIsBlockedWhenBacklogIsFull() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch processingHeld = new CountDownLatch(1);
+        try {
+            executor.submit(() -> processingHeld.await(10, TimeUnit.SECONDS)); //holds up processing
+            ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+            ProcessingBacklog backlog = new ProcessingBacklog(2, Long.MAX_VALUE);
+            WordCountStoreService stores = new WordCountStoreService();
+            DocumentProcessor documentProcessor = new DocumentProcessor(completionService, stores, backlog, BackPressurePolicy.BLOCK);
+
+            documentProcessor.submitAsync(document("first words"));
+            documentProcessor.submitAsync(document("second words"));
+            Assertions.assertEquals(2, backlog.getDocuments());
+
+            CountDownLatch thirdSubmitted = new CountDownLatch(1);
+            Thread fetcher = new Thread(() -> {
+                documentProcessor.submitAsync(document("third words"));
+                thirdSubmitted.countDown();
+            });
+            fetcher.start();
+            Assertions.assertFalse(thirdSubmitted.await(200, TimeUnit.MILLISECONDS), "fetcher should wait while the backlog is full");
+
+            processingHeld.countDown();
+            Assertions.assertTrue(thirdSubmitted.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                completionService.take().get();
+            }
+            Assertions.assertEquals(0, backlog.getDocuments());
+            Assertions.assertEquals(0, backlog.getBytes());
+            Assertions.assertEquals(Integer.valueOf(3), stores.getTopNWords(1).get(0).getRight());
+        } finally {
+            processingHeld.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallerRunsWhenBacklogIsFull() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch processingHeld = new CountDownLatch(1);
+        try {
+            executor.submit(() -> processingHeld.await(10, TimeUnit.SECONDS));
+            ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+            ProcessingBacklog backlog = new ProcessingBacklog(1, Long.MAX_VALUE);
+            WordCountStoreService stores = new WordCountStoreService();
+            DocumentProcessor documentProcessor = new DocumentProcessor(completionService, stores, backlog, BackPressurePolicy.CALLER_RUNS);
+
+            documentProcessor.submitAsync(document("queued"));
+            documentProcessor.submitAsync(document("processed right away"));
+            Assertions.assertEquals("right", stores.getTopNWordPairs(1).get(0).getLeft().getWords().get(1),
+                    "processed on the caller while processing is held up");
+
+            processingHeld.countDown();
+            for (int i = 0; i < 2; i++) {
+                completionService.take().get();
+            }
+            Assertions.assertEquals(0, backlog.getDocuments());
+        } finally {
+            processingHeld.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBacklogBoundByBytes() {
+        ProcessingBacklog backlog = new ProcessingBacklog(100, 1000);
+        Assertions.assertTrue(backlog.tryAdd(5000)); //let in when empty even if bigger than the limit
+        Assertions.assertFalse(backlog.tryAdd(1));
+        backlog.remove(5000);
+        Assertions.assertTrue(backlog.tryAdd(600));
+        Assertions.assertFalse(backlog.tryAdd(600));
+        Assertions.assertTrue(backlog.tryAdd(400));
+        Assertions.assertTrue(DocumentProcessor.estimateSize(document("some text")) > 0);
+    }
+
+    @Test
+    public void testRejectedDocumentGivesItsRoomBack() {
+        final ExecutorService executor = Executors.newFixedThreadPool(1);
+        executor.shutdown();
+        ProcessingBacklog backlog = new ProcessingBacklog(2, Long.MAX_VALUE);
+        DocumentProcessor documentProcessor = new DocumentProcessor(new ExecutorCompletionService<>(executor),
+                new WordCountStoreService(), backlog, BackPressurePolicy.BLOCK);
+        Assertions.assertThrows(RejectedExecutionException.class, () -> documentProcessor.submitAsync(document("text")));
+        Assertions.assertEquals(0, backlog.getDocuments());
+        Assertions.assertEquals(0, backlog.getBytes());
+    }
+
+    private static Document document(String text) {
+        return Jsoup.parse("<html><body><p>" + text + "</p></body></html>");
+    }
+
     private static String getFileAsString(String filePath) throws IOException {
         return String.join("", Files.readAllLines(Paths.get(UrlTraverserTest.class.getClassLoader().getResource(filePath).getFile())));
     }
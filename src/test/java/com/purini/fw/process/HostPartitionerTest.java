@@ -0,0 +1,38 @@
+package com.purini.fw.process;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HostPartitionerTest {
+
+    @Test
+    public void testUrlsOfAHostGoToOnePartition() {
+        HostPartitioner partitioner = new HostPartitioner(4);
+        int partition = partitioner.partitionOf("http://www.abc.com/x");
+        Assertions.assertEquals(partition, partitioner.partitionOf("https://WWW.abc.com:8443/y?q=1"));
+        Assertions.assertEquals(partition, partitioner.partitionOf("http://user@www.abc.com/z#top"));
+        Assertions.assertEquals(0, new HostPartitioner(1).partitionOf("http://www.abc.com/x"));
+    }
+
+    @Test
+    public void testHostsAreSpreadAndMostlyStayWhenAPartitionIsAdded() {
+        HostPartitioner four = new HostPartitioner(4);
+        HostPartitioner five = new HostPartitioner(5);
+        int[] hostsPerPartition = new int[4];
+        int moved = 0;
+        for (int i = 0; i < 10000; i++) {
+            String url = "http://host" + i + ".com/";
+            int partition = four.partitionOf(url);
+            hostsPerPartition[partition]++;
+            int newPartition = five.partitionOf(url);
+            if (newPartition != partition) {
+                moved++;
+                Assertions.assertEquals(4, newPartition, "hosts only move to the new partition");
+            }
+        }
+        for (int hosts : hostsPerPartition) {
+            Assertions.assertTrue(hosts > 1500 && hosts < 3500, "hosts per partition " + hosts);
+        }
+        Assertions.assertTrue(moved > 1000 && moved < 3000, "moved " + moved);
+    }
+}
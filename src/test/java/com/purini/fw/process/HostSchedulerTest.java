@@ -0,0 +1,140 @@
+package com.purini.fw.process;
+
+import org.jsoup.HttpStatusException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HostSchedulerTest {
+
+    @Test
+    public void testConcurrentRequestsPerHostAreCapped() throws Exception {
+        HostScheduler scheduler = new HostScheduler(2, 0, 0, 10, 1000, 60000);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger otherHostRunning = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final int page = i;
+                results.add(executor.submit(() -> scheduler.execute("http://a.com/" + page, () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(50);
+                    running.decrementAndGet();
+                    return "page" + page;
+                })));
+            }
+            //another host isn't held up by the permits of the first one
+            scheduler.execute("http://b.com/", () -> otherHostRunning.incrementAndGet());
+            Assertions.assertEquals(1, otherHostRunning.get());
+            for (int i = 0; i < 8; i++) {
+                Assertions.assertEquals("page" + i, results.get(i).get());
+            }
+            Assertions.assertEquals(2, maxRunning.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRequestsPerSecondPerHost() throws IOException {
+        HostScheduler scheduler = new HostScheduler(8, 20, 0, 10, 1000, 60000);
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            scheduler.execute("http://a.com/" + i, () -> null);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        Assertions.assertTrue(elapsedMillis >= 200, "6 requests at 20 a second took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void testThrottledRequestIsToBeRetriedLater() throws IOException {
+        HostScheduler scheduler = new HostScheduler(2, 0, 3, 10, 1000, 60000);
+        AtomicInteger attempts = new AtomicInteger();
+        HostScheduler.Request<String> request = () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new HttpRetryAfterException("throttled", 429, "http://a.com/", "1");
+            } else if (attempts.get() == 2) {
+                throw new HttpStatusException("unavailable", 503, "http://a.com/");
+            }
+            return "page";
+        };
+        RetryLaterException retryAfter = Assertions.assertThrows(RetryLaterException.class,
+                () -> scheduler.execute("http://a.com/", request));
+        Assertions.assertEquals(1000, retryAfter.getDelayMillis());
+        //the Retry-After holds back the other requests to the host, without making them
+        RetryLaterException heldBack = Assertions.assertThrows(RetryLaterException.class,
+                () -> scheduler.execute("http://a.com/other", () -> "other"));
+        Assertions.assertTrue(heldBack.getDelayMillis() > 0 && heldBack.getDelayMillis() <= 1000);
+        Assertions.assertEquals("other", scheduler.execute("http://b.com/", () -> "other"));
+        sleep(retryAfter.getDelayMillis());
+
+        RetryLaterException backoff = Assertions.assertThrows(RetryLaterException.class,
+                () -> scheduler.execute("http://a.com/", request));
+        Assertions.assertTrue(backoff.getDelayMillis() >= 5 && backoff.getDelayMillis() <= 30, "backoff " + backoff.getDelayMillis());
+        Assertions.assertEquals("page", scheduler.execute("http://a.com/", request));
+        Assertions.assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void testGivesUpAfterRetriesAndOnOtherErrors() throws IOException {
+        HostScheduler scheduler = new HostScheduler(2, 0, 2, 1, 1000, 60000);
+        AtomicInteger attempts = new AtomicInteger();
+        HostScheduler.Request<String> unavailable = () -> {
+            attempts.incrementAndGet();
+            throw new HttpStatusException("unavailable", 503, "http://a.com/");
+        };
+        for (int retry = 0; retry < 2; retry++) {
+            Assertions.assertThrows(RetryLaterException.class, () -> scheduler.execute("http://a.com/", unavailable));
+        }
+        HttpStatusException givenUp = Assertions.assertThrows(HttpStatusException.class, () -> scheduler.execute("http://a.com/", unavailable));
+        Assertions.assertEquals(503, givenUp.getStatusCode());
+        Assertions.assertEquals(3, attempts.get());
+
+        attempts.set(0);
+        Assertions.assertThrows(HttpStatusException.class, () -> scheduler.execute("http://a.com/", () -> {
+            attempts.incrementAndGet();
+            throw new HttpStatusException("not found", 404, "http://a.com/");
+        }));
+        Assertions.assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testIdleHostsAreEvicted() throws IOException {
+        HostScheduler scheduler = new HostScheduler(2, 10, 3, 1, 1000, 0);
+        for (int i = 0; i < 5; i++) {
+            scheduler.execute("http://host" + i + ".com/", () -> "page");
+        }
+        Assertions.assertTrue(scheduler.hostCount() <= 1, "hosts kept " + scheduler.hostCount());
+        //a host held back by a Retry-After is kept until it is due
+        Assertions.assertThrows(RetryLaterException.class, () -> scheduler.execute("http://a.com/", () -> {
+            throw new HttpRetryAfterException("throttled", 429, "http://a.com/", "60");
+        }));
+        scheduler.execute("http://b.com/", () -> "page");
+        Assertions.assertThrows(RetryLaterException.class, () -> scheduler.execute("http://a.com/", () -> "page"));
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        Assertions.assertEquals(120_000, HostScheduler.parseRetryAfterMillis("120", 0));
+        Assertions.assertEquals(5_000, HostScheduler.parseRetryAfterMillis("Wed, 21 Oct 2015 07:28:05 GMT", 1445412480000L));
+        Assertions.assertEquals(0, HostScheduler.parseRetryAfterMillis("Wed, 21 Oct 2015 07:28:00 GMT", 1445412490000L));
+        Assertions.assertEquals(-1, HostScheduler.parseRetryAfterMillis("soon", 0));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.purini.fw.process;
+
+import com.purini.fw.utils.HtmlScanner;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class HttpClientDocumentProviderTest {
+
+    private static final String PAGE = "<html><head><title>Title</title></head><body><p>Hello <a href=\"/next\">next</a></p></body></html>";
+
+    private HttpServer server;
+    private String baseUrl;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @TempDir
+    Path cacheDirectory;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/page", exchange -> respond(exchange, 200, "text/html; charset=UTF-8", encode(exchange, PAGE)));
+        server.createContext("/big", exchange -> respond(exchange, 200, "text/html", encode(exchange, repeat("<p>big page</p>", 10000))));
+        server.createContext("/missing", exchange -> respond(exchange, 404, "text/html", "not found".getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/throttled", exchange -> {
+            exchange.getResponseHeaders().set("Retry-After", "7");
+            respond(exchange, 429, "text/html", "slow down".getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/cached", exchange -> {
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+            } else {
+                respond(exchange, 200, "text/html; charset=UTF-8", encode(exchange, PAGE));
+            }
+        });
+        server.createContext("/pdf", exchange -> respond(exchange, 200, "application/pdf", new byte[100]));
+        server.createContext("/redirect", exchange -> {
+            exchange.getResponseHeaders().set("Location", "/page");
+            respond(exchange, 302, "text/html", "moved".getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/notModified", exchange -> {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+        });
+        server.createContext("/nowhere", exchange -> respond(exchange, 302, "text/html", "moved".getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "text/html", PAGE.getBytes(StandardCharsets.UTF_8));
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCompressedPagesAreDecoded() throws IOException {
+        for (String encoding : new String[]{"gzip", "deflate", ""}) {
+            Document document = provider(encoding, 1024 * 1024).getDocument(baseUrl + "/page");
+            Assertions.assertEquals("Hello next", document.body().text(), encoding);
+            Assertions.assertEquals(baseUrl + "/next", document.select("a").first().absUrl("href"));
+        }
+    }
+
+    @Test
+    public void testConnectionIsKeptAlive() throws IOException {
+        HttpClientDocumentProvider provider = provider("gzip", 1024 * 1024);
+        for (int i = 0; i < 5; i++) {
+            provider.getDocument(baseUrl + "/page");
+        }
+        provider.getDocument(baseUrl + "/redirect");
+        Assertions.assertEquals(1, clientPorts.size(), "all requests over one connection");
+    }
+
+    @Test
+    public void testRedirectIsFollowed() throws IOException {
+        Document document = provider("gzip", 1024 * 1024).getDocument(baseUrl + "/redirect");
+        Assertions.assertEquals(baseUrl + "/page", document.location());
+        Assertions.assertEquals("Title", document.title());
+    }
+
+    @Test
+    public void testLimitsAndErrors() {
+        Assertions.assertThrows(IOException.class, () -> provider("", 1000).getDocument(baseUrl + "/big"));
+        IOException decodedTooBig = Assertions.assertThrows(IOException.class, () -> provider("gzip", 1000).getDocument(baseUrl + "/big"));
+        Assertions.assertTrue(decodedTooBig.getMessage().contains("exceeds"));
+        HttpStatusException notFound = Assertions.assertThrows(HttpStatusException.class,
+                () -> provider("gzip", 1000).getDocument(baseUrl + "/missing"));
+        Assertions.assertEquals(404, notFound.getStatusCode());
+        HttpRetryAfterException throttled = Assertions.assertThrows(HttpRetryAfterException.class,
+                () -> provider("gzip", 1000).getDocument(baseUrl + "/throttled"));
+        Assertions.assertEquals(429, throttled.getStatusCode());
+        Assertions.assertEquals("7", throttled.getRetryAfter());
+        Assertions.assertThrows(UnsupportedMimeTypeException.class, () -> provider("gzip", 1000).getDocument(baseUrl + "/pdf"));
+        HttpStatusException unsolicitedNotModified = Assertions.assertThrows(HttpStatusException.class,
+                () -> provider("gzip", 1000).getDocument(baseUrl + "/notModified"));
+        Assertions.assertEquals(304, unsolicitedNotModified.getStatusCode());
+        HttpStatusException redirectWithoutLocation = Assertions.assertThrows(HttpStatusException.class,
+                () -> provider("gzip", 1000).getDocument(baseUrl + "/nowhere"));
+        Assertions.assertEquals(302, redirectWithoutLocation.getStatusCode());
+        Assertions.assertThrows(SocketTimeoutException.class,
+                () -> new HttpClientDocumentProvider(1000, 200, 1000, "", "test").getDocument(baseUrl + "/slow"));
+    }
+
+    @Test
+    public void testStreamingOverHttpClient() throws IOException {
+        List<String> texts = new ArrayList<>();
+        List<String> links = new ArrayList<>();
+        String baseUri = new StreamingDocumentProvider(provider("gzip", 1024 * 1024), null).scanDocument(baseUrl + "/redirect",
+                new HtmlScanner.Handler() {
+                    @Override
+                    public void text(String text) {
+                        texts.add(text);
+                    }
+
+                    @Override
+                    public void link(String href) {
+                        links.add(href);
+                    }
+                });
+        Assertions.assertEquals(baseUrl + "/page", baseUri);
+        Assertions.assertTrue(texts.contains("Hello"));
+        Assertions.assertEquals(Collections.singletonList("/next"), links);
+    }
+
+    @Test
+    public void testNotModifiedPageIsServedFromCache() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(cacheDirectory, 1024 * 1024);
+        HttpClientDocumentProvider provider = new HttpClientDocumentProvider(1000, 5000, 1024 * 1024, "gzip", "test", cache);
+        Assertions.assertEquals("Hello next", provider.getDocument(baseUrl + "/cached").body().text());
+        Assertions.assertEquals(0, notModified.get());
+        Assertions.assertEquals(1, cache.size());
+
+        //a later run, with the cache of the earlier one
+        HttpClientDocumentProvider nextRun = new HttpClientDocumentProvider(1000, 5000, 1024 * 1024, "gzip", "test",
+                new DiskResponseCache(cacheDirectory, 1024 * 1024));
+        Document document = nextRun.getDocument(baseUrl + "/cached");
+        Assertions.assertEquals(1, notModified.get());
+        Assertions.assertEquals("Hello next", document.body().text());
+        Assertions.assertEquals(baseUrl + "/next", document.select("a").first().absUrl("href"));
+
+        //pages without validators aren't cached
+        nextRun.getDocument(baseUrl + "/page");
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    private static HttpClientDocumentProvider provider(String acceptEncoding, long maxBodyBytes) {
+        return new HttpClientDocumentProvider(1000, 5000, maxBodyBytes, acceptEncoding, "test");
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Compresses the page as asked for by the Accept-Encoding header
+     */
+    private static byte[] encode(HttpExchange exchange, String page) throws IOException {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        byte[] bytes = page.getBytes(StandardCharsets.UTF_8);
+        if (acceptEncoding == null) {
+            return bytes;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        if (acceptEncoding.startsWith("gzip")) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            try (OutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(bytes);
+            }
+        } else if (acceptEncoding.startsWith("deflate")) {
+            exchange.getResponseHeaders().set("Content-Encoding", "deflate");
+            try (OutputStream out = new DeflaterOutputStream(compressed)) {
+                out.write(bytes);
+            }
+        } else {
+            return bytes;
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            repeated.append(s);
+        }
+        return repeated.toString();
+    }
+}
@@ -0,0 +1,134 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordPair;
+import com.purini.fw.utils.TextToWordUtil;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InternedWordCountStoreTest {
+
+    /**
+     * Shallow size of a String of "word" and up to 4 digits along with its byte[], as of compressed oops
+     */
+    private static final int STRING_BYTES = 24 + 24;
+
+    @Test
+    public void testWord() {
+        InternedWordCountStore<Word> wordCountStore = new InternedWordCountStore<>(Word::fromWords);
+        String[] words = {"This", "is", "a", "test", "with", "A", "Test", "in", "test"};
+        wordCountStore.addWords(Arrays.stream(words).map(Word::new).collect(Collectors.toList()));
+        List<Pair<Word, Integer>> wordFrequency = wordCountStore.getTopNWords(3);
+
+        assertEquals(6, wordCountStore.size());
+        assertEquals(3, wordFrequency.size());
+        assertEquals(Pair.of(new Word("test"), 3), wordFrequency.get(0)); //last occurrence wins
+        assertEquals(Pair.of(new Word("A"), 2), wordFrequency.get(1)); //last occurrence wins
+        assertEquals(Pair.of(new Word("in"), 1), wordFrequency.get(2)); //ties in alphabetical order
+    }
+
+    @Test
+    public void testWordPair() {
+        InternedWordCountStore<WordPair> wordCountStore = new InternedWordCountStore<>(WordPair::fromWords);
+        String[] words = {"This", "is", "a", "Test", "for", "a", "test", "in", "test"};
+        wordCountStore.addWords(TextToWordUtil.toWordPairs(Arrays.stream(words).map(Word::new).collect(Collectors.toList())));
+        List<Pair<WordPair, Integer>> wordFrequency = wordCountStore.getTopNWords(10);
+
+        assertEquals(7, wordFrequency.size());
+        assertEquals(Pair.of(new WordPair("a", "test"), 2), wordFrequency.get(0)); //last one wins
+        assertEquals(Pair.of(new WordPair("for", "a"), 1), wordFrequency.get(1)); //ties in alphabetical order
+    }
+
+    @Test
+    public void testSameResultsAsSortedStore() {
+        List<Word> words = generateWords(30000, 500, new Random(11));
+        List<WordPair> wordPairs = TextToWordUtil.toWordPairs(words);
+        //pairs whose concatenated values would order differently than their first words
+        wordPairs.addAll(Arrays.asList(new WordPair("ab", "c"), new WordPair("a", "zz"), new WordPair("a-b", "c"),
+                new WordPair("a", "b\u0001"), new WordPair("a\u0001", "b")));
+
+        WordCountStore<Word> sortedStore = new WordCountStore<>();
+        InternedWordCountStore<Word> internedStore = new InternedWordCountStore<>(Word::fromWords);
+        sortedStore.addWords(words);
+        internedStore.addWords(words);
+        for (int n : new int[]{1, 10, 100, 10000}) {
+            assertEquals(sortedStore.getTopNWords(n), internedStore.getTopNWords(n));
+        }
+
+        WordCountStore<WordPair> sortedPairStore = new WordCountStore<>();
+        InternedWordCountStore<WordPair> internedPairStore = new InternedWordCountStore<>(WordPair::fromWords);
+        sortedPairStore.addWords(wordPairs);
+        internedPairStore.addWords(wordPairs);
+        assertEquals(sortedPairStore.getTopNWords(100000), internedPairStore.getTopNWords(100000));
+    }
+
+    @Test
+    public void testWordsAreInternedOnceForAllPairs() {
+        final int pairCount = 200000;
+        InternedWordCountStore<WordPair> internedStore = new InternedWordCountStore<>(WordPair::fromWords);
+        addRandomPairs(internedStore, pairCount, new Random(3));
+
+        Set<WordPair> distinctPairs = new HashSet<>();
+        Random random = new Random(3);
+        for (int i = 0; i < pairCount; i++) {
+            distinctPairs.add(new WordPair("word" + random.nextInt(2000), "word" + random.nextInt(2000)));
+        }
+        assertEquals(distinctPairs.size(), internedStore.size());
+        //every pair refers to its words by id: 2000 lower case forms and 2000 original ones (Word<n>),
+        //however many pairs and fresh copies of the strings there are
+        assertEquals(4000, internedStore.termCount());
+    }
+
+    @Test
+    public void testBytesPerPairVersusSortedStore() {
+        final int pairCount = 200000;
+        InternedWordCountStore<WordPair> internedStore = new InternedWordCountStore<>(WordPair::fromWords);
+        addRandomPairs(internedStore, pairCount, new Random(3));
+        final int pairs = internedStore.size();
+
+        //interned: the slots of the table, plus the dictionary shared by all the pairs,
+        //i.e. a String (24 bytes and its byte[] of 16 bytes and "word<n>") and about 12 bytes of index a term
+        final long tableBytes = (long) internedStore.tableCapacity() * CountTable.SLOT_BYTES;
+        final long dictionaryBytes = internedStore.termCount() * (STRING_BYTES + 12L);
+        final double internedBytesPerPair = (double) (tableBytes + dictionaryBytes) / pairs;
+
+        //sorted, at the least: HashMap node (32) and boxed count (16) for the lower case pair (24) and its Strings,
+        //TreeMap entry (40) and WordInfo (24) in the multimap for the original pair (24) and its Strings,
+        //as of compressed oops, the Strings being fresh copies of the crawled text
+        final long sortedBytesPerPair = 32 + 16 + 24 + 2 * STRING_BYTES + 40 + 24 + 24 + 2 * STRING_BYTES;
+
+        assertTrue(tableBytes <= 2 * pairs * CountTable.SLOT_BYTES / 0.75, "at most 53 bytes a pair in the table");
+        assertTrue(internedBytesPerPair < 40, "about 36 bytes a pair, found " + internedBytesPerPair);
+        assertTrue(internedBytesPerPair * 7 < sortedBytesPerPair,
+                internedBytesPerPair + " bytes a pair interned against " + sortedBytesPerPair + " sorted");
+    }
+
+    /**
+     * Adds pairs made of a fresh copy of the strings for every occurrence, as would be the case with crawled text
+     */
+    private static void addRandomPairs(WordStore<WordPair> store, int pairCount, Random random) {
+        for (int i = 0; i < pairCount; i++) {
+            store.addWord(new WordPair(new String("Word" + random.nextInt(2000)), new String("word" + random.nextInt(2000))));
+        }
+    }
+
+    private static List<Word> generateWords(int count, int distinct, Random random) {
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int id = (int) Math.abs(random.nextGaussian() * distinct);
+            words.add(new Word(random.nextBoolean() ? "Word" + id : "word" + id));
+        }
+        return words;
+    }
+}
@@ -0,0 +1,106 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordPair;
+import com.purini.fw.utils.TextToWordUtil;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class OffHeapWordCountStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testWordInDirectMemory() {
+        OffHeapWordCountStore<Word> wordCountStore = new OffHeapWordCountStore<>(Word::fromWords, null);
+        String[] words = {"This", "is", "a", "test", "with", "A", "Test", "in", "test", "über", "Über", "naïve"};
+        wordCountStore.addWords(Arrays.stream(words).map(Word::new).collect(Collectors.toList()));
+        List<Pair<Word, Integer>> wordFrequency = wordCountStore.getTopNWords(4);
+
+        assertEquals(4, wordFrequency.size());
+        assertEquals(Pair.of(new Word("test"), 3), wordFrequency.get(0)); //last occurrence wins
+        assertEquals(Pair.of(new Word("A"), 2), wordFrequency.get(1)); //last occurrence wins
+        assertEquals(Pair.of(new Word("Über"), 2), wordFrequency.get(2));
+        assertEquals(Pair.of(new Word("in"), 1), wordFrequency.get(3)); //ties in alphabetical order
+    }
+
+    @Test
+    public void testSameResultsAsSortedStoreInMappedFiles() {
+        Random random = new Random(5);
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            int id = (int) Math.abs(random.nextGaussian() * 2000);
+            words.add(new Word(random.nextBoolean() ? "Wörd" + id : "wörd" + id));
+        }
+        List<WordPair> wordPairs = TextToWordUtil.toWordPairs(words);
+
+        WordCountStore<Word> sortedStore = new WordCountStore<>();
+        OffHeapWordCountStore<Word> offHeapStore = new OffHeapWordCountStore<>(Word::fromWords, tempDir);
+        sortedStore.addWords(words);
+        offHeapStore.addWords(words);
+        assertEquals(sortedStore.getTopNWords(100000), offHeapStore.getTopNWords(100000));
+
+        WordCountStore<WordPair> sortedPairStore = new WordCountStore<>();
+        OffHeapWordCountStore<WordPair> offHeapPairStore = new OffHeapWordCountStore<>(WordPair::fromWords, tempDir);
+        sortedPairStore.addWords(wordPairs);
+        offHeapPairStore.addWords(wordPairs);
+        assertEquals(sortedPairStore.getTopNWords(100), offHeapPairStore.getTopNWords(100));
+        assertEquals(sortedPairStore.getTopNWords(100000), offHeapPairStore.getTopNWords(100000));
+    }
+
+    @Test
+    public void testTermDictionary() {
+        OffHeapTermDictionary dictionary = new OffHeapTermDictionary(tempDir);
+        StringBuilder longTerm = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            longTerm.append((char) ('a' + i % 26));
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, dictionary.intern("term-ü" + i));
+        }
+        assertEquals(5000, dictionary.intern(longTerm.toString()));
+        assertEquals(5001, dictionary.size());
+        assertEquals(42, dictionary.intern("term-ü42"));
+        assertEquals(4999, dictionary.idOf("term-ü4999"));
+        assertEquals(TermDictionary.NO_ID, dictionary.idOf("missing"));
+        assertEquals("term-ü123", dictionary.term(123));
+        assertEquals(longTerm.toString(), dictionary.term(5000));
+    }
+
+    @Test
+    public void testReleasedMemoryCannotBeUsed() {
+        OffHeapCountTable table = new OffHeapCountTable(1024, tempDir);
+        table.set(7, 42L, 3, 43L);
+        assertEquals(3, table.count(7));
+        table.release();
+        table.release(); //twice does nothing
+        assertThrows(NullPointerException.class, () -> table.count(7));
+    }
+
+    @Test
+    public void testClosedStoreReleasesItsMemory() {
+        OffHeapWordCountStore<Word> wordCountStore = new OffHeapWordCountStore<>(Word::fromWords, null);
+        wordCountStore.addWords(Arrays.asList(new Word("quantum"), new Word("Gravity")));
+        assertEquals(2, wordCountStore.getTopNWords(2).size());
+        wordCountStore.close();
+        //the final table and dictionary are freed right away rather than left to the garbage collector
+        assertThrows(NullPointerException.class, () -> wordCountStore.addWord(new Word("leap")));
+
+        WordCountStoreService stores = new WordCountStoreService(WordCountStoreType.OFF_HEAP, 2);
+        stores.addWords(Arrays.asList(new Word("quantum"), new Word("Gravity")));
+        stores.close();
+        assertThrows(NullPointerException.class, () -> stores.getTopNWords(2));
+    }
+}
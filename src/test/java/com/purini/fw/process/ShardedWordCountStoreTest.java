@@ -0,0 +1,78 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordPair;
+import com.purini.fw.utils.TextToWordUtil;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ShardedWordCountStoreTest {
+
+    @Test
+    public void testSameResultsAsSingleStore() {
+        String[] words = {"This", "is", "a", "test", "with", "A", "Test", "in", "test", "of", "the", "sharded", "store", "in", "a", "test"};
+        List<Word> wordList = Arrays.stream(words).map(Word::new).collect(Collectors.toList());
+
+        WordCountStore<Word> singleStore = new WordCountStore<>();
+        singleStore.addWords(wordList);
+        ShardedWordCountStore<Word> shardedStore = new ShardedWordCountStore<>(4, WordCountStore::new);
+        shardedStore.addWords(wordList);
+
+        assertEquals(singleStore.getTopNWords(100), shardedStore.getTopNWords(100));
+        assertEquals(singleStore.getTopNWords(3), shardedStore.getTopNWords(3));
+        assertEquals(Pair.of(new Word("test"), 4), shardedStore.getTopNWords(1).get(0));
+    }
+
+    @Test
+    public void testWordPairs() {
+        String[] words = {"This", "is", "a", "Test", "for", "a", "test", "in", "test"};
+        List<WordPair> wordPairs = TextToWordUtil.toWordPairs(Arrays.stream(words).map(Word::new).collect(Collectors.toList()));
+
+        WordCountStore<WordPair> singleStore = new WordCountStore<>();
+        singleStore.addWords(wordPairs);
+        ShardedWordCountStore<WordPair> shardedStore = new ShardedWordCountStore<>(3, WordCountStore::new);
+        shardedStore.addWords(wordPairs);
+
+        assertEquals(singleStore.getTopNWords(10), shardedStore.getTopNWords(10));
+        assertEquals(Pair.of(new WordPair("a", "test"), 2), shardedStore.getTopNWords(10).get(0));
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        final int threads = 8;
+        final int iterations = 2000;
+        ShardedWordCountStore<Word> shardedStore = new ShardedWordCountStore<>(16, WordCountStore::new);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < iterations; i++) {
+                        shardedStore.addWord(new Word("word" + (i % 50)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Pair<Word, Integer>> topWords = shardedStore.getTopNWords(100);
+        Map<Word, Integer> wordCountMap = topWords.stream().collect(Collectors.toMap(Pair::getLeft, Pair::getRight));
+        assertEquals(50, wordCountMap.size());
+        wordCountMap.values().forEach(count -> assertEquals(threads * iterations / 50, count));
+    }
+}
@@ -1,5 +1,6 @@
 package com.purini.fw.process;
 
+import com.purini.fw.utils.HtmlScanner;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.junit.jupiter.api.Assertions;
@@ -9,8 +10,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.Mockito.*;
 
@@ -50,9 +64,9 @@ public class UrlTraverserTest {
     public void testTraversal() throws IOException {
 
         DocumentProcessor documentProcessor = mock(DocumentProcessor.class);
-        DocumentProvider documentProvider = mock(DocumentProvider.class);
+        DocumentProvider documentProvider = mockDocumentProvider(DocumentProvider.class);
 
-        doNothing().when(documentProcessor).submitAsync(any(Document.class));
+        doNothing().when(documentProcessor).submitAsync(anyString(), any(Document.class));
         when(documentProvider.getDocument(url)).thenReturn(levelZeroDoc);
         when(documentProvider.getDocument(url + "/one1")).thenReturn(levelOne1Doc);
         when(documentProvider.getDocument(url + "/one2")).thenReturn(levelOne2Doc);
@@ -65,7 +79,187 @@ public class UrlTraverserTest {
         int noOfLinks = urlTraverser.traverse(url, 2);
         Assertions.assertEquals(6, noOfLinks);
         //Note three2 gets picked because zero is directly reference two & three1 doesn't as it is effectively more deep
-        verify(documentProcessor, times(6)).submitAsync(any(Document.class));
+        verify(documentProcessor, times(6)).submitAsync(anyString(), any(Document.class));
+    }
+
+    @Test
+    public void testStopSkipsTheRestOfTheTraversal() throws IOException {
+
+        DocumentProcessor documentProcessor = mock(DocumentProcessor.class);
+        DocumentProvider documentProvider = mockDocumentProvider(DocumentProvider.class);
+        when(documentProvider.getDocument(anyString())).thenAnswer(invocation -> docsByUrl().get(invocation.<String>getArgument(0)));
+
+        UrlTraverser urlTraverser = new UrlTraverser(documentProcessor, true, documentProvider);
+        //stopped once the starting document is submitted, e.g. by a live top N that has converged
+        doAnswer(invocation -> {
+            urlTraverser.stop();
+            return null;
+        }).when(documentProcessor).submitAsync(anyString(), any(Document.class));
+
+        Assertions.assertEquals(1, urlTraverser.traverse(url, 2));
+        Assertions.assertTrue(urlTraverser.isStopped());
+        verify(documentProcessor, times(1)).submitAsync(anyString(), any(Document.class));
+        verify(documentProvider, times(1)).getDocument(anyString());
+    }
+
+    @Test
+    public void testTraversalFetchesOnFetchExecutor() throws IOException {
+
+        DocumentProcessor documentProcessor = mock(DocumentProcessor.class);
+        DocumentProvider documentProvider = mockDocumentProvider(DocumentProvider.class);
+        Set<String> fetchThreads = ConcurrentHashMap.newKeySet();
+
+        when(documentProvider.getDocument(anyString())).thenAnswer(invocation -> {
+            fetchThreads.add(Thread.currentThread().getName());
+            return docsByUrl().get(invocation.<String>getArgument(0));
+        });
+
+        ExecutorService fetchExecutor = FetchExecutors.newFetchExecutor(4, 10, false);
+        try {
+            UrlTraverser urlTraverser = new UrlTraverser(documentProcessor, true, documentProvider, fetchExecutor);
+            Assertions.assertEquals(6, urlTraverser.traverse(url, 2));
+        } finally {
+            fetchExecutor.shutdown();
+        }
+        Assertions.assertFalse(fetchThreads.isEmpty());
+        Assertions.assertTrue(fetchThreads.stream().allMatch(name -> name.startsWith("fetcher-")), fetchThreads.toString());
+    }
+
+    @Test
+    public void testUrlHeldBackByItsHostIsRequeued() throws IOException {
+
+        DocumentProcessor documentProcessor = mock(DocumentProcessor.class);
+        DocumentProvider documentProvider = mockDocumentProvider(DocumentProvider.class);
+        AtomicInteger throttled = new AtomicInteger();
+
+        when(documentProvider.getDocument(anyString())).thenAnswer(invocation -> {
+            String docUrl = invocation.getArgument(0);
+            if (docUrl.equals(url + "/one1") && throttled.getAndIncrement() == 0) {
+                throw new RetryLaterException("throttled", 50, null);
+            }
+            return docsByUrl().get(docUrl);
+        });
+
+        ExecutorService fetchExecutor = FetchExecutors.newFetchExecutor(4, 10, false);
+        try {
+            UrlTraverser urlTraverser = new UrlTraverser(documentProcessor, true, documentProvider, fetchExecutor);
+            Assertions.assertEquals(6, urlTraverser.traverse(url, 2));
+        } finally {
+            fetchExecutor.shutdown();
+        }
+        verify(documentProvider, times(2)).getDocument(url + "/one1");
+        verify(documentProcessor, times(6)).submitAsync(anyString(), any(Document.class));
+    }
+
+    @Test
+    public void testWholeLevelIsFetchedConcurrently() throws IOException {
+
+        DocumentProcessor documentProcessor = mock(DocumentProcessor.class);
+        DocumentProvider documentProvider = mockDocumentProvider(DocumentProvider.class);
+        //each of the 8 urls at depth 2 waits for all the others, so only passes if they are fetched together
+        //although they are linked from two different documents at depth 1
+        CountDownLatch levelTwoFetches = new CountDownLatch(8);
+
+        when(documentProvider.getDocument(anyString())).thenAnswer(invocation -> {
+            String docUrl = invocation.getArgument(0);
+            String path = docUrl.substring(url.length());
+            StringBuilder html = new StringBuilder("<html><body>");
+            if (path.isEmpty()) {
+                html.append("<a href=\"/a\">a</a><a href=\"/b\">b</a>");
+            } else if (path.length() == 2) {
+                for (int i = 0; i < 4; i++) {
+                    html.append("<a href=\"").append(path).append(i).append("\">x</a>");
+                }
+            } else {
+                levelTwoFetches.countDown();
+                if (!levelTwoFetches.await(10, TimeUnit.SECONDS)) {
+                    return null;
+                }
+            }
+            return Jsoup.parse(html.append("</body></html>").toString(), docUrl);
+        });
+
+        ExecutorService fetchExecutor = FetchExecutors.newFetchExecutor(8, 10, false);
+        try {
+            UrlTraverser urlTraverser = new UrlTraverser(documentProcessor, true, documentProvider, fetchExecutor);
+            Assertions.assertEquals(11, urlTraverser.traverse(url, 2));
+        } finally {
+            fetchExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStreamingGivesSameResultsAsDom() throws Exception {
+
+        DocumentProvider documentProvider = mockDocumentProvider(DocumentProvider.class);
+        when(documentProvider.getDocument(anyString())).thenAnswer(invocation -> docsByUrl().get(invocation.<String>getArgument(0)));
+
+        StreamingDocumentProvider streamingDocumentProvider = mockDocumentProvider(StreamingDocumentProvider.class);
+        when(streamingDocumentProvider.scanDocument(anyString(), any(HtmlScanner.Handler.class))).thenAnswer(invocation -> {
+            String docUrl = invocation.getArgument(0);
+            Document doc = docsByUrl().get(docUrl);
+            return HtmlScanner.scan(new StringReader(doc.outerHtml()), doc.baseUri(), invocation.getArgument(1));
+        });
+
+        Assertions.assertEquals(crawl(documentProvider), crawl(streamingDocumentProvider));
+    }
+
+    @Test
+    public void testSameUrlWrittenDifferentlyIsFetchedOnce() throws IOException {
+
+        DocumentProcessor documentProcessor = mock(DocumentProcessor.class);
+        DocumentProvider documentProvider = mockDocumentProvider(DocumentProvider.class);
+        when(documentProvider.getDocument(url)).thenReturn(Jsoup.parse("<html><body>" +
+                "<a href=\"page\">a</a><a href=\"/page#top\">b</a><a href=\"https://ZERO.com/page/\">c</a>" +
+                "<a href=\"http://zero.com:80/./x/../page?utm_source=mail\">d</a><a href=\"other?b=2&a=1\">e</a>" +
+                "<a href=\"other?a=1&b=2\">f</a></body></html>", url));
+        when(documentProvider.getDocument(url + "/page")).thenReturn(Jsoup.parse("<p>page</p>", url + "/page"));
+        when(documentProvider.getDocument(url + "/other?b=2&a=1")).thenReturn(Jsoup.parse("<p>other</p>", url + "/other"));
+
+        UrlTraverser urlTraverser = new UrlTraverser(documentProcessor, true, documentProvider);
+        Assertions.assertEquals(3, urlTraverser.traverse(url, 1));
+        verify(documentProvider, times(1)).getDocument(url + "/page");
+        //fetched as first written, the query parameters being sorted only to check it for being visited
+        verify(documentProvider, times(1)).getDocument(url + "/other?b=2&a=1");
+        verify(documentProvider, times(3)).getDocument(anyString());
+    }
+
+    /**
+     * Mock provider whose fetchPage is the real one, so that the pages come from the stubbed getDocument or scanDocument
+     */
+    private static <T extends DocumentProvider> T mockDocumentProvider(Class<T> providerClass) throws IOException {
+        T documentProvider = mock(providerClass);
+        when(documentProvider.fetchPage(anyString(), any(DocumentProvider.PageHandler.class))).thenCallRealMethod();
+        return documentProvider;
+    }
+
+    private static List<?> crawl(DocumentProvider documentProvider) throws Exception {
+        WordCountStoreService wordCountStoreService = new WordCountStoreService();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+            DocumentProcessor documentProcessor = new DocumentProcessor(completionService, wordCountStoreService);
+            int taskCount = new UrlTraverser(documentProcessor, true, documentProvider).traverse(url, 2);
+            Assertions.assertEquals(6, taskCount);
+            for (int i = 0; i < taskCount; i++) {
+                completionService.take().get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return Arrays.asList(wordCountStoreService.getTopNWords(100), wordCountStoreService.getTopNWordPairs(100));
+    }
+
+    private static Map<String, Document> docsByUrl() {
+        Map<String, Document> docsByUrl = new HashMap<>();
+        docsByUrl.put(url, levelZeroDoc);
+        docsByUrl.put(url + "/one1", levelOne1Doc);
+        docsByUrl.put(url + "/one2", levelOne2Doc);
+        docsByUrl.put(url + "/two1", levelTwo1Doc);
+        docsByUrl.put(url + "/two2", levelTwo2Doc);
+        docsByUrl.put(url + "/three1", levelThree1Doc);
+        docsByUrl.put(url + "/three2", levelThree2Doc);
+        return docsByUrl;
     }
 
     private static String getFileAsString(String filePath) throws IOException {
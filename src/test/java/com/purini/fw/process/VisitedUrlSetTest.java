@@ -0,0 +1,58 @@
+package com.purini.fw.process;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VisitedUrlSetTest {
+
+    @Test
+    public void testMarkVisited() {
+        for (VisitedUrlSet visited : new VisitedUrlSet[]{new VisitedUrlSet(0, 0.01), new VisitedUrlSet(1000, 0.01)}) {
+            Assertions.assertFalse(visited.isVisited("http://zero.com/one1"));
+            Assertions.assertTrue(visited.markVisited("http://zero.com/one1"));
+            Assertions.assertFalse(visited.markVisited("http://zero.com/one1"));
+            Assertions.assertTrue(visited.isVisited("http://zero.com/one1"));
+            Assertions.assertFalse(visited.isVisited("http://zero.com/one2"));
+            Assertions.assertEquals(1, visited.size());
+        }
+    }
+
+    @Test
+    public void testEachUrlIsMarkedOnceAcrossThreads() throws Exception {
+        final int urls = 100_000;
+        for (VisitedUrlSet visited : new VisitedUrlSet[]{new VisitedUrlSet(0, 0.01), new VisitedUrlSet(urls / 10, 0.01)}) {
+            AtomicInteger firstVisits = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    final int offset = t * 997;
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < urls; i++) {
+                            if (visited.markVisited("http://site.com/page" + ((i + offset) % urls))) {
+                                firstVisits.incrementAndGet();
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            Assertions.assertEquals(urls, firstVisits.get());
+            Assertions.assertEquals(urls, visited.size());
+            for (int i = 0; i < urls; i += 101) {
+                Assertions.assertTrue(visited.isVisited("http://site.com/page" + i));
+            }
+        }
+    }
+}
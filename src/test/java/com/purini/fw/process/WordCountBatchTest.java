@@ -0,0 +1,81 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordPair;
+import com.purini.fw.utils.TextToWordUtil;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WordCountBatchTest {
+
+    private static final String[] TEXTS = {
+            "The first technical break-through in quantum gravity!",
+            "Understanding quantum stuff is quite technical, so you first gotta learn from First.",
+            "'The human brain is of high plasticity', the human I reckon. Technical STUFF."};
+
+    @Test
+    public void testSameResultsAsAddingDirectly() {
+        for (WordCountStoreType storeType : WordCountStoreType.values()) {
+            WordCountStoreService direct = new WordCountStoreService(storeType, 4);
+            WordCountStoreService batched = new WordCountStoreService(storeType, 4);
+            WordCountBatch batch = batched.newBatch();
+            for (String text : TEXTS) {
+                List<Word> words = TextToWordUtil.toWords(text);
+                direct.addWords(words);
+                direct.addWordPairs(TextToWordUtil.toWordPairs(words));
+                batch.addWords(words);
+                batch.addWordPairs(TextToWordUtil.toWordPairs(words));
+            }
+            assertTrue(batched.getTopNWords(100).isEmpty(), "nothing is visible before commit");
+            batch.commit();
+
+            assertEquals(direct.getTopNWords(100), batched.getTopNWords(100), storeType.name());
+            assertEquals(direct.getTopNWordPairs(100), batched.getTopNWordPairs(100), storeType.name());
+        }
+    }
+
+    @Test
+    public void testAddTextSameAsAddingWordsAndPairs() {
+        String[] texts = Arrays.copyOf(TEXTS, TEXTS.length + 2);
+        texts[TEXTS.length] = "IT is in the IT of it, and it is IT. The IN of in";
+        texts[TEXTS.length + 1] = "";
+        for (WordCountStoreType storeType : WordCountStoreType.values()) {
+            WordCountStoreService lists = new WordCountStoreService(storeType, 4);
+            WordCountStoreService fused = new WordCountStoreService(storeType, 4);
+            WordCountBatch listsBatch = lists.newBatch();
+            WordCountBatch fusedBatch = fused.newBatch();
+            for (String text : texts) {
+                List<Word> words = TextToWordUtil.toWords(text);
+                listsBatch.addWords(words);
+                listsBatch.addWordPairs(TextToWordUtil.toWordPairs(words));
+                fusedBatch.addText(text);
+            }
+            listsBatch.commit();
+            fusedBatch.commit();
+
+            assertEquals(lists.getTopNWords(100), fused.getTopNWords(100), storeType.name());
+            assertEquals(lists.getTopNWordPairs(100), fused.getTopNWordPairs(100), storeType.name());
+        }
+    }
+
+    @Test
+    public void testLastOccurrenceWinsAcrossBatches() {
+        WordCountStoreService wordCountStoreService = new WordCountStoreService(WordCountStoreType.SORTED, 1);
+        WordCountBatch batch = wordCountStoreService.newBatch();
+        batch.addWords(Arrays.asList(new Word("Quantum"), new Word("quantum"), new Word("QUANTUM"), new Word("Quantum")));
+        batch.commit();
+        assertEquals(Pair.of(new Word("Quantum"), 4), wordCountStoreService.getTopNWords(1).get(0));
+
+        batch.addWords(Arrays.asList(new Word("quantum"), new Word("gravity")));
+        batch.addWordPairs(Arrays.asList(new WordPair("quantum", "gravity"), new WordPair("Quantum", "Gravity")));
+        batch.commit();
+        assertEquals(Pair.of(new Word("quantum"), 5), wordCountStoreService.getTopNWords(1).get(0));
+        assertEquals(Pair.of(new WordPair("Quantum", "Gravity"), 2), wordCountStoreService.getTopNWordPairs(1).get(0));
+    }
+}
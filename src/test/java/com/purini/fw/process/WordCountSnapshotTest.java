@@ -0,0 +1,112 @@
+package com.purini.fw.process;
+
+import com.purini.fw.domain.Word;
+import com.purini.fw.domain.WordPair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class WordCountSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testEveryStoreIsWrittenAndReadBack() throws IOException {
+        for (WordCountStoreType storeType : WordCountStoreType.values()) {
+            WordStore<Word> store = storeType.newStore(Word::fromWords);
+            for (int i = 0; i < 100; i++) {
+                store.addWord(new Word("word" + i), new Word("word" + i), i + 1);
+            }
+            store.addWord(new Word("Quantum"));
+            store.addWord(new Word("quantum"));
+            store.addWord(new Word("Quantum"));
+            Path file = directory.resolve(storeType + ".fwc");
+            WordCountSnapshot.write(store, file);
+
+            WordCountSnapshot snapshot = WordCountSnapshot.open(file);
+            Assertions.assertEquals(101, snapshot.size(), storeType.toString());
+            Assertions.assertEquals(3, snapshot.getCount(Collections.singletonList("QUANTUM")), storeType.toString());
+            Assertions.assertEquals(57, snapshot.getCount(Collections.singletonList("word56")), storeType.toString());
+            Assertions.assertEquals(0, snapshot.getCount(Collections.singletonList("word100")), storeType.toString());
+            Assertions.assertEquals(0, snapshot.getCount(Collections.singletonList("a")), storeType.toString());
+
+            WordStore<Word> loaded = new CountingWordCountStore<>();
+            snapshot.addTo(loaded, Word::fromWords);
+            Assertions.assertEquals(store.getTopNWords(200), loaded.getTopNWords(200), storeType.toString());
+            Assertions.assertTrue(loaded.getTopNWords(200).contains(Pair.of(new Word("Quantum"), 3)), storeType.toString());
+            Assertions.assertEquals(store.getTopNWords(10), snapshot.getTopN(10, Word::fromWords), storeType.toString());
+        }
+    }
+
+    @Test
+    public void testEntriesAreSortedAndPrefixCompressed() throws IOException {
+        WordStore<WordPair> store = new CountingWordCountStore<>();
+        List<String> expectedKeys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            store.addWord(new WordPair("international", "cooperation" + i));
+            expectedKeys.add("international cooperation" + i);
+        }
+        Collections.sort(expectedKeys);
+        Path file = directory.resolve("pairs.fwc");
+        WordCountSnapshot.write(store, file);
+        Assertions.assertTrue(Files.size(file) < 1000 * 10, "size " + Files.size(file));
+
+        List<String> keys = new ArrayList<>();
+        WordCountSnapshot.Cursor cursor = WordCountSnapshot.open(file).cursor();
+        while (cursor.next()) {
+            Assertions.assertEquals(2, cursor.getWords().size());
+            keys.add(String.join(" ", cursor.getWords()));
+        }
+        Assertions.assertEquals(expectedKeys, keys);
+        Assertions.assertEquals(1, WordCountSnapshot.open(file).getCount(Arrays.asList("International", "cooperation999")));
+    }
+
+    @Test
+    public void testMergeSumsCountsAndKeepsLastOriginalForm() throws IOException {
+        Path monday = snapshot("monday.fwc", "alpha", 2, "Beta", 1, "gamma", 4);
+        Path tuesday = snapshot("tuesday.fwc", "beta", 3, "delta", 1);
+        Path wednesday = snapshot("wednesday.fwc", "ALPHA", 5);
+        Path week = directory.resolve("week.fwc");
+        WordCountSnapshot.merge(Arrays.asList(monday, tuesday, wednesday), week);
+
+        WordCountSnapshot snapshot = WordCountSnapshot.open(week);
+        Assertions.assertEquals(4, snapshot.size());
+        WordStore<Word> store = new CountingWordCountStore<>();
+        snapshot.addTo(store, Word::fromWords);
+        Assertions.assertEquals(Arrays.asList(Pair.of(new Word("ALPHA"), 7), Pair.of(new Word("beta"), 4),
+                Pair.of(new Word("gamma"), 4), Pair.of(new Word("delta"), 1)), store.getTopNWords(10));
+
+        //written to a temporary file moved in place, replacing the snapshot there
+        WordCountSnapshot.merge(Arrays.asList(monday, tuesday), week);
+        Assertions.assertEquals(4, WordCountSnapshot.open(week).getCount(Collections.singletonList("beta")));
+        Assertions.assertEquals(2, WordCountSnapshot.open(week).getCount(Collections.singletonList("alpha")));
+        Assertions.assertFalse(Files.exists(directory.resolve("week.fwc.tmp")));
+    }
+
+    @Test
+    public void testOtherFileIsRejected() throws IOException {
+        Path file = Files.write(directory.resolve("other.fwc"), "not a snapshot at all, really".getBytes());
+        Assertions.assertThrows(IOException.class, () -> WordCountSnapshot.open(file));
+    }
+
+    private Path snapshot(String name, Object... wordCounts) throws IOException {
+        WordStore<Word> store = new CountingWordCountStore<>();
+        for (int i = 0; i < wordCounts.length; i += 2) {
+            Word word = new Word((String) wordCounts[i]);
+            store.addWord(word.toLowerCase(), word, (Integer) wordCounts[i + 1]);
+        }
+        Path file = directory.resolve(name);
+        WordCountSnapshot.write(store, file);
+        return file;
+    }
+}
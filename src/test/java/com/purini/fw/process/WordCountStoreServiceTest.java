@@ -6,11 +6,21 @@ import com.purini.fw.utils.TextToWordUtil;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class WordCountStoreServiceTest {
 
@@ -69,4 +79,98 @@ public class WordCountStoreServiceTest {
         assertEquals(1, wordCounts.get(1).getRight());
 
     }
+
+    @Test
+    public void testAllStoreTypesGiveSameResults() {
+        List<Word> words = TextToWordUtil.toWords("The first technical break-through in quantum gravity! " +
+                "Understanding quantum stuff is quite technical, so you first gotta learn from First.");
+        List<WordPair> wordPairs = TextToWordUtil.toWordPairs(words);
+        WordCountStoreService expected = new WordCountStoreService(WordCountStoreType.SORTED, 1);
+        expected.addWords(words);
+        expected.addWordPairs(wordPairs);
+
+        for (WordCountStoreType storeType : WordCountStoreType.values()) {
+            WordCountStoreService actual = new WordCountStoreService(storeType, 4);
+            actual.addWords(words);
+            actual.addWordPairs(wordPairs);
+            assertEquals(expected.getTopNWords(100), actual.getTopNWords(100), storeType.name());
+            assertEquals(expected.getTopNWordPairs(100), actual.getTopNWordPairs(100), storeType.name());
+            assertEquals(expected.getTopNWords(100), actual.snapshotTopNWords(100), storeType.name());
+            assertEquals(expected.getTopNWordPairs(100), actual.snapshotTopNWordPairs(100), storeType.name());
+        }
+        assertEquals(WordCountStoreType.OFF_HEAP, WordCountStoreType.fromName("offHeap"));
+    }
+
+    @Test
+    public void testInternedSnapshotsWhileWordsAreAddedToASingleShard() throws InterruptedException {
+        List<Word> words = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 50000; i++) {
+            words.add(new Word((random.nextBoolean() ? "Word" : "word") + random.nextInt(20000)));
+        }
+        WordCountStoreService expected = new WordCountStoreService(WordCountStoreType.SORTED, 1);
+        expected.addWords(words);
+
+        for (WordCountStoreType storeType : new WordCountStoreType[]{WordCountStoreType.INTERNED, WordCountStoreType.OFF_HEAP}) {
+            WordCountStoreService actual = new WordCountStoreService(storeType, 1);
+            //the dictionary and the table grow while the snapshots read them
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < words.size(); i += 100) {
+                    actual.addWords(words.subList(i, i + 100));
+                }
+            });
+            writer.start();
+            while (writer.isAlive()) {
+                List<Pair<Word, Integer>> snapshot = actual.snapshotTopNWords(50);
+                List<Pair<Word, Integer>> ranked = new ArrayList<>(snapshot);
+                ranked.sort(WordStore.rankingOrder());
+                assertEquals(ranked, snapshot, storeType.name());
+            }
+            writer.join();
+            assertEquals(expected.getTopNWords(1000), actual.snapshotTopNWords(1000), storeType.name());
+        }
+    }
+
+    @Test
+    public void testSubscriptionEveryDocuments() throws InterruptedException {
+        BlockingQueue<TopNSnapshot> snapshots = new LinkedBlockingQueue<>();
+        String[] texts = {"quantum gravity", "quantum stuff", "technical stuff", "quantum leap", "Quantum", "stuff"};
+        TopNSubscription subscription = wordCountStoreService.subscribe(2, 4, 0, snapshots::add);
+        for (String text : texts) {
+            WordCountBatch batch = wordCountStoreService.newBatch();
+            batch.addText(text);
+            batch.commit();
+        }
+        //the last 2 documents are short of the next 4, so they make it into the snapshot taken on close
+        subscription.close();
+        TopNSnapshot last = null;
+        int sequence = 0;
+        while (last == null || last.getDocuments() < texts.length) {
+            last = snapshots.poll();
+            assertNotNull(last, "no snapshot of all the documents");
+            assertEquals(++sequence, last.getSequence());
+        }
+        assertEquals(texts.length, last.getDocuments());
+        assertEquals(Arrays.asList(Pair.of(new Word("Quantum"), 4), Pair.of(new Word("stuff"), 3)), last.getTopWords());
+        assertEquals(wordCountStoreService.getTopNWordPairs(2), last.getTopWordPairs());
+        assertTrue(snapshots.isEmpty());
+    }
+
+    @Test
+    public void testSubscriptionByTime() throws InterruptedException {
+        BlockingQueue<TopNSnapshot> snapshots = new LinkedBlockingQueue<>();
+        wordCountStoreService.addWords(TextToWordUtil.toWords("quantum gravity"));
+        TopNSubscription subscription = wordCountStoreService.subscribe(10, 0, 10, snapshots::add);
+        TopNSnapshot first = snapshots.poll(10, TimeUnit.SECONDS);
+        TopNSnapshot second = snapshots.poll(10, TimeUnit.SECONDS);
+        subscription.close();
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(0, first.getDocuments()); //words added outside of a batch are not documents
+        assertEquals(2, first.getTopWords().size());
+        assertTrue(second.hasSameRanking(first));
+        assertFalse(first.hasSameRanking(null));
+        assertThrows(IllegalArgumentException.class, () -> wordCountStoreService.subscribe(10, 0, 0, snapshots::add));
+    }
 }
@@ -0,0 +1,117 @@
+package com.purini.fw.utils;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HtmlScannerTest {
+
+    private static final String BASE_URI = "http://zero.com/page";
+
+    @Test
+    public void testSameAsDomOnFixtures() throws IOException {
+        for (String file : Arrays.asList("zero.html", "one1.html", "one2.html", "two1.html", "two2.html",
+                "three1.html", "three2.html")) {
+            String html = new String(Files.readAllBytes(Paths.get(HtmlScannerTest.class.getClassLoader().getResource(file).getFile())));
+            assertSameAsDom(html);
+        }
+    }
+
+    @Test
+    public void testSameAsDomOnEdgeCases() throws IOException {
+        for (String html : Arrays.asList(
+                "<!DOCTYPE html><html><head><title>The  Title &amp; more</title><style>p { color: red }</style>" +
+                        "<script>var a = '<div>not text</div>';</script></head><body><p>Hello</p></body></html>",
+                "<div>a <b>bold</b> b<br>c<BR/>d <!-- <p>comment</p> --> e</div>",
+                "<p>one<p>two<div>three</div><ul><li>x<li>y</ul><dl><dt>t<dd>d</dl>",
+                "<pre>  keep\n   spaces  </pre><textarea>a &lt;b&gt;\n c</textarea>",
+                "<table><tr><td>1<td>2<tr><th>h</table>",
+                "plain &nbsp;text&#160;with&zwnj;entities &copy; &unknown; &amp",
+                "<a href=\"/x?a=1&amp;b=2\">x</a><A HREF='y'>y</A><a href=z>z</a><a name=n>n</a><a href>e</a>",
+                "<select><option>o1<option>o2</select><h1>h<h2>i</h2>",
+                "text < 5 and <3 and </> and <!x> end",
+                "<div id=\"a>b\" class='c'>quoted > in attribute</div>",
+                "<noscript>no script</noscript><iframe>raw <b>frame</b> &amp;</iframe><xmp><i>x</i></xmp>",
+                "<img src=a.png alt=\"image\"><input value=v>after void<span/>after self closing",
+                "&#x41;&#X62;&#99 &#150; &#0; &#xD800; &#99999999999; &# &#x; &ampx &copy2 &notin; &notit; a\u200Bb soft\u00ADhyphen",
+                "<a href=\"/p?a=1&copy=2&amp=3&lt&gt;&#38;x\">p</a><a href=\"/q?x&copy;y&nbsp\">q</a>"
+        )) {
+            assertSameAsDom(html);
+        }
+    }
+
+    @Test
+    public void testBaseUri() throws IOException {
+        assertEquals(BASE_URI, HtmlScanner.scan(new StringReader("<p>x</p>"), BASE_URI, new Collector()));
+        assertEquals("http://other.com/dir/", HtmlScanner.scan(
+                new StringReader("<head><base href=\"http://other.com/dir/\"><base href=\"/ignored\"></head>"), BASE_URI, new Collector()));
+        //resolved as per RFC 3986, as the links are, whereas Jsoup keeps the .. above the root (http://zero.com/../rel/)
+        assertEquals("http://zero.com/rel/",
+                HtmlScanner.scan(new StringReader("<base href=\"../rel/\">"), BASE_URI, new Collector()));
+    }
+
+    @Test
+    public void testLongTextIsGivenOutInPartsWithoutBreakingWords() throws IOException {
+        StringBuilder html = new StringBuilder("<div>");
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            words.add("word" + i);
+        }
+        html.append(String.join(" ", words)).append("</div>");
+        Collector collector = new Collector();
+        HtmlScanner.scan(new StringReader(html.toString()), BASE_URI, collector);
+        assertTrue(collector.texts.size() > 1);
+        assertTrue(collector.texts.stream().allMatch(t -> t.length() <= HtmlScanner.MAX_TEXT_LENGTH));
+        assertEquals(words, collector.texts.stream().flatMap(t -> Arrays.stream(t.split(" "))).collect(Collectors.toList()));
+    }
+
+    private static void assertSameAsDom(String html) throws IOException {
+        Document document = Jsoup.parse(html, BASE_URI);
+        List<String> domTexts = document.getAllElements().stream()
+                .map(Element::ownText)
+                .filter(t -> !t.isEmpty())
+                .sorted()
+                .collect(Collectors.toList());
+        List<String> domLinks = document.getElementsByTag("a").stream()
+                .filter(a -> a.hasAttr("href"))
+                .map(a -> a.attr("href"))
+                .collect(Collectors.toList());
+
+        Collector collector = new Collector();
+        String baseUri = HtmlScanner.scan(new StringReader(html), BASE_URI, collector);
+        Collections.sort(collector.texts);
+
+        assertEquals(domTexts, collector.texts, "texts of " + html);
+        assertEquals(domLinks, collector.links, "links of " + html);
+        assertEquals(document.baseUri(), baseUri, "base uri of " + html);
+    }
+
+    private static class Collector implements HtmlScanner.Handler {
+        private final List<String> texts = new ArrayList<>();
+        private final List<String> links = new ArrayList<>();
+
+        @Override
+        public void text(String text) {
+            texts.add(text);
+        }
+
+        @Override
+        public void link(String href) {
+            links.add(href);
+        }
+    }
+}
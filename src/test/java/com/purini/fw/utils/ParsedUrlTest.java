@@ -0,0 +1,58 @@
+package com.purini.fw.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParsedUrlTest {
+
+    @Test
+    public void testComponents() {
+        ParsedUrl url = ParsedUrl.parse("HTTP://user:pw@Abc.com:8080/a/b;p?q=1&r#frag");
+        assertEquals("HTTP", url.getScheme());
+        assertEquals("user:pw", url.getUserInfo());
+        assertEquals("Abc.com", url.getHost());
+        assertEquals(8080, url.getPort());
+        assertEquals("/a/b;p", url.getPath());
+        assertEquals("q=1&r", url.getQuery());
+        assertEquals("frag", url.getFragment());
+        assertEquals("Abc.com:8080", url.getHostPort());
+        assertEquals("HTTP://user:pw@Abc.com:8080/a/b;p?q=1&r#frag", url.toString());
+        assertTrue(url.isHttp());
+
+        ParsedUrl ipv6 = ParsedUrl.parse("http://[::1]:81");
+        assertEquals("[::1]", ipv6.getHost());
+        assertEquals(81, ipv6.getPort());
+        assertEquals("", ipv6.getPath());
+
+        ParsedUrl relative = ParsedUrl.parse("../x?y");
+        assertNull(relative.getScheme());
+        assertNull(relative.getHost());
+        assertEquals("../x", relative.getPath());
+        assertEquals("y", relative.getQuery());
+    }
+
+    @Test
+    public void testJunkIsNullOrNotHttp() {
+        assertNull(ParsedUrl.parse("http://a.com:port/x"));
+        assertNull(ParsedUrl.parse("http://a.com:99999/x"));
+        assertNull(ParsedUrl.parse("http://[::1/x"));
+        assertFalse(ParsedUrl.parse("mailto:x@a.com").isHttp());
+        assertFalse(ParsedUrl.parse("javascript:void(0)").isHttp());
+        assertFalse(ParsedUrl.parse("http://").isHttp());
+        assertFalse(ParsedUrl.parse("1http://a.com").isHttp()); //not a valid scheme, so a relative path
+        assertEquals("a%20b%C3%A9", ParsedUrl.parse("a bé").getPath());
+    }
+
+    @Test
+    public void testRemoveDotSegments() {
+        assertEquals("/a/g", ParsedUrl.removeDotSegments("/a/b/c/./../../g"));
+        assertEquals("mid/6", ParsedUrl.removeDotSegments("mid/content=5/../6"));
+        assertEquals("/a/", ParsedUrl.removeDotSegments("/a/b/.."));
+        assertEquals("/g", ParsedUrl.removeDotSegments("/../../g"));
+        assertEquals("/a.b/c..d", ParsedUrl.removeDotSegments("/a.b/c..d"));
+    }
+}
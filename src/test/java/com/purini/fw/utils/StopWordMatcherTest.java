@@ -0,0 +1,74 @@
+package com.purini.fw.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StopWordMatcherTest {
+
+    @Test
+    public void testLookupOfRange() {
+        StopWordMatcher matcher = new StopWordMatcher(Arrays.asList("the", "it", " and ", "", "der", "und", "The"));
+        assertEquals(5, matcher.size()); //blank and duplicate ones are ignored
+
+        String text = "xTHEy The it IT And und theory";
+        assertTrue(matcher.contains(text, 1, 4));
+        assertFalse(matcher.isStopWord(text, 1, 4)); //all caps
+        assertTrue(matcher.isStopWord(text, 6, 9));
+        assertTrue(matcher.isStopWord(text, 10, 12));
+        assertFalse(matcher.isStopWord(text, 13, 15));
+        assertTrue(matcher.isStopWord(text, 16, 19));
+        assertTrue(matcher.isStopWord(text, 20, 23));
+        assertFalse(matcher.isStopWord(text, 24, 30));
+        assertFalse(matcher.isStopWord(text, 24, 24));
+    }
+
+    @Test
+    public void testAllCapsSameAsToUpperCase() {
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            String s = "A" + (char) c;
+            assertEquals(s.toUpperCase().equals(s), StopWordMatcher.isAllCaps(s, 0, s.length()), "for char " + c);
+        }
+        for (String s : Arrays.asList("", "IT", "It", "MCDONALD'S", "GO-LIVE", "STRA\u00dfE", "\ud801\udc00", "\ud801\udc28", "\ud801")) {
+            assertEquals(s.toUpperCase().equals(s), StopWordMatcher.isAllCaps(s, 0, s.length()), "for [" + s + "]");
+        }
+    }
+
+    @Test
+    public void testSameAsListLookupForLargeList() {
+        Random random = new Random(7);
+        List<String> stopWords = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            stopWords.add(randomWord(random));
+        }
+        StopWordMatcher matcher = new StopWordMatcher(stopWords);
+        for (int i = 0; i < 50000; i++) {
+            String word = i % 2 == 0 ? randomCase(random, stopWords.get(random.nextInt(stopWords.size()))) : randomWord(random);
+            boolean expected = !word.toUpperCase().equals(word) && stopWords.contains(word.toLowerCase());
+            assertEquals(expected, matcher.isStopWord(word, 0, word.length()), "for [" + word + "]");
+        }
+    }
+
+    private static String randomWord(Random random) {
+        char[] chars = new char[1 + random.nextInt(8)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = "abcdefgh\u00e9\u00fc\u03b1\u0436".charAt(random.nextInt(12));
+        }
+        return new String(chars);
+    }
+
+    private static String randomCase(Random random, String word) {
+        StringBuilder builder = new StringBuilder();
+        for (char c : word.toCharArray()) {
+            builder.append(random.nextInt(3) == 0 ? Character.toUpperCase(c) : c);
+        }
+        return builder.toString();
+    }
+}
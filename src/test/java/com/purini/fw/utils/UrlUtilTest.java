@@ -0,0 +1,94 @@
+package com.purini.fw.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UrlUtilTest {
+
+    private static final Set<String> STRIPPED = new HashSet<>(Arrays.asList("utm_*", "gclid"));
+
+    @Test
+    public void testRelativeResolution() {
+        String base = "http://a.com/b/c/d;p?q";
+        assertEquals("http://a.com/b/c/g", canonicalize(base, "g"));
+        assertEquals("http://a.com/b/c/g", canonicalize(base, "./g"));
+        assertEquals("http://a.com/b/c/g/", canonicalize(base, "g/"));
+        assertEquals("http://a.com/g", canonicalize(base, "/g"));
+        assertEquals("http://g.com/", canonicalize(base, "//g.com"));
+        assertEquals("http://a.com/b/c/d;p?y", canonicalize(base, "?y"));
+        assertEquals("http://a.com/b/c/d;p?q", canonicalize(base, "#s"));
+        assertEquals("http://a.com/b/c/d;p?q", canonicalize(base, ""));
+        assertEquals("http://a.com/b/", canonicalize(base, ".."));
+        assertEquals("http://a.com/b/g", canonicalize(base, "../g"));
+        assertEquals("http://a.com/g", canonicalize(base, "../../../g"));
+        assertEquals("http://a.com/page.html", canonicalize("http://a.com", "page.html"));
+        assertEquals("https://a.com/x", canonicalize("https://a.com/y", "x"));
+    }
+
+    @Test
+    public void testNormalization() {
+        assertEquals("http://a.com/x", canonicalize("http://z.com", "HTTP://A.COM:80/x#top"));
+        assertEquals("https://a.com/x", canonicalize("http://z.com", "https://a.com:443/x"));
+        assertEquals("http://a.com:8080/", canonicalize("http://z.com", "http://a.com:8080"));
+        assertEquals("http://a.com/a%20b/%C3%A9", canonicalize("http://z.com", "http://a.com/a b/é"));
+        assertEquals("http://a.com/100%25", canonicalize("http://z.com", "http://a.com/100%"));
+        assertEquals("http://a.com/?a=1&b=2", canonicalize("http://z.com", "http://a.com/?b=2&utm_source=x&a=1&gclid=y"));
+        assertEquals("http://a.com/", canonicalize("http://z.com", "http://a.com/?utm_medium=x#y"));
+        assertEquals("http://a.com/?b=2&a=1",
+                UrlUtil.canonicalize("http://z.com", "http://a.com/?b=2&a=1", Collections.emptySet(), false));
+    }
+
+    @Test
+    public void testInvalidLinks() {
+        assertNull(canonicalize("http://a.com", "mailto:x@a.com"));
+        assertNull(canonicalize("http://a.com", "javascript:void(0)"));
+        assertNull(canonicalize("http://a.com", "ftp://a.com/x"));
+        assertNull(canonicalize("http://a.com", "http://"));
+    }
+
+    @Test
+    public void testValidityHostAndProtocol() {
+        assertTrue(UrlUtil.isValid("https://a.com/x"));
+        assertFalse(UrlUtil.isValid("ftp://a.com/x"));
+        assertFalse(UrlUtil.isValid("/x"));
+        assertFalse(UrlUtil.isValid("http://a.com:x/"));
+        assertEquals("A.com:8080", UrlUtil.getHostPort("http://A.com:8080/x"));
+        assertEquals("a.com", UrlUtil.getHostPort("http://a.com"));
+        assertNull(UrlUtil.getHostPort("/x"));
+        assertEquals("https", UrlUtil.getProtocol("HTTPS://a.com"));
+        assertNull(UrlUtil.getProtocol("http://a.com:x/"));
+    }
+
+    @Test
+    public void testVisitedKey() {
+        assertEquals("a.com/x", UrlUtil.visitedKey(canonicalize("http://z.com", "http://a.com/x")));
+        assertEquals("a.com/x", UrlUtil.visitedKey(canonicalize("http://z.com", "https://a.com/x#top")));
+        assertEquals("a.com/x", UrlUtil.visitedKey(canonicalize("http://z.com", "http://A.com/x/")));
+        assertEquals("a.com/x?q=1", UrlUtil.visitedKey(canonicalize("http://z.com", "http://a.com/x/?q=1")));
+        assertEquals("a.com/", UrlUtil.visitedKey(canonicalize("http://z.com", "https://a.com")));
+        assertEquals("a.com/x?q=1", UrlUtil.visitedKey("https://A.com/x/?utm_source=y&q=1"));
+    }
+
+    @Test
+    public void testNormalizedLinkKeepsItsQuery() {
+        ParsedUrl base = ParsedUrl.parse("http://a.com/b/c");
+        assertEquals("http://a.com/x?sid=1&b=2&utm_source=y", UrlUtil.normalize(base, "HTTP://A.COM:80/x?sid=1&b=2&utm_source=y#top").toString());
+        assertEquals("http://a.com/b/g", UrlUtil.normalize(base, "./g#s").toString());
+        assertNull(UrlUtil.normalize(base, "mailto:x@a.com"));
+        assertEquals("a.com/x?b=2&sid=1", UrlUtil.visitedKey(UrlUtil.normalize(base, "HTTP://A.COM:80/x/?sid=1&b=2&utm_source=y#top")));
+        assertEquals("a.com:8080/", UrlUtil.visitedKey(UrlUtil.normalize(base, "https://a.com:8080")));
+    }
+
+    private static String canonicalize(String baseUri, String href) {
+        return UrlUtil.canonicalize(baseUri, href, STRIPPED, true);
+    }
+}
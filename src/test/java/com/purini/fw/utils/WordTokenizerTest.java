@@ -0,0 +1,71 @@
+package com.purini.fw.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class WordTokenizerTest {
+
+    private static final char[] ALPHABET = ("abcXYZ_019'-.,:;!?\"()[]& \t\n\u000B\f\r" +
+            "\u0085\u2028\u2029\u00a0\u00e9\u00df\ud83d\ude00\u0001").toCharArray();
+
+    @Test
+    public void testSameAsTextToWordUtilCases() {
+        String text = "'Oh, you can't help that,' said the Cat: 'we're all mad 999 times 21years. I'm- mad. You're -mad at - your go-live.'";
+        assertEquals("Oh!you!can't!help!that!said!the!Cat!we're!all!mad!times!I'm!mad!You're!mad!at!your!go-live",
+                String.join("!", tokenize(text)));
+        assertEquals(regexTokenize(text), tokenize(text));
+
+        String stopWordsText = "Cold wave prevailed In Himachal Pradesh with many places - Keylong and Kalpa - recording below zero degrees " +
+                "Celsius on Friday. IT is improving in the world. It is maturing.";
+        assertEquals(regexTokenize(stopWordsText), tokenize(stopWordsText));
+
+        String storeText = "The first technical break-through in quantum gravity! " +
+                "Understanding quantum stuff is quite technical, so you first gotta learn from first.";
+        assertEquals(regexTokenize(storeText), tokenize(storeText));
+    }
+
+    @Test
+    public void testEdgeCases() {
+        for (String text : Arrays.asList("", "   ", " -- ", "\t'a'\n", "_x_", "9lives lives9", "a\u2028b", "1a\u2028b",
+                "'a\u2028", "\u2029a", "x\u0085\u0085y z", "McDonald's", "\ud83d\ude00a\ud83d\ude00", "\u00a0a\u00a0b")) {
+            assertEquals(regexTokenize(text), tokenize(text), "for text [" + text + "]");
+        }
+    }
+
+    @Test
+    public void testRandomizedAgainstRegexImplementation() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            char[] chars = new char[random.nextInt(40)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+            String text = new String(chars);
+            assertEquals(regexTokenize(text), tokenize(text), "for text [" + text + "]");
+        }
+    }
+
+    private static List<String> tokenize(CharSequence text) {
+        List<String> words = new ArrayList<>();
+        WordTokenizer.tokenize(text, (t, start, end) -> words.add(t.subSequence(start, end).toString()));
+        return words;
+    }
+
+    /**
+     * The regular expression based implementation that WordTokenizer replaces
+     */
+    private static List<String> regexTokenize(String text) {
+        return Arrays.stream(text.split("\\s+"))
+                .map(s -> s.replaceAll("^[\\W]*(.*?)[\\W]*$", "$1")
+                        .replaceAll("^\\d.*", ""))
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toList());
+    }
+}